@@ -0,0 +1,92 @@
+package com.example.kindle.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 读写分离配置，datasource.routing.enabled=true 时生效。
+ * 主库使用 spring.datasource，从库在 datasource.routing.replicas 中配置，
+ * 本地测试可以把主从都指向两个嵌入式数据库。
+ * 连接池参数（spring.datasource.hikari.*）对主库和从库同样生效，从库可以单独指定 maximum-pool-size。
+ * 需要关闭 spring.jpa.open-in-view：否则请求内的 EntityManager 会一直持有第一个事务取到的连接，
+ * 先只读后写的请求会在从库连接上写入。
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "datasource.routing", name = "enabled", havingValue = "true")
+public class DataSourceRoutingConfig {
+
+    private static final String HIKARI_PREFIX = "spring.datasource.hikari";
+
+    private final RoutingDataSourceProperties routingProperties;
+    private final Binder binder;
+    private ReplicaRoutingDataSource routingDataSource;
+
+    public DataSourceRoutingConfig(RoutingDataSourceProperties routingProperties, Environment environment) {
+        this.routingProperties = routingProperties;
+        this.binder = Binder.get(environment);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(DataSourceProperties dataSourceProperties) {
+        HikariDataSource primary = dataSourceProperties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .build();
+        binder.bind(HIKARI_PREFIX, Bindable.ofInstance(primary));
+
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        int i = 0;
+        for (RoutingDataSourceProperties.Replica replica : routingProperties.getReplicas()) {
+            String name = replica.getName() != null ? replica.getName() : "replica-" + i;
+            HikariDataSource replicaDataSource = DataSourceBuilder.create()
+                    .type(HikariDataSource.class)
+                    .url(replica.getUrl())
+                    .username(replica.getUsername())
+                    .password(replica.getPassword())
+                    .driverClassName(replica.getDriverClassName() != null
+                            ? replica.getDriverClassName() : dataSourceProperties.getDriverClassName())
+                    .build();
+            binder.bind(HIKARI_PREFIX, Bindable.ofInstance(replicaDataSource));
+            replicaDataSource.setPoolName(name);
+            if (replica.getMaximumPoolSize() != null) {
+                replicaDataSource.setMaximumPoolSize(replica.getMaximumPoolSize());
+            }
+            replicaDataSource.setReadOnly(true);
+            replicas.put(name, replicaDataSource);
+            i++;
+        }
+
+        routingDataSource = new ReplicaRoutingDataSource(primary, replicas,
+                routingProperties.getReadYourWritesWindow().toMillis());
+        routingDataSource.afterPropertiesSet();
+        //延迟到第一条语句执行时才取连接，此时事务的只读标记已经可见
+        return new LazyConnectionDataSourceProxy(routingDataSource);
+    }
+
+    @Bean
+    public RoutingClientFilter routingClientFilter() {
+        return new RoutingClientFilter(routingProperties.getClientHeader());
+    }
+
+    @Scheduled(fixedDelayString = "${datasource.routing.health-check-interval:PT10S}")
+    public void checkReplicas() {
+        if (routingDataSource != null) {
+            routingDataSource.checkReplicas(routingProperties.getHealthCheckTimeoutSeconds());
+            routingDataSource.purgeWriteMarks();
+        }
+    }
+}
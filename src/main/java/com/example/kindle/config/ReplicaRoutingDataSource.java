@@ -0,0 +1,136 @@
+package com.example.kindle.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 按事务只读属性路由的数据源：
+ * 只读事务轮询分发到健康的从库，其余（包括写事务、无事务调用）走主库。
+ * 读写事务提交后，同一调用方（见 {@link RoutingContext}）在读己之写窗口内的只读事务仍走主库；
+ * 无事务的连接和回滚的事务不算写入，不影响其他调用方使用从库。
+ * 需要外层包一层 LazyConnectionDataSourceProxy，保证取连接时事务的只读标记已经设置好。
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+    public static final String PRIMARY = "primary";
+
+    private final Map<String, DataSource> replicas;
+    private final Set<String> healthyReplicas = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger counter = new AtomicInteger();
+    //调用方 -> 最近一次写事务提交的时间
+    private final Map<String, Long> lastWriteAt = new ConcurrentHashMap<>();
+    private final long readYourWritesWindowMillis;
+
+    public ReplicaRoutingDataSource(DataSource primary, Map<String, DataSource> replicas, long readYourWritesWindowMillis) {
+        this.replicas = new LinkedHashMap<>(replicas);
+        this.readYourWritesWindowMillis = readYourWritesWindowMillis;
+
+        Map<Object, Object> targets = new HashMap<>(replicas);
+        targets.put(PRIMARY, primary);
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        //启动时先假定所有从库可用，之后由健康检查修正
+        healthyReplicas.addAll(replicas.keySet());
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        boolean readOnly = TransactionSynchronizationManager.isActualTransactionActive()
+                && TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+        if (!readOnly) {
+            if (TransactionSynchronizationManager.isActualTransactionActive()) {
+                registerWriteRecorder();
+            }
+            return PRIMARY;
+        }
+        if (RoutingContext.isPrimaryPinned()) {
+            return PRIMARY;
+        }
+        //该调用方刚写入过，从库可能还没同步，继续读主库
+        Long lastWrite = lastWriteAt.get(RoutingContext.clientKey());
+        if (lastWrite != null && System.currentTimeMillis() - lastWrite < readYourWritesWindowMillis) {
+            return PRIMARY;
+        }
+        List<String> candidates = new ArrayList<>(healthyReplicas);
+        if (candidates.isEmpty()) {
+            return PRIMARY;
+        }
+        Collections.sort(candidates);
+        int index = Math.floorMod(counter.getAndIncrement(), candidates.size());
+        return candidates.get(index);
+    }
+
+    /**
+     * 读写事务提交时才记录写入时间，同一事务只登记一次
+     */
+    private void registerWriteRecorder() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            if (synchronization instanceof WriteRecorder) {
+                return;
+            }
+        }
+        TransactionSynchronizationManager.registerSynchronization(new WriteRecorder(RoutingContext.clientKey()));
+    }
+
+    /**
+     * 清理已超出读己之写窗口的记录
+     */
+    public void purgeWriteMarks() {
+        long expired = System.currentTimeMillis() - readYourWritesWindowMillis;
+        lastWriteAt.values().removeIf(writtenAt -> writtenAt < expired);
+    }
+
+    /**
+     * 检查所有从库连接是否可用，不可用的从库暂时摘除，恢复后重新加入
+     * @param timeoutSeconds 单个连接校验超时时间
+     */
+    public void checkReplicas(int timeoutSeconds) {
+        for (Map.Entry<String, DataSource> entry : replicas.entrySet()) {
+            String name = entry.getKey();
+            boolean healthy;
+            try (Connection connection = entry.getValue().getConnection()) {
+                healthy = connection.isValid(timeoutSeconds);
+            } catch (Exception e) {
+                healthy = false;
+            }
+            if (healthy) {
+                if (healthyReplicas.add(name)) {
+                    log.info("从库 {} 恢复可用", name);
+                }
+            } else if (healthyReplicas.remove(name)) {
+                log.warn("从库 {} 不可用，只读请求回退到主库", name);
+            }
+        }
+    }
+
+    public Set<String> getHealthyReplicas() {
+        return Collections.unmodifiableSet(healthyReplicas);
+    }
+
+    private class WriteRecorder implements TransactionSynchronization {
+        private final String clientKey;
+
+        WriteRecorder(String clientKey) {
+            this.clientKey = clientKey;
+        }
+
+        @Override
+        public void afterCommit() {
+            lastWriteAt.put(clientKey, System.currentTimeMillis());
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.kindle.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * 为每个请求设置调用方标识，读己之写窗口只对写入的那个客户端生效：
+ * 优先取客户端标识请求头，其次是已有的会话，最后退回客户端地址
+ */
+public class RoutingClientFilter extends OncePerRequestFilter {
+
+    private final String clientHeader;
+
+    public RoutingClientFilter(String clientHeader) {
+        this.clientHeader = clientHeader;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        RoutingContext.setClientKey(resolveClientKey(request));
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            RoutingContext.clearClientKey();
+        }
+    }
+
+    private String resolveClientKey(HttpServletRequest request) {
+        String header = clientHeader == null ? null : request.getHeader(clientHeader);
+        if (header != null && !header.isBlank()) {
+            return "client:" + header;
+        }
+        HttpSession session = request.getSession(false);
+        if (session != null) {
+            return "session:" + session.getId();
+        }
+        return "addr:" + request.getRemoteAddr();
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.kindle.config;
+
+import java.util.function.Supplier;
+
+/**
+ * 当前线程的路由上下文：
+ * 调用方标识用于按客户端划分读己之写窗口，未设置时（后台任务等）共用一个标识；
+ * 主库提示让只读查询也走主库，用于不能容忍从库延迟的读取。
+ * 未启用读写分离时这些设置不起作用。
+ */
+public final class RoutingContext {
+
+    static final String BACKGROUND = "";
+
+    private static final ThreadLocal<String> CLIENT_KEY = new ThreadLocal<>();
+    private static final ThreadLocal<Boolean> PRIMARY = new ThreadLocal<>();
+
+    private RoutingContext() {
+    }
+
+    public static void setClientKey(String clientKey) {
+        CLIENT_KEY.set(clientKey);
+    }
+
+    public static void clearClientKey() {
+        CLIENT_KEY.remove();
+    }
+
+    static String clientKey() {
+        String clientKey = CLIENT_KEY.get();
+        return clientKey != null ? clientKey : BACKGROUND;
+    }
+
+    /**
+     * 在主库上执行，期间开启的只读事务同样读主库
+     */
+    public static <T> T onPrimary(Supplier<T> action) {
+        Boolean previous = PRIMARY.get();
+        PRIMARY.set(Boolean.TRUE);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                PRIMARY.remove();
+            } else {
+                PRIMARY.set(previous);
+            }
+        }
+    }
+
+    static boolean isPrimaryPinned() {
+        return Boolean.TRUE.equals(PRIMARY.get());
+    }
+}
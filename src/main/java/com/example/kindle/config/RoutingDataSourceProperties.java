@@ -0,0 +1,47 @@
+package com.example.kindle.config;
+
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 读写分离数据源配置，主库沿用 spring.datasource
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "datasource.routing")
+public class RoutingDataSourceProperties {
+    //是否启用读写分离
+    private boolean enabled = false;
+
+    //只读从库列表
+    private List<Replica> replicas = new ArrayList<>();
+
+    //写入后该时间窗口内，同一调用方的只读事务仍走主库（读己之写）
+    private Duration readYourWritesWindow = Duration.ofSeconds(2);
+
+    //标识调用方的请求头，没有时按会话或客户端地址区分
+    private String clientHeader = "X-Client-Id";
+
+    //从库健康检查间隔
+    private Duration healthCheckInterval = Duration.ofSeconds(10);
+
+    //健康检查超时（秒）
+    private int healthCheckTimeoutSeconds = 2;
+
+    @Data
+    public static class Replica {
+        private String name;
+        private String url;
+        private String username;
+        private String password;
+        private String driverClassName;
+        //为空时沿用 spring.datasource.hikari.maximum-pool-size
+        private Integer maximumPoolSize;
+    }
+}
@@ -1,9 +1,16 @@
 package com.example.kindle.controller;
 
 import com.example.kindle.entity.Book;
+import com.example.kindle.entity.BookPopularity;
 import com.example.kindle.repository.BookRepository;
 import com.example.kindle.repository.CategoryRepository;
 import com.example.kindle.service.BookService;
+import com.example.kindle.service.dedup.DuplicateBookException;
+import com.example.kindle.service.popularity.PopularityService;
+import com.example.kindle.service.popularity.PopularityType;
+import com.example.kindle.service.recommend.SimilarBook;
+import com.example.kindle.service.search.BookSearchService;
+import com.example.kindle.service.recommend.SimilarBookService;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
@@ -12,6 +19,7 @@ import org.springframework.data.domain.Sort;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.core.io.Resource;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 
 import java.io.IOException;
@@ -23,30 +31,44 @@ import java.io.FileNotFoundException;
 @RequestMapping("/book")
 public class BookController {
     private final BookService bookService;
+    private final SimilarBookService similarBookService;
+    private final PopularityService popularityService;
+    private final BookSearchService bookSearchService;
 
     @Value("${file.upload-dir}")
     private String uploadDir;   //文件下载路径
 
-    public BookController(BookRepository bookRepository , CategoryRepository categoryRepository, BookService bookService) {
+    public BookController(BookRepository bookRepository , CategoryRepository categoryRepository, BookService bookService,
+                          SimilarBookService similarBookService, PopularityService popularityService,
+                          BookSearchService bookSearchService) {
         this.bookService = bookService;
+        this.similarBookService = similarBookService;
+        this.popularityService = popularityService;
+        this.bookSearchService = bookSearchService;
     }
 
     /**
      * 上传ebook
      * @param ebookFile 电子书文件
      * @param categoryIds 书籍所属分类
-     * @return 返回对应Book类
+     * @return 返回对应Book类；疑似重复被拒绝时返回 409 和已有书籍id
      */
     @PostMapping("/up")
-    public Book upBook(
+    public ResponseEntity<?> upBook(
             @RequestParam("ebook") MultipartFile ebookFile,
             @RequestParam("categoryId") List<Long> categoryIds
     ) throws IOException {
-        return bookService.uploadEbookFile(ebookFile, categoryIds);
+        try {
+            return ResponseEntity.ok(bookService.uploadEbookFile(ebookFile, categoryIds));
+        } catch (DuplicateBookException e) {
+            return duplicate(e);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
     }
 
     @PostMapping("/upload")
-    public ResponseEntity<String> uploadBook(
+    public ResponseEntity<?> uploadBook(
             @RequestParam("title") String title,
             @RequestParam("author") String author,
             @RequestParam("cover") MultipartFile coverFile,
@@ -62,11 +84,21 @@ public class BookController {
         catch (IOException e){
         e.fillInStackTrace();
         return ResponseEntity.status(500).body("上传失败:"+e.getMessage());
+        }catch (DuplicateBookException e) {
+            return duplicate(e);
         }catch (IllegalArgumentException e) { // 捕获服务层抛出的业务异常
             return ResponseEntity.badRequest().body(e.getMessage());
         }
     }
 
+    /**
+     * 疑似重复上传被拒绝，返回已有书籍id供客户端跳转
+     */
+    static ResponseEntity<Map<String, Object>> duplicate(DuplicateBookException e) {
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(Map.of("message", e.getMessage(), "duplicateOf", e.getExistingBookId()));
+    }
+
     @GetMapping("/all")
     public List<Book> getAllBooks(){
         return bookService.getAllBooks();
@@ -79,11 +111,87 @@ public class BookController {
                 .orElse(ResponseEntity.notFound().build());
     }
 
+    /**
+     * 相似书籍推荐，直接从内存返回
+     * @param id 书籍id
+     * @param limit 返回数量
+     * @return 按相似度排序的书籍
+     */
+    @GetMapping("/{id}/similar")
+    public List<SimilarBook> getSimilarBooks(
+            @PathVariable("id") long id,
+            @RequestParam(defaultValue = "10") int limit
+    ){
+        return similarBookService.getSimilarBooks(id, limit);
+    }
+
+    /**
+     * 书内搜索
+     * @param id 书籍id
+     * @param q 查询内容，多个词按短语匹配
+     * @param limit 最多返回的命中数
+     * @return 命中总数和带高亮的片段
+     */
+    @GetMapping("/{id}/search")
+    public ResponseEntity<?> searchInBook(
+            @PathVariable("id") long id,
+            @RequestParam("q") String q,
+            @RequestParam(defaultValue = "20") int limit
+    ) throws IOException {
+        try {
+            return bookSearchService.search(id, q, limit)
+                    .<ResponseEntity<?>>map(ResponseEntity::ok)
+                    .orElse(ResponseEntity.notFound().build());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(503).header("Retry-After", "5").body(e.getMessage());
+        }
+    }
+
+    /**
+     * 热门书籍，直接从内存返回
+     * @param type 统计类型：view 查看、download 下载、send 发送到Kindle
+     * @param limit 返回数量
+     * @return 统计窗口内按次数排序的书籍
+     */
+    @GetMapping("/trending")
+    public ResponseEntity<?> getTrendingBooks(
+            @RequestParam(defaultValue = "view") String type,
+            @RequestParam(defaultValue = "10") int limit
+    ){
+        try {
+            return ResponseEntity.ok(popularityService.getTrending(PopularityType.valueOf(type.toUpperCase()), limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body("不支持的统计类型: " + type);
+        }
+    }
+
+    /**
+     * 书籍累计热度
+     * @param id 书籍id
+     * @return 累计查看、下载、发送次数
+     */
+    @GetMapping("/{id}/popularity")
+    public BookPopularity getBookPopularity(@PathVariable("id") long id){
+        return popularityService.getTotals(id);
+    }
+
     @GetMapping("/image/{filename}")
     public ResponseEntity<Resource> downloadImage(@PathVariable("filename") String filename) throws IOException {
         return bookService.downloadImage(filename,uploadDir);
     }
 
+    /**
+     * 下载电子书文件
+     * @param id 书籍id
+     * @return 电子书文件
+     */
+    @GetMapping("/file/{id}")
+    public ResponseEntity<Resource> downloadEbook(@PathVariable("id") long id) throws IOException {
+        return bookService.downloadEbook(id);
+    }
+
     @GetMapping("/page")
     public Page<Book> GetBooksByPage(
             @RequestParam(defaultValue = "0") int page,
@@ -3,7 +3,6 @@ package com.example.kindle.controller;
 import com.example.kindle.entity.Category;
 import com.example.kindle.repository.CategoryRepository;
 import com.example.kindle.service.CategoryService;
-import jakarta.transaction.Transactional;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.http.ResponseEntity;
@@ -44,10 +43,21 @@ public class CategoryController {
         return categoryService.findAll();
     }
 
-    //删除分类
-    @Transactional
+    //删除分类（服务层分批提交，这里不能再包一层事务）
     @DeleteMapping("/{id}")
     public ResponseEntity<String> deleteCategory(@PathVariable Long id) {
         return categoryService.deleteCategory(id);
     }
+
+    //批量为书籍添加分类
+    @PostMapping("/{id}/books")
+    public ResponseEntity<String> addBooks(@PathVariable Long id, @RequestBody List<Long> bookIds) {
+        return categoryService.addBooksToCategory(id, bookIds);
+    }
+
+    //批量移除书籍的分类
+    @DeleteMapping("/{id}/books")
+    public ResponseEntity<String> removeBooks(@PathVariable Long id, @RequestBody List<Long> bookIds) {
+        return categoryService.removeBooksFromCategory(id, bookIds);
+    }
 }
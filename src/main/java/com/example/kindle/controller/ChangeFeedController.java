@@ -0,0 +1,80 @@
+package com.example.kindle.controller;
+
+import com.example.kindle.service.feed.ChangeFeedGoneException;
+import com.example.kindle.service.feed.ChangeFeedService;
+import com.example.kindle.service.feed.ChangeStreamService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * 书库变更流，客户端按序号增量同步，不必反复拉取整个书籍列表：
+ * 先 GET /changes/head 记下序号并全量拉取一次，之后用 GET /changes?since= 长轮询，
+ * 或订阅 GET /changes/stream（SSE，断线后带 Last-Event-ID 重连续传）。
+ * 返回 410 表示序号已过期，需要重新全量同步。
+ */
+@RestController
+@RequestMapping("/changes")
+public class ChangeFeedController {
+
+    // 长轮询最长等待秒数
+    private static final int MAX_WAIT_SECONDS = 60;
+
+    private final ChangeFeedService changeFeedService;
+    private final ChangeStreamService changeStreamService;
+
+    public ChangeFeedController(ChangeFeedService changeFeedService, ChangeStreamService changeStreamService) {
+        this.changeFeedService = changeFeedService;
+        this.changeStreamService = changeStreamService;
+    }
+
+    /**
+     * 当前已发布的最大序号
+     */
+    @GetMapping("/head")
+    public Map<String, Long> head() {
+        return Map.of("since", changeFeedService.head());
+    }
+
+    /**
+     * 拉取变更
+     * @param since 上次同步到的序号
+     * @param limit 最多返回条数
+     * @param wait 没有新变更时最多等待的秒数，0 表示立即返回
+     * @return 变更批次
+     */
+    @GetMapping
+    public DeferredResult<ResponseEntity<?>> poll(
+            @RequestParam("since") long since,
+            @RequestParam(defaultValue = "100") int limit,
+            @RequestParam(defaultValue = "0") int wait
+    ) {
+        return changeFeedService.poll(since, limit, Duration.ofSeconds(Math.max(0, Math.min(wait, MAX_WAIT_SECONDS))));
+    }
+
+    /**
+     * 订阅变更流
+     * @param since 从该序号之后开始推送，优先于 Last-Event-ID；都为空时只推送新变更
+     * @param lastEventId 断线重连时浏览器自动带上的最后事件 id
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(
+            @RequestParam(value = "since", required = false) Long since,
+            @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId
+    ) {
+        try {
+            return changeStreamService.subscribe(since != null ? since : lastEventId);
+        } catch (ChangeFeedGoneException e) {
+            throw new ResponseStatusException(HttpStatus.GONE, e.getMessage());
+        } catch (IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.kindle.controller;
+
+import com.example.kindle.service.archive.LibraryArchiveService;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.time.LocalDate;
+
+/**
+ * 书库备份：整个书库（分类、书籍元数据、电子书和封面文件）打包成一个 tar.gz 直接流式返回。
+ * 恢复通过命令行 --backup.import 执行，见 LibraryArchiveCommand。
+ */
+@RestController
+@RequestMapping("/backup")
+public class LibraryArchiveController {
+
+    private final LibraryArchiveService libraryArchiveService;
+
+    public LibraryArchiveController(LibraryArchiveService libraryArchiveService) {
+        this.libraryArchiveService = libraryArchiveService;
+    }
+
+    /**
+     * 导出书库。响应开始后出错只能中断连接，下载到的归档缺少 summary.json，恢复时会被拒绝
+     */
+    @GetMapping("/export")
+    public void export(HttpServletResponse response) throws IOException {
+        response.setContentType("application/gzip");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                .filename("kindle-library-" + LocalDate.now() + ".tar.gz").build().toString());
+        try {
+            libraryArchiveService.export(response.getOutputStream());
+        } catch (IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.kindle.controller;
+
+import com.example.kindle.service.opds.OpdsCatalogService;
+import com.example.kindle.service.opds.RenderedFeed;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * OPDS 目录，供电子阅读器浏览和下载：
+ * /opds 下为 OPDS 1.2（Atom），/opds/v2 下为 OPDS 2.0（JSON）
+ */
+@RestController
+@RequestMapping("/opds")
+public class OpdsController {
+
+    private final OpdsCatalogService catalogService;
+
+    public OpdsController(OpdsCatalogService catalogService) {
+        this.catalogService = catalogService;
+    }
+
+    @GetMapping({"", "/"})
+    public ResponseEntity<byte[]> root(HttpServletRequest request) {
+        return serve(catalogService.root(false), request);
+    }
+
+    @GetMapping("/newest")
+    public ResponseEntity<byte[]> newest(@RequestParam(defaultValue = "0") int page, HttpServletRequest request) {
+        return serve(catalogService.newest(false, page), request);
+    }
+
+    @GetMapping("/category/{id}")
+    public ResponseEntity<byte[]> category(@PathVariable Long id, @RequestParam(defaultValue = "0") int page,
+                                           HttpServletRequest request) {
+        return catalogService.category(false, id, page)
+                .map(feed -> serve(feed, request))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    @GetMapping("/search")
+    public ResponseEntity<byte[]> search(@RequestParam("q") String query, @RequestParam(defaultValue = "0") int page,
+                                         HttpServletRequest request) {
+        return serve(catalogService.search(false, query, page), request);
+    }
+
+    @GetMapping("/opensearch.xml")
+    public ResponseEntity<byte[]> openSearch(HttpServletRequest request) {
+        return serve(catalogService.openSearchDescription(), request);
+    }
+
+    @GetMapping({"/v2", "/v2/"})
+    public ResponseEntity<byte[]> rootV2(HttpServletRequest request) {
+        return serve(catalogService.root(true), request);
+    }
+
+    @GetMapping("/v2/newest")
+    public ResponseEntity<byte[]> newestV2(@RequestParam(defaultValue = "0") int page, HttpServletRequest request) {
+        return serve(catalogService.newest(true, page), request);
+    }
+
+    @GetMapping("/v2/category/{id}")
+    public ResponseEntity<byte[]> categoryV2(@PathVariable Long id, @RequestParam(defaultValue = "0") int page,
+                                             HttpServletRequest request) {
+        return catalogService.category(true, id, page)
+                .map(feed -> serve(feed, request))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    @GetMapping("/v2/search")
+    public ResponseEntity<byte[]> searchV2(@RequestParam("query") String query, @RequestParam(defaultValue = "0") int page,
+                                           HttpServletRequest request) {
+        return serve(catalogService.search(true, query, page), request);
+    }
+
+    /**
+     * ETag 命中时返回 304；客户端接受 gzip 时直接返回预压缩的字节
+     */
+    private static ResponseEntity<byte[]> serve(RenderedFeed feed, HttpServletRequest request) {
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+        //压缩和未压缩的内容字节不同，强 ETag 必须区分
+        String etag = gzip ? gzipEtag(feed.etag()) : feed.etag();
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null && (ifNoneMatch.contains(etag) || ifNoneMatch.trim().equals("*"))) {
+            return ResponseEntity.status(304)
+                    .eTag(etag)
+                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                    .build();
+        }
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                .eTag(etag)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                .contentType(MediaType.parseMediaType(feed.contentType()));
+        if (gzip) {
+            return builder.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(feed.gzipped());
+        }
+        return builder.body(feed.plain());
+    }
+
+    /**
+     * gzip 变体的 ETag：在引号内追加 -gzip 后缀
+     */
+    private static String gzipEtag(String etag) {
+        if (etag.endsWith("\"")) {
+            return etag.substring(0, etag.length() - 1) + "-gzip\"";
+        }
+        return etag + "-gzip";
+    }
+}
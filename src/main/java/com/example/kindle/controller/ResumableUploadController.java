@@ -0,0 +1,129 @@
+package com.example.kindle.controller;
+
+import com.example.kindle.service.dedup.DuplicateBookException;
+import com.example.kindle.service.upload.ChecksumMismatchException;
+import com.example.kindle.service.upload.ResumableUploadService;
+import com.example.kindle.service.upload.UploadStatus;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.List;
+
+/**
+ * 可续传分片上传：
+ * POST /book/uploads 创建上传 → PUT /book/uploads/{id}/chunks/{index} 上传分片（可乱序、并发）
+ * → GET/HEAD /book/uploads/{id} 查询进度 → POST /book/uploads/{id}/complete 完成
+ */
+@RestController
+@RequestMapping("/book/uploads")
+public class ResumableUploadController {
+
+    // tus 协议中表示校验和不一致的状态码
+    private static final int CHECKSUM_MISMATCH = 460;
+
+    private final ResumableUploadService uploadService;
+
+    public ResumableUploadController(ResumableUploadService uploadService) {
+        this.uploadService = uploadService;
+    }
+
+    /**
+     * 创建上传
+     * @param filename 电子书文件名
+     * @param length 文件总字节数
+     * @param chunkSize 分片大小（可选）
+     * @param categoryIds 书籍所属分类
+     * @return 上传进度，Location 为后续请求地址
+     */
+    @PostMapping
+    public ResponseEntity<?> create(
+            @RequestParam("filename") String filename,
+            @RequestParam("length") long length,
+            @RequestParam(value = "chunkSize", required = false) Integer chunkSize,
+            @RequestParam("categoryId") List<Long> categoryIds
+    ) throws IOException {
+        try {
+            UploadStatus status = uploadService.create(filename, length, chunkSize, categoryIds);
+            return ResponseEntity.created(URI.create("/book/uploads/" + status.id())).body(status);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(429).body(e.getMessage());
+        }
+    }
+
+    /**
+     * 上传一个分片，请求体为分片原始字节，可带 Upload-Checksum 头（如 "sha256 base64值"）
+     */
+    @PutMapping("/{id}/chunks/{index}")
+    public ResponseEntity<?> putChunk(
+            @PathVariable String id,
+            @PathVariable int index,
+            @RequestHeader(value = "Upload-Checksum", required = false) String checksum,
+            HttpServletRequest request
+    ) throws IOException {
+        try {
+            return uploadService.writeChunk(id, index, request.getInputStream(), checksum)
+                    .<ResponseEntity<?>>map(status -> ResponseEntity.ok()
+                            .header("Upload-Offset", String.valueOf(status.offset()))
+                            .body(status))
+                    .orElse(ResponseEntity.notFound().build());
+        } catch (ChecksumMismatchException e) {
+            return ResponseEntity.status(CHECKSUM_MISMATCH).body(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(409).body(e.getMessage());
+        }
+    }
+
+    /**
+     * 查询进度，Upload-Offset 为从开头起连续收到的字节数
+     */
+    @RequestMapping(value = "/{id}", method = {RequestMethod.GET, RequestMethod.HEAD})
+    public ResponseEntity<UploadStatus> status(@PathVariable String id) {
+        return uploadService.status(id)
+                .map(status -> ResponseEntity.ok()
+                        .header("Upload-Offset", String.valueOf(status.offset()))
+                        .header("Upload-Length", String.valueOf(status.length()))
+                        .body(status))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * 完成上传，返回新建的书籍；疑似重复被拒绝时返回 409 和已有书籍id。
+     * 登记失败时上传仍然保留，可以再次完成或取消
+     */
+    @PostMapping("/{id}/complete")
+    public ResponseEntity<?> complete(@PathVariable String id) throws IOException {
+        try {
+            return uploadService.complete(id)
+                    .<ResponseEntity<?>>map(ResponseEntity::ok)
+                    .orElse(ResponseEntity.notFound().build());
+        } catch (DuplicateBookException e) {
+            return BookController.duplicate(e);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(409).body(e.getMessage());
+        }
+    }
+
+    /**
+     * 取消上传
+     */
+    @DeleteMapping("/{id}")
+    public ResponseEntity<String> abort(@PathVariable String id) {
+        try {
+            if (uploadService.abort(id)) {
+                return ResponseEntity.ok("已取消上传");
+            }
+            return ResponseEntity.notFound().build();
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(409).body(e.getMessage());
+        }
+    }
+}
@@ -1,9 +1,11 @@
 package com.example.kindle.entity;
 
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.Data;
 
+import java.time.Instant;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -20,9 +22,26 @@ public class Book {
     private String author;
     private String coverPath;
 
+    //封面占位：主色调和 BlurHash，列表中随书返回，客户端先绘制占位再懒加载封面
+    @Column(length = 7)
+    private String coverColor;
+    @Column(length = 64)
+    private String coverBlurHash;
+
     private String filePath;
     private String originalFilename;
 
+    //正文 MinHash 签名，用于相似书籍推荐
+    @JsonIgnore
+    @Column(length = 256)
+    private byte[] contentSignature;
+
+    //上传时检测到的疑似重复书籍id
+    private Long duplicateOf;
+
+    //最后修改时间，OPDS 条目的 updated 由此得出，旧数据为空
+    private Instant updatedAt;
+
     @ManyToMany
     @JoinTable(
             name = "book_category",
@@ -31,4 +50,10 @@ public class Book {
     )
     private Set<Category> categories  = new HashSet<>();
 
+    @PrePersist
+    @PreUpdate
+    void touch() {
+        updatedAt = Instant.now();
+    }
+
 }
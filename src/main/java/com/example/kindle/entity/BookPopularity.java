@@ -0,0 +1,21 @@
+package com.example.kindle.entity;
+
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+/**
+ * 书籍累计热度，单独建表，由内存计数器定期批量累加，避免热门书籍的 book 行频繁加锁
+ */
+@Entity
+@Data
+@Table(name = "book_popularity")
+public class BookPopularity {
+
+    @Id
+    private Long bookId;
+
+    private long views;
+    private long downloads;
+    private long sends;
+}
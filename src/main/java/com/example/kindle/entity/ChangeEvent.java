@@ -0,0 +1,47 @@
+package com.example.kindle.entity;
+
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.Instant;
+
+/**
+ * 书库变更记录（事务性发件箱）：与业务修改在同一事务中写入，id 即变更序号，客户端按序号增量同步
+ */
+@Entity
+@Data
+@Table(name = "change_event", indexes = @Index(name = "idx_change_event_created_at", columnList = "createdAt"))
+public class ChangeEvent {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 16, nullable = false)
+    private EntityType entityType;
+
+    @Column(nullable = false)
+    private Long entityId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 16, nullable = false)
+    private Action action;
+
+    @Column(nullable = false)
+    private Instant createdAt;
+
+    public enum EntityType {
+        BOOK,
+        CATEGORY
+    }
+
+    public enum Action {
+        CREATED,
+        UPDATED,
+        DELETED,
+        //分类下的书籍批量增减
+        BOOKS_CHANGED
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.kindle.event;
+
+/**
+ * 书籍新增、修改或删除后发布的应用内事件，监听方在事务提交后刷新各自的内存索引
+ * @param bookId 书籍id
+ * @param type 变更类型
+ */
+public record BookChangedEvent(Long bookId, Type type) {
+
+    public enum Type {
+        SAVED,
+        DELETED
+    }
+}
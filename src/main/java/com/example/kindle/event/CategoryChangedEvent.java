@@ -0,0 +1,15 @@
+package com.example.kindle.event;
+
+/**
+ * 分类新增、删除或批量调整书籍后发布的应用内事件
+ * @param categoryId 分类id
+ * @param type 变更类型
+ */
+public record CategoryChangedEvent(Long categoryId, Type type) {
+
+    public enum Type {
+        CREATED,
+        DELETED,
+        BOOKS_CHANGED
+    }
+}
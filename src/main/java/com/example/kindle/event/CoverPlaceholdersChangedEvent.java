@@ -0,0 +1,11 @@
+package com.example.kindle.event;
+
+import java.util.List;
+
+/**
+ * 批量回填封面占位后发布的应用内事件，只有缓存了封面主色调和 BlurHash 的监听方需要刷新；
+ * 书名、作者、分类和正文都没有变化，不触发相似度重算、查重或检索索引更新
+ * @param bookIds 本批更新了占位的书籍id
+ */
+public record CoverPlaceholdersChangedEvent(List<Long> bookIds) {
+}
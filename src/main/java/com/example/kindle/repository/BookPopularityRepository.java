@@ -0,0 +1,19 @@
+package com.example.kindle.repository;
+
+
+import com.example.kindle.entity.BookPopularity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface BookPopularityRepository extends JpaRepository<BookPopularity, Long> {
+    //累加计数，不存在时插入
+    @Modifying
+    @Query(value = "INSERT INTO book_popularity (book_id, views, downloads, sends) VALUES (:bookId, :views, :downloads, :sends) " +
+            "ON DUPLICATE KEY UPDATE views = views + VALUES(views), downloads = downloads + VALUES(downloads), sends = sends + VALUES(sends)",
+            nativeQuery = true)
+    int addCounts(@Param("bookId") Long bookId, @Param("views") long views, @Param("downloads") long downloads, @Param("sends") long sends);
+}
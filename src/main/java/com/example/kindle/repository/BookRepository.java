@@ -4,9 +4,12 @@ import com.example.kindle.entity.Book;
 import com.example.kindle.entity.Category;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 
 
@@ -14,4 +17,91 @@ public interface BookRepository extends JpaRepository<Book,Long> {
     @Query("SELECT b FROM Book b WHERE b.title LIKE %:kw% OR b.author LIKE %:kw%")
     List<Book> searchByKeyword(@Param("kw") String keyword, Pageable pageable);
     List<Book> findByCategories_id(Long categoriesId, Pageable pageable);
+    //按id顺序分批读取，避免大偏移量分页
+    List<Book> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+
+    //所有书籍与分类的关联 [bookId, categoryId]
+    @Query("SELECT b.id, c.id FROM Book b JOIN b.categories c")
+    List<Object[]> findAllCategoryLinks();
+
+    @Query("SELECT c.id FROM Book b JOIN b.categories c WHERE b.id = :bookId")
+    List<Long> findCategoryIdsByBookId(@Param("bookId") Long bookId);
+
+    @Query("SELECT b.id FROM Book b JOIN b.categories c WHERE c.id = :categoryId")
+    List<Long> findIdsByCategoryId(@Param("categoryId") Long categoryId);
+
+    @Query("SELECT MAX(b.id) FROM Book b")
+    Long findMaxId();
+
+    //按id区间读取去重所需的字段 [id, title, author, contentSignature]
+    @Query("SELECT b.id, b.title, b.author, b.contentSignature FROM Book b WHERE b.id > :after AND b.id <= :until ORDER BY b.id")
+    List<Object[]> findSignatures(@Param("after") Long after, @Param("until") Long until, Pageable pageable);
+
+    //旧数据和恢复的书没有修改时间，补一次后就固定下来
+    @Modifying
+    @Query("UPDATE Book b SET b.updatedAt = :now WHERE b.updatedAt IS NULL")
+    int fillMissingUpdatedAt(@Param("now") Instant now);
+
+    @Modifying
+    @Query("UPDATE Book b SET b.contentSignature = :signature WHERE b.id = :id")
+    int updateContentSignature(@Param("id") Long id, @Param("signature") byte[] signature);
+
+    //按分类分批删除 book_category 关联，每次最多删除 limit 行
+    @Modifying
+    @Query(value = "DELETE FROM book_category WHERE category_id = :categoryId LIMIT :limit", nativeQuery = true)
+    int deleteCategoryLinks(@Param("categoryId") Long categoryId, @Param("limit") int limit);
+
+    //批量为书籍添加分类，已存在的关联忽略
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO book_category (book_id, category_id) " +
+            "SELECT b.id, :categoryId FROM book b WHERE b.id IN (:bookIds)", nativeQuery = true)
+    int addCategoryToBooks(@Param("categoryId") Long categoryId, @Param("bookIds") Collection<Long> bookIds);
+
+    //批量移除书籍的分类
+    @Modifying
+    @Query(value = "DELETE FROM book_category WHERE category_id = :categoryId AND book_id IN (:bookIds)", nativeQuery = true)
+    int removeCategoryFromBooks(@Param("categoryId") Long categoryId, @Param("bookIds") Collection<Long> bookIds);
+
+    //按id顺序读取有封面但缺少占位信息的书籍 [id, coverPath]
+    @Query("SELECT b.id, b.coverPath FROM Book b WHERE b.id > :after AND b.coverPath IS NOT NULL AND b.coverBlurHash IS NULL ORDER BY b.id")
+    List<Object[]> findCoversWithoutPlaceholder(@Param("after") Long after, Pageable pageable);
+
+    //回填封面占位，封面已被替换时不覆盖
+    @Modifying
+    @Query("UPDATE Book b SET b.coverColor = :color, b.coverBlurHash = :blurHash WHERE b.id = :id AND b.coverPath = :coverPath")
+    int updateCoverPlaceholder(@Param("id") Long id, @Param("coverPath") String coverPath,
+                               @Param("color") String color, @Param("blurHash") String blurHash);
+
+    //导出书库：按id顺序分批读取 [id, title, author, coverPath, coverColor, coverBlurHash, filePath, originalFilename, contentSignature, duplicateOf]
+    @Query("SELECT b.id, b.title, b.author, b.coverPath, b.coverColor, b.coverBlurHash, b.filePath, b.originalFilename, " +
+            "b.contentSignature, b.duplicateOf FROM Book b WHERE b.id > :after ORDER BY b.id")
+    List<Object[]> findArchiveRows(@Param("after") Long after, Pageable pageable);
+
+    //id区间内书籍与分类的关联 [bookId, categoryId]
+    @Query("SELECT b.id, c.id FROM Book b JOIN b.categories c WHERE b.id > :after AND b.id <= :until")
+    List<Object[]> findCategoryLinks(@Param("after") Long after, @Param("until") Long until);
+
+    //恢复书库：保留原id插入
+    @Modifying
+    @Query(value = "INSERT INTO book (id, title, author, cover_path, cover_color, cover_blur_hash, file_path, original_filename, " +
+            "content_signature, duplicate_of) VALUES (:id, :title, :author, :coverPath, :coverColor, :coverBlurHash, :filePath, " +
+            ":originalFilename, :contentSignature, :duplicateOf)", nativeQuery = true)
+    int insertArchived(@Param("id") Long id, @Param("title") String title, @Param("author") String author,
+                       @Param("coverPath") String coverPath, @Param("coverColor") String coverColor,
+                       @Param("coverBlurHash") String coverBlurHash, @Param("filePath") String filePath,
+                       @Param("originalFilename") String originalFilename, @Param("contentSignature") byte[] contentSignature,
+                       @Param("duplicateOf") Long duplicateOf);
+
+    @Modifying
+    @Query(value = "INSERT INTO book_category (book_id, category_id) VALUES (:bookId, :categoryId)", nativeQuery = true)
+    int insertCategoryLink(@Param("bookId") Long bookId, @Param("categoryId") Long categoryId);
+
+    //恢复失败时删除已插入的关联和书籍
+    @Modifying
+    @Query(value = "DELETE FROM book_category WHERE book_id IN (:bookIds)", nativeQuery = true)
+    int deleteCategoryLinksByBookIds(@Param("bookIds") Collection<Long> bookIds);
+
+    @Modifying
+    @Query("DELETE FROM Book b WHERE b.id IN :ids")
+    int deleteByIds(@Param("ids") Collection<Long> ids);
 }
@@ -5,10 +5,32 @@ import com.example.kindle.entity.Book;
 import com.example.kindle.entity.Category;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface CategoryRepository extends JpaRepository<Category, Long> {
+    //直接删除分类，不加载关联的书籍
+    @Modifying
+    @Query("DELETE FROM Category c WHERE c.id = :id")
+    int deleteCategoryById(@Param("id") Long id);
+
+    //导出书库：按id顺序分批读取 [id, name]
+    @Query("SELECT c.id, c.name FROM Category c WHERE c.id > :after ORDER BY c.id")
+    List<Object[]> findArchiveRows(@Param("after") Long after, Pageable pageable);
+
+    //恢复书库：保留原id插入
+    @Modifying
+    @Query(value = "INSERT INTO category (id, name) VALUES (:id, :name)", nativeQuery = true)
+    int insertArchived(@Param("id") Long id, @Param("name") String name);
+
+    //恢复失败时删除已插入的分类
+    @Modifying
+    @Query("DELETE FROM Category c WHERE c.id IN :ids")
+    int deleteByIds(@Param("ids") Collection<Long> ids);
 }
@@ -0,0 +1,36 @@
+package com.example.kindle.repository;
+
+
+import com.example.kindle.entity.ChangeEvent;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface ChangeEventRepository extends JpaRepository<ChangeEvent, Long> {
+    //按序号读取 after 之后的变更
+    List<ChangeEvent> findByIdGreaterThanOrderByIdAsc(Long after, Pageable pageable);
+
+    //读取 (after, until] 区间内的变更
+    List<ChangeEvent> findByIdGreaterThanAndIdLessThanEqualOrderByIdAsc(Long after, Long until, Pageable pageable);
+
+    @Query("SELECT MIN(e.id) FROM ChangeEvent e")
+    Long findMinId();
+
+    @Query("SELECT MAX(e.id) FROM ChangeEvent e")
+    Long findMaxId();
+
+    @Query("SELECT MAX(e.id) FROM ChangeEvent e WHERE e.createdAt < :before")
+    Long findMaxIdBefore(@Param("before") Instant before);
+
+    //按批删除过期变更，每次最多删除 limit 行
+    @Modifying
+    @Query(value = "DELETE FROM change_event WHERE id <= :maxId LIMIT :limit", nativeQuery = true)
+    int deleteUpTo(@Param("maxId") Long maxId, @Param("limit") int limit);
+}
@@ -3,19 +3,36 @@ package com.example.kindle.service;
 
 import com.example.kindle.entity.Book;
 import com.example.kindle.entity.Category;
+import com.example.kindle.entity.ChangeEvent;
+import com.example.kindle.event.BookChangedEvent;
 import com.example.kindle.repository.BookRepository;
 import com.example.kindle.repository.CategoryRepository;
 import com.example.kindle.service.book.EbookProcessor;
 import com.example.kindle.service.book.EbookProcessorFactory;
-import jakarta.transaction.Transactional;
+import com.example.kindle.service.cover.CoverPlaceholder;
+import com.example.kindle.service.cover.CoverPlaceholders;
+import com.example.kindle.service.dedup.DuplicateBookException;
+import com.example.kindle.service.dedup.DuplicateDetector;
+import com.example.kindle.service.dedup.DuplicateMatch;
+import com.example.kindle.service.feed.ChangeFeedService;
+import com.example.kindle.service.popularity.PopularityService;
+import com.example.kindle.service.popularity.PopularityType;
+import com.example.kindle.service.recommend.MinHash;
+import com.example.kindle.service.search.BookSearchService;
+import org.hibernate.Hibernate;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.UrlResource;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
 import jakarta.mail.MessagingException;
@@ -23,6 +40,7 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.MalformedURLException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -40,12 +58,27 @@ public class BookService {
     @Value("${file.cover-dir}")
     private String coverDir;
     private final EmailService emailService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final DuplicateDetector duplicateDetector;
+    private final ChangeFeedService changeFeedService;
+    private final PopularityService popularityService;
+    private final BookSearchService bookSearchService;
+    private final TransactionTemplate transactionTemplate;
     //构造
-    public BookService(BookRepository bookRepository, CategoryRepository categoryRepository, EbookProcessorFactory ebookProcessorFactory,EmailService emailService) {
+    public BookService(BookRepository bookRepository, CategoryRepository categoryRepository, EbookProcessorFactory ebookProcessorFactory,EmailService emailService,
+                       ApplicationEventPublisher eventPublisher, DuplicateDetector duplicateDetector, ChangeFeedService changeFeedService,
+                       PopularityService popularityService, BookSearchService bookSearchService,
+                       TransactionTemplate transactionTemplate) {
         this.bookRepository = bookRepository;
         this.categoryRepository = categoryRepository;
         this.ebookProcessorFactory = ebookProcessorFactory;
         this.emailService = emailService;
+        this.eventPublisher = eventPublisher;
+        this.duplicateDetector = duplicateDetector;
+        this.changeFeedService = changeFeedService;
+        this.popularityService = popularityService;
+        this.bookSearchService = bookSearchService;
+        this.transactionTemplate = transactionTemplate;
     }
 
     /**
@@ -67,18 +100,88 @@ public class BookService {
 
         Path saveDir = Paths.get(uploadDir);
         Map<String, String> metadata = processor.process(ebookFile.getInputStream(), uniqueFilename, saveDir);
+        try {
+            return saveEbook(metadata, ebookFile.getOriginalFilename(), categoryIds);
+        } catch (RuntimeException e) {
+            //本次保存的文件没有登记成书籍，一并删除
+            try {
+                Files.deleteIfExists(Paths.get(metadata.get("filePath")));
+                deleteExtractedCover(metadata);
+            } catch (IOException cleanup) {
+                e.addSuppressed(cleanup);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 检查分类都存在，分片上传在创建时调用，避免传完整个文件才发现分类不存在
+     * @param categoryIds 分类
+     * @throws IllegalArgumentException 有分类不存在
+     */
+    @Transactional(readOnly = true)
+    public void requireCategories(List<Long> categoryIds) {
+        Set<Long> missing = new HashSet<>(categoryIds);
+        categoryRepository.findAllById(missing).forEach(category -> missing.remove(category.getId()));
+        if (!missing.isEmpty()) {
+            throw new IllegalArgumentException("分类不存在: " + missing);
+        }
+    }
+
+    /**
+     * 登记已经写入最终存储位置的电子书（分片上传完成后调用），不再复制文件。
+     * 解析电子书在事务之外进行，事务只包含写库。登记失败时保留电子书文件，由调用方决定重试或删除，
+     * 只删除本次提取出的封面；文件无法解析时处理器会删除它
+     * @param ebookPath 电子书文件路径
+     * @param originalFilename 原始文件名
+     * @param categoryIds 分类
+     * @return 返回上传后对应的Book类
+     */
+    public Book registerStoredEbook(Path ebookPath, String originalFilename, List<Long> categoryIds) throws IOException {
+        String filename = ebookPath.getFileName().toString();
+        String extension = filename.substring(filename.lastIndexOf('.') + 1);
+        EbookProcessor processor = ebookProcessorFactory.getProcessor(extension)
+                .orElseThrow(() -> new IllegalArgumentException("不支持该电子书格式:" + extension));
+        Map<String, String> metadata = processor.processStored(ebookPath, originalFilename, Paths.get(uploadDir));
+        try {
+            return transactionTemplate.execute(status -> saveEbook(metadata, originalFilename, categoryIds));
+        } catch (RuntimeException e) {
+            try {
+                deleteExtractedCover(metadata);
+            } catch (IOException cleanup) {
+                e.addSuppressed(cleanup);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 根据处理器提取的元数据创建并保存Book，失败时由调用方清理文件
+     * @throws DuplicateBookException 去重模式为 reject 且疑似重复
+     */
+    private Book saveEbook(Map<String, String> metadata, String originalFilename, List<Long> categoryIds) {
         String title = metadata.get("title");
         String author = metadata.get("author");
         String filePath = metadata.get("filePath");
         String coverPath = metadata.get("coverPath");
-        String originalFilename = ebookFile.getOriginalFilename();
+        int[] signature = MinHash.signature(metadata.get("text"));
+
+        //近似重复检测
+        Optional<DuplicateMatch> duplicate = duplicateDetector.findDuplicate(title, author, signature);
+        if (duplicate.isPresent() && duplicateDetector.isRejectMode()) {
+            throw new DuplicateBookException(duplicate.get().bookId());
+        }
 
         Book book = new Book();
         book.setTitle(title);
         book.setAuthor(author);
         book.setFilePath(filePath);
         book.setCoverPath(coverPath);
+        book.setCoverColor(metadata.get("coverColor"));
+        book.setCoverBlurHash(metadata.get("coverBlurHash"));
         book.setOriginalFilename(originalFilename);
+        book.setContentSignature(MinHash.toBytes(signature));
+        duplicate.ifPresent(match -> book.setDuplicateOf(match.bookId()));
 
         List<Category> categories = categoryRepository.findAllById(categoryIds);
         if(categories.isEmpty() &&  !categoryIds.isEmpty()) {
@@ -86,7 +189,29 @@ public class BookService {
         }
 
         book.getCategories().addAll(categories);
-        return bookRepository.save(book);
+        Book saved = bookRepository.save(book);
+        changeFeedService.record(ChangeEvent.EntityType.BOOK, saved.getId(), ChangeEvent.Action.CREATED);
+        eventPublisher.publishEvent(new BookChangedEvent(saved.getId(), BookChangedEvent.Type.SAVED));
+        return saved;
+    }
+
+    /**
+     * 删除本次上传提取出的封面，默认封面是共用的
+     */
+    private static void deleteExtractedCover(Map<String, String> metadata) throws IOException {
+        String coverPath = metadata.get("coverPath");
+        if (coverPath != null && "true".equals(metadata.get("coverExtracted"))) {
+            Files.deleteIfExists(Paths.get(coverPath));
+        }
+    }
+
+    /**
+     * 根据封面文件设置占位信息，图片无法解码时清空
+     */
+    private static void applyCoverPlaceholder(Book book, Path cover) {
+        Optional<CoverPlaceholder> placeholder = CoverPlaceholders.compute(cover);
+        book.setCoverColor(placeholder.map(CoverPlaceholder::color).orElse(null));
+        book.setCoverBlurHash(placeholder.map(CoverPlaceholder::blurHash).orElse(null));
     }
 
     /**
@@ -136,20 +261,31 @@ public class BookService {
         if(categories.isEmpty() && !categoryIds.isEmpty()) {
             throw new IllegalArgumentException("分类不存在");
         }
+        Optional<DuplicateMatch> duplicate = duplicateDetector.findDuplicate(title, author, null);
+        if (duplicate.isPresent() && duplicateDetector.isRejectMode()) {
+            Files.deleteIfExists(savePath);
+            throw new DuplicateBookException(duplicate.get().bookId());
+        }
         Book book = new Book();
         book.setTitle(title);
         book.setAuthor(author);
         book.setCoverPath(savePath.toString());
+        applyCoverPlaceholder(book, savePath);
+        duplicate.ifPresent(match -> book.setDuplicateOf(match.bookId()));
         book.getCategories().addAll(categories);
-        return bookRepository.save(book);
+        Book saved = bookRepository.save(book);
+        changeFeedService.record(ChangeEvent.EntityType.BOOK, saved.getId(), ChangeEvent.Action.CREATED);
+        eventPublisher.publishEvent(new BookChangedEvent(saved.getId(), BookChangedEvent.Type.SAVED));
+        return saved;
     }
 
     /**
      * 获取所有Book类
      * @return 返回所有电子书
      */
+    @Transactional(readOnly = true)
     public List<Book> getAllBooks() {
-        return bookRepository.findAll();
+        return withCategories(bookRepository.findAll());
     }
 
     /**
@@ -157,8 +293,14 @@ public class BookService {
      * @param id 电子书对应id
      * @return 返回id对应的电子书
      */
+    @Transactional(readOnly = true)
     public Optional<Book> getBookById(Long id) {
-        return bookRepository.findById(id);
+        Optional<Book> book = bookRepository.findById(id);
+        book.ifPresent(found -> {
+            Hibernate.initialize(found.getCategories());
+            popularityService.record(id, PopularityType.VIEW);
+        });
+        return book;
     }
 
     /**
@@ -166,8 +308,11 @@ public class BookService {
      * @param pageable 对应页
      * @return 返回按照页的电子书
      */
+    @Transactional(readOnly = true)
     public Page<Book> getBookByPage(Pageable pageable) {
-        return bookRepository.findAll(pageable);
+        Page<Book> page = bookRepository.findAll(pageable);
+        withCategories(page.getContent());
+        return page;
     }
 
     /**
@@ -176,11 +321,14 @@ public class BookService {
      * @param uploadDir 封面保存文件夹
      * @return 返回对应封面图片
      */
-    @Transactional
     public ResponseEntity<Resource> downloadImage(String filename,String uploadDir) throws IOException {
         try{
             File saveDir = new File(uploadDir);
             Path filePath = Paths.get(uploadDir).resolve(filename).normalize();
+            if (!Files.exists(filePath)) {
+                //从EPUB提取的封面保存在 cover 子目录
+                filePath = Paths.get(uploadDir).resolve("cover").resolve(filename).normalize();
+            }
             Resource resource = new UrlResource(filePath.toUri());
 
             if(!resource.exists()){
@@ -201,6 +349,32 @@ public class BookService {
         }
     }
 
+    /**
+     * 下载电子书文件
+     * @param id 对应电子书id
+     * @return 返回电子书文件，书籍或文件不存在时返回404
+     */
+    @Transactional(readOnly = true)
+    public ResponseEntity<Resource> downloadEbook(Long id) throws IOException {
+        Optional<Book> opt = bookRepository.findById(id);
+        if (opt.isEmpty() || opt.get().getFilePath() == null) {
+            return ResponseEntity.notFound().build();
+        }
+        Book book = opt.get();
+        Path filePath = Paths.get(book.getFilePath());
+        if (!Files.exists(filePath)) {
+            return ResponseEntity.notFound().build();
+        }
+        String filename = book.getOriginalFilename() != null ? book.getOriginalFilename() : filePath.getFileName().toString();
+        String contentType = filename.endsWith(".epub") ? "application/epub+zip" : "application/octet-stream";
+        popularityService.record(id, PopularityType.DOWNLOAD);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(contentType))
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename(filename, StandardCharsets.UTF_8).build().toString())
+                .body(new UrlResource(filePath.toUri()));
+    }
+
     /**
      * 删除对应电子书
      * @param id 对应电子书id
@@ -221,6 +395,10 @@ public class BookService {
             }
         }
         bookRepository.delete(book);
+        //书内搜索索引在事务提交后删除
+        bookSearchService.deleteIndex(id, book.getFilePath());
+        changeFeedService.record(ChangeEvent.EntityType.BOOK, id, ChangeEvent.Action.DELETED);
+        eventPublisher.publishEvent(new BookChangedEvent(id, BookChangedEvent.Type.DELETED));
         return true;
     }
 
@@ -256,6 +434,7 @@ public class BookService {
                 File oldFile = new File(book.getCoverPath());
                 if (oldFile.exists()) oldFile.delete();
                 book.setCoverPath(newPath.getPath());
+                applyCoverPlaceholder(book, newPath.toPath());
             } catch (IOException e) {
                 e.fillInStackTrace();
                 return ResponseEntity.status(500).body("封面保存失败" + e.getMessage());
@@ -267,6 +446,8 @@ public class BookService {
         }
 
         bookRepository.save(book);
+        changeFeedService.record(ChangeEvent.EntityType.BOOK, id, ChangeEvent.Action.UPDATED);
+        eventPublisher.publishEvent(new BookChangedEvent(id, BookChangedEvent.Type.SAVED));
         return ResponseEntity.ok("保存成功");
     }
 
@@ -275,9 +456,9 @@ public class BookService {
      * @param keyword 搜索电子书的关键词
      * @return 返回按照关键词搜索后的电子书
      */
-    @Transactional
+    @Transactional(readOnly = true)
     public List<Book> searchBooks(String keyword, Pageable pageable) {
-        return bookRepository.searchByKeyword(keyword,pageable);
+        return withCategories(bookRepository.searchByKeyword(keyword,pageable));
     }
 
     /**\
@@ -285,14 +466,23 @@ public class BookService {
      * @param categoryId 对应分类
      * @return 返回对应分类的电子书
      */
-    @Transactional
+    @Transactional(readOnly = true)
     public ResponseEntity<List<Book>> searchBooksByCategory(Long categoryId, Pageable pageable) {
         Optional<Category> opt = categoryRepository.findById(categoryId);
         if(opt.isEmpty()){
             return ResponseEntity.notFound().build();
         }
         List<Book> books = bookRepository.findByCategories_id(categoryId,pageable);
-        return ResponseEntity.ok(books);
+        return ResponseEntity.ok(withCategories(books));
+    }
+
+    /**
+     * 在事务内加载书籍的分类，返回后由 Jackson 序列化时已没有会话（open-in-view 关闭）。
+     * 按 hibernate.default_batch_fetch_size 批量加载，不会每本书查一次
+     */
+    private static List<Book> withCategories(List<Book> books) {
+        books.forEach(book -> Hibernate.initialize(book.getCategories()));
+        return books;
     }
 
     /**
@@ -303,6 +493,7 @@ public class BookService {
      * @throws FileNotFoundException 文件未找到异常
      */
     public void sendToKindle(Long bookId, String kindleEmail) throws MessagingException, FileNotFoundException {
+        //只在查询时短暂占用连接，发送邮件不在事务中
         Book book = bookRepository.findById(bookId)
             .orElseThrow(() -> new IllegalArgumentException("书籍不存在: " + bookId));
         
@@ -314,5 +505,6 @@ public class BookService {
         }
         
         emailService.sendEpubToKindle(kindleEmail, "Kindle电子书: " + book.getTitle(), filePath);
+        popularityService.record(bookId, PopularityType.SEND);
     }
 }
@@ -1,23 +1,43 @@
 package com.example.kindle.service;
 
 
-import com.example.kindle.entity.Book;
 import com.example.kindle.entity.Category;
+import com.example.kindle.entity.ChangeEvent;
+import com.example.kindle.event.CategoryChangedEvent;
+import com.example.kindle.repository.BookRepository;
 import com.example.kindle.repository.CategoryRepository;
-import jakarta.transaction.Transactional;
-import lombok.Setter;
+import com.example.kindle.service.feed.ChangeFeedService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Optional;
 
-@Setter
 @Service
 public class CategoryService {
-    private CategoryRepository categoryRepository;
+    private final CategoryRepository categoryRepository;
+    private final BookRepository bookRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ChangeFeedService changeFeedService;
+    @Value("${category.bulk-chunk-size:5000}")
+    private int bulkChunkSize; // 批量操作每个事务处理的行数，避免长时间持有锁
+
+    public CategoryService(CategoryRepository categoryRepository, BookRepository bookRepository, TransactionTemplate transactionTemplate,
+                           ApplicationEventPublisher eventPublisher, ChangeFeedService changeFeedService) {
+        this.categoryRepository = categoryRepository;
+        this.bookRepository = bookRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.eventPublisher = eventPublisher;
+        this.changeFeedService = changeFeedService;
+    }
 
     /**
      * 按照页搜索
@@ -25,6 +45,7 @@ public class CategoryService {
      * @param size 每页的大小
      * @return 返回按照页搜索后的结果
      */
+    @Transactional(readOnly = true)
     public Page<Category> getCategory(int page, int size) {
         return categoryRepository.findAll(PageRequest.of(page, size));
     }
@@ -39,6 +60,8 @@ public class CategoryService {
         Category category = new Category();
         category.setName(name);
         categoryRepository.save(category);
+        changeFeedService.record(ChangeEvent.EntityType.CATEGORY, category.getId(), ChangeEvent.Action.CREATED);
+        eventPublisher.publishEvent(new CategoryChangedEvent(category.getId(), CategoryChangedEvent.Type.CREATED));
         return "分类创建成功，Id:" + category.getId();
     }
 
@@ -46,30 +69,97 @@ public class CategoryService {
      * 获取所有分类
      * @return 返回所有分类
      */
-    @Transactional
+    @Transactional(readOnly = true)
     public List<Category> findAll() {return categoryRepository.findAll();}
 
     /**
      * 删除分类
+     * 按批次直接删除 book_category 关联，不把书籍加载进持久化上下文，每批单独提交
      * @param id 对应分类id
      * @return 返回删除后信息
      */
-    @Transactional
     public ResponseEntity<String> deleteCategory(Long id) {
-        Optional<Category> categoryOpt = categoryRepository.findById(id);
-        if (categoryOpt.isEmpty()) {
+        if (!categoryRepository.existsById(id)) {
             return ResponseEntity.notFound().build();
         }
 
-        Category category = categoryOpt.get();
         //解除与图书绑定
-        for(Book book : category.getBooks()) {
-            book.getCategories().remove(category);
-        }
-        category.getBooks().clear();
-        categoryRepository.delete(category);
+        int deleted;
+        do {
+            deleted = transactionTemplate.execute(status -> bookRepository.deleteCategoryLinks(id, bulkChunkSize));
+        } while (deleted >= bulkChunkSize);
+
+        //最后一批与分类删除放在同一事务中，防止期间新增的关联导致外键冲突
+        transactionTemplate.executeWithoutResult(status -> {
+            int remaining;
+            do {
+                remaining = bookRepository.deleteCategoryLinks(id, bulkChunkSize);
+            } while (remaining >= bulkChunkSize);
+            categoryRepository.deleteCategoryById(id);
+            changeFeedService.record(ChangeEvent.EntityType.CATEGORY, id, ChangeEvent.Action.DELETED);
+        });
+        eventPublisher.publishEvent(new CategoryChangedEvent(id, CategoryChangedEvent.Type.DELETED));
 
         return ResponseEntity.ok("分类删除成功");
     }
 
+    /**
+     * 批量为书籍添加分类
+     * @param categoryId 对应分类id
+     * @param bookIds 书籍id
+     * @return 返回新增的关联数量
+     */
+    public ResponseEntity<String> addBooksToCategory(Long categoryId, List<Long> bookIds) {
+        if (!categoryRepository.existsById(categoryId)) {
+            return ResponseEntity.notFound().build();
+        }
+        int changed = 0;
+        for (List<Long> chunk : chunks(bookIds)) {
+            changed += transactionTemplate.execute(status -> recordBooksChanged(categoryId, bookRepository.addCategoryToBooks(categoryId, chunk)));
+        }
+        eventPublisher.publishEvent(new CategoryChangedEvent(categoryId, CategoryChangedEvent.Type.BOOKS_CHANGED));
+        return ResponseEntity.ok("已添加" + changed + "本书到分类");
+    }
+
+    /**
+     * 批量移除书籍的分类
+     * @param categoryId 对应分类id
+     * @param bookIds 书籍id
+     * @return 返回移除的关联数量
+     */
+    public ResponseEntity<String> removeBooksFromCategory(Long categoryId, List<Long> bookIds) {
+        if (!categoryRepository.existsById(categoryId)) {
+            return ResponseEntity.notFound().build();
+        }
+        int changed = 0;
+        for (List<Long> chunk : chunks(bookIds)) {
+            changed += transactionTemplate.execute(status -> recordBooksChanged(categoryId, bookRepository.removeCategoryFromBooks(categoryId, chunk)));
+        }
+        eventPublisher.publishEvent(new CategoryChangedEvent(categoryId, CategoryChangedEvent.Type.BOOKS_CHANGED));
+        return ResponseEntity.ok("已从分类移除" + changed + "本书");
+    }
+
+    /**
+     * 本批实际有关联变化时，在同一事务中记录分类下书籍变更
+     * @return 变化的关联数量
+     */
+    private int recordBooksChanged(Long categoryId, int changed) {
+        if (changed > 0) {
+            changeFeedService.record(ChangeEvent.EntityType.CATEGORY, categoryId, ChangeEvent.Action.BOOKS_CHANGED);
+        }
+        return changed;
+    }
+
+    /**
+     * 按 bulkChunkSize 对书籍id去重并分批
+     */
+    private List<List<Long>> chunks(List<Long> bookIds) {
+        List<Long> ids = new ArrayList<>(new LinkedHashSet<>(bookIds));
+        List<List<Long>> chunks = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i += bulkChunkSize) {
+            chunks.add(ids.subList(i, Math.min(i + bulkChunkSize, ids.size())));
+        }
+        return chunks;
+    }
+
 }
@@ -0,0 +1,22 @@
+package com.example.kindle.service.archive;
+
+/**
+ * 一次导出或恢复的统计
+ * @param categories 分类数
+ * @param books 书籍数
+ * @param files 电子书和封面文件数
+ * @param missingFiles 清单中登记但归档中缺失（导出时已被删除）的文件数
+ * @param bytes 未压缩的归档字节数
+ * @param compressedBytes 压缩后的字节数
+ * @param millis 耗时
+ */
+public record ArchiveSummary(long categories, long books, long files, long missingFiles,
+                             long bytes, long compressedBytes, long millis) {
+
+    /**
+     * @return 按未压缩字节计算的吞吐，GB/min
+     */
+    public double gigabytesPerMinute() {
+        return millis == 0 ? 0 : bytes / 1e9 / (millis / 60000.0);
+    }
+}
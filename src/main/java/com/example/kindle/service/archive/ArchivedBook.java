@@ -0,0 +1,13 @@
+package com.example.kindle.service.archive;
+
+import java.util.List;
+
+/**
+ * 归档清单中的一本书，books/*.jsonl 中每行一条
+ * @param ebookEntry 电子书在归档中的条目名，文件不存在时为空
+ * @param coverEntry 封面在归档中的条目名，文件不存在时为空
+ */
+record ArchivedBook(Long id, String title, String author, String originalFilename, Long duplicateOf,
+                    String filePath, String coverPath, String coverColor, String coverBlurHash,
+                    byte[] contentSignature, List<Long> categoryIds, String ebookEntry, String coverEntry) {
+}
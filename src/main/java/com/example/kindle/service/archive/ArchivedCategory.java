@@ -0,0 +1,7 @@
+package com.example.kindle.service.archive;
+
+/**
+ * 归档清单中的一个分类，categories/*.jsonl 中每行一条
+ */
+record ArchivedCategory(Long id, String name) {
+}
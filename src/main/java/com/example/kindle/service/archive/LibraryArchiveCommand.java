@@ -0,0 +1,76 @@
+package com.example.kindle.service.archive;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * 命令行导出、恢复，执行完退出进程：
+ * <pre>
+ * java -jar kindle.jar --spring.main.web-application-type=none --backup.export=/backup/library.tar.gz
+ * java -jar kindle.jar --spring.main.web-application-type=none --backup.import=/backup/library.tar.gz
+ * </pre>
+ * 导出先写到同目录的 .part 文件，成功后改名，避免留下看似完整的半截归档。
+ */
+@Component
+public class LibraryArchiveCommand implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(LibraryArchiveCommand.class);
+
+    private static final String EXPORT_OPTION = "backup.export";
+    private static final String IMPORT_OPTION = "backup.import";
+
+    private final LibraryArchiveService libraryArchiveService;
+    private final ConfigurableApplicationContext context;
+
+    public LibraryArchiveCommand(LibraryArchiveService libraryArchiveService, ConfigurableApplicationContext context) {
+        this.libraryArchiveService = libraryArchiveService;
+        this.context = context;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        boolean export = args.containsOption(EXPORT_OPTION);
+        boolean restore = args.containsOption(IMPORT_OPTION);
+        if (!export && !restore) {
+            return;
+        }
+        int exitCode = 0;
+        try {
+            if (export && restore) {
+                throw new IllegalArgumentException("--" + EXPORT_OPTION + " 和 --" + IMPORT_OPTION + " 不能同时使用");
+            }
+            if (export) {
+                Path target = Paths.get(args.getOptionValues(EXPORT_OPTION).get(0));
+                Path part = target.resolveSibling(target.getFileName() + ".part");
+                ArchiveSummary summary;
+                try (OutputStream out = Files.newOutputStream(part)) {
+                    summary = libraryArchiveService.export(out);
+                }
+                Files.move(part, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                log.info("已导出到 {}: {}", target, summary);
+            } else {
+                Path source = Paths.get(args.getOptionValues(IMPORT_OPTION).get(0));
+                ArchiveSummary summary = libraryArchiveService.importArchive(
+                        new BufferedInputStream(Files.newInputStream(source), 1 << 20));
+                log.info("已从 {} 恢复: {}", source, summary);
+            }
+        } catch (Exception e) {
+            log.error("书库{}失败", export ? "导出" : "恢复", e);
+            exitCode = 1;
+        }
+        int code = exitCode;
+        System.exit(SpringApplication.exit(context, () -> code));
+    }
+}
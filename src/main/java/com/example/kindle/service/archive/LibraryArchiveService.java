@@ -0,0 +1,558 @@
+package com.example.kindle.service.archive;
+
+import com.example.kindle.repository.BookRepository;
+import com.example.kindle.repository.CategoryRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManagerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 书库整体导出与恢复。归档是 tar.gz，可以直接用 tar 查看：
+ * <pre>
+ * kindle-library/format.json                 格式版本和导出时间
+ * kindle-library/categories/000001.jsonl     分类清单，每块 chunk-size 行
+ * kindle-library/books/000001.jsonl          书籍清单，紧跟着该块书籍的文件
+ * kindle-library/files/{id}/ebook/{文件名}
+ * kindle-library/files/{id}/cover/{文件名}
+ * kindle-library/summary.json                统计，缺少它说明导出中途失败
+ * </pre>
+ * 导出在一个可重复读的只读事务中按id分块读取分类和书籍，所有分块来自同一个快照。清单先写入临时文件，
+ * 事务随即结束，不会因为客户端下载慢而长时间占用连接和快照；事务超过 backup.snapshot-timeout 时导出失败。
+ * 快照事务不使用绑定在请求上的 EntityManager（open-in-view），否则它的连接会一直保留到下载结束。
+ * 电子书和封面文件写入后不会原地修改，只会被删除，所以快照之后被删的文件记为缺失即可。
+ * 文件内容边读边压缩边写出，不落临时文件，压缩按块在线程池中并行，恢复时同样并行解压。
+ */
+@Service
+public class LibraryArchiveService {
+
+    private static final Logger log = LoggerFactory.getLogger(LibraryArchiveService.class);
+
+    static final String ROOT = "kindle-library/";
+    private static final int FORMAT_VERSION = 1;
+
+    private final BookRepository bookRepository;
+    private final CategoryRepository categoryRepository;
+    private final ObjectMapper objectMapper;
+    private final EntityManagerFactory entityManagerFactory;
+    private final TransactionTemplate snapshotTemplate;
+    private final TransactionTemplate readTemplate;
+    private final TransactionTemplate writeTemplate;
+
+    @Value("${file.ebook-dir}")
+    private String ebookDir;
+    @Value("${file.cover-dir}")
+    private String coverDir;
+    @Value("${backup.chunk-size:1000}")
+    private int chunkSize; // 每个清单分块的行数
+    @Value("${backup.compression-level:6}")
+    private int compressionLevel;
+    @Value("${backup.block-size:1MB}")
+    private DataSize blockSize; // 并行压缩的分块大小
+    @Value("${backup.import-threads:4}")
+    private int importThreads; // 恢复时并行写库的线程数，不宜超过连接池大小
+
+    private final int threads;
+    private final ExecutorService compressor;
+    private final AtomicBoolean exporting = new AtomicBoolean();
+
+    public LibraryArchiveService(BookRepository bookRepository, CategoryRepository categoryRepository,
+                                 ObjectMapper objectMapper, EntityManagerFactory entityManagerFactory,
+                                 PlatformTransactionManager transactionManager,
+                                 @Value("${backup.threads:0}") int threads,
+                                 @Value("${backup.snapshot-timeout:PT10M}") Duration snapshotTimeout) {
+        this.bookRepository = bookRepository;
+        this.categoryRepository = categoryRepository;
+        this.objectMapper = objectMapper;
+        this.entityManagerFactory = entityManagerFactory;
+        this.snapshotTemplate = new TransactionTemplate(transactionManager);
+        this.snapshotTemplate.setReadOnly(true);
+        this.snapshotTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        this.snapshotTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.snapshotTemplate.setTimeout((int) Math.max(1, snapshotTimeout.toSeconds()));
+        this.readTemplate = new TransactionTemplate(transactionManager);
+        this.readTemplate.setReadOnly(true);
+        this.writeTemplate = new TransactionTemplate(transactionManager);
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger counter = new AtomicInteger();
+        this.compressor = Executors.newFixedThreadPool(this.threads, r -> {
+            Thread thread = new Thread(r, "library-archive-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 导出整个书库，写完后关闭输出流；同一时刻只允许一个导出
+     * @param out 输出流，例如 HTTP 响应或文件
+     * @return 导出统计
+     * @throws IllegalStateException 已有导出在进行
+     * @throws IOException 读取文件或写出失败，此时归档中没有 summary.json
+     */
+    public ArchiveSummary export(OutputStream out) throws IOException {
+        if (!exporting.compareAndSet(false, true)) {
+            throw new IllegalStateException("已有导出任务在进行");
+        }
+        long start = System.currentTimeMillis();
+        Path manifest = null;
+        ParallelGzipOutputStream gzip = new ParallelGzipOutputStream(out, compressor, compressionLevel,
+                (int) blockSize.toBytes(), threads * 2);
+        try (gzip) {
+            Progress progress = new Progress();
+            manifest = Files.createTempFile("kindle-library-", ".manifest");
+            try (DataOutputStream spool = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(manifest)))) {
+                Path spoolPath = manifest;
+                withoutRequestEntityManager(() -> snapshotTemplate.executeWithoutResult(status -> {
+                    try {
+                        spoolCategories(spool, progress);
+                        spoolBooks(spool, progress);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("写入清单临时文件失败: " + spoolPath, e);
+                    }
+                }));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            TarWriter tar = new TarWriter(gzip);
+            Map<String, Object> format = new LinkedHashMap<>();
+            format.put("format", "kindle-library");
+            format.put("version", FORMAT_VERSION);
+            format.put("createdAt", Instant.ofEpochMilli(start).toString());
+            tar.write(ROOT + "format.json", objectMapper.writeValueAsBytes(format), start);
+            writeManifest(tar, manifest, progress, start);
+            //摘要中的字节数不含摘要本身和结尾块
+            ArchiveSummary written = progress.summary(tar.getBytesWritten(), gzip.getCompressedBytes(),
+                    System.currentTimeMillis() - start);
+            tar.write(ROOT + "summary.json", objectMapper.writeValueAsBytes(written), start);
+            tar.close();
+            gzip.flush();
+            ArchiveSummary summary = progress.summary(tar.getBytesWritten(), gzip.getCompressedBytes(),
+                    System.currentTimeMillis() - start);
+            log.info("书库导出完成: {}个分类, {}本书, {}个文件(缺失{}), 原始{}MB, 压缩后{}MB, 耗时{}ms, {} GB/min",
+                    summary.categories(), summary.books(), summary.files(), summary.missingFiles(),
+                    summary.bytes() >> 20, summary.compressedBytes() >> 20, summary.millis(),
+                    String.format("%.2f", summary.gigabytesPerMinute()));
+            return summary;
+        } finally {
+            if (manifest != null) {
+                Files.deleteIfExists(manifest);
+            }
+            exporting.set(false);
+        }
+    }
+
+    /**
+     * 从归档恢复到空书库，保留原来的id；文件放入 file.ebook-dir 和 file.cover-dir，路径随之改写。
+     * 适合在停止对外服务时通过命令行执行，恢复期间的写入不会进入变更流、推荐等内存索引，重启后重建。
+     * @param in 归档输入流，读完后关闭
+     * @return 恢复统计
+     * @throws IllegalStateException 书库不为空
+     * @throws IOException 归档损坏或不完整，已写入的数据和文件会被删除，书库回到空的状态，可以直接重试
+     */
+    public ArchiveSummary importArchive(InputStream in) throws IOException {
+        Long existing = readTemplate.execute(status -> bookRepository.count() + categoryRepository.count());
+        if (existing != null && existing > 0) {
+            throw new IllegalStateException("书库不为空，只能恢复到空书库");
+        }
+        long start = System.currentTimeMillis();
+        Path ebookTarget = Paths.get(ebookDir);
+        Path coverTarget = Paths.get(coverDir);
+        Files.createDirectories(ebookTarget);
+        Files.createDirectories(coverTarget);
+
+        AtomicInteger counter = new AtomicInteger();
+        ExecutorService writer = Executors.newFixedThreadPool(Math.max(1, importThreads), r -> {
+            Thread thread = new Thread(r, "library-import-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        List<Future<?>> categoryInserts = new ArrayList<>();
+        List<Future<?>> bookInserts = new ArrayList<>();
+        //已提交写入的分类和书籍id、已写出的文件，失败时据此清理
+        List<Long> categoryIds = new ArrayList<>();
+        List<Long> bookIds = new ArrayList<>();
+        List<Path> written = new ArrayList<>();
+        //清单中登记、尚未读到的文件条目 -> 恢复位置
+        Map<String, Path> pending = new HashMap<>();
+        Set<String> reserved = new HashSet<>();
+        Progress progress = new Progress();
+        ArchiveSummary declared = null;
+        boolean formatChecked = false;
+        long fileBytes = 0;
+
+        ParallelGzipInputStream gzip = new ParallelGzipInputStream(in, compressor, threads * 2);
+        try (TarReader tar = new TarReader(gzip)) {
+            for (TarReader.Entry entry = tar.next(); entry != null; entry = tar.next()) {
+                if (!entry.name().startsWith(ROOT)) {
+                    continue;
+                }
+                String name = entry.name().substring(ROOT.length());
+                if (name.equals("format.json")) {
+                    checkFormat(tar.readCurrent());
+                    formatChecked = true;
+                } else if (!formatChecked) {
+                    throw new IOException("归档缺少 format.json");
+                } else if (name.startsWith("categories/")) {
+                    List<ArchivedCategory> categories = readLines(tar.readCurrent(), ArchivedCategory.class);
+                    progress.categories += categories.size();
+                    categories.forEach(category -> categoryIds.add(category.id()));
+                    categoryInserts.add(writer.submit(() -> insertCategories(categories)));
+                } else if (name.startsWith("books/")) {
+                    //书籍分类关联引用分类，先等分类全部写入
+                    await(categoryInserts);
+                    List<ArchivedBook> books = new ArrayList<>();
+                    for (ArchivedBook book : readLines(tar.readCurrent(), ArchivedBook.class)) {
+                        String filePath = book.filePath();
+                        String coverPath = book.coverPath();
+                        if (book.ebookEntry() != null) {
+                            Path target = reserve(ebookTarget, book.id(), book.ebookEntry(), reserved);
+                            pending.put(book.ebookEntry(), target);
+                            filePath = target.toString();
+                        }
+                        if (book.coverEntry() != null) {
+                            Path target = reserve(coverTarget, book.id(), book.coverEntry(), reserved);
+                            pending.put(book.coverEntry(), target);
+                            coverPath = target.toString();
+                        }
+                        books.add(new ArchivedBook(book.id(), book.title(), book.author(), book.originalFilename(),
+                                book.duplicateOf(), filePath, coverPath, book.coverColor(), book.coverBlurHash(),
+                                book.contentSignature(), book.categoryIds(), book.ebookEntry(), book.coverEntry()));
+                    }
+                    progress.books += books.size();
+                    books.forEach(book -> bookIds.add(book.id()));
+                    bookInserts.add(writer.submit(() -> insertBooks(books)));
+                } else if (name.startsWith("files/")) {
+                    Path target = pending.remove(entry.name());
+                    if (target == null) {
+                        log.warn("归档中的文件未在清单中登记，已跳过: {}", entry.name());
+                        continue;
+                    }
+                    restoreFile(entry.content(), target);
+                    written.add(target);
+                    progress.files++;
+                    fileBytes += entry.size();
+                } else if (name.equals("summary.json")) {
+                    declared = objectMapper.readValue(tar.readCurrent(), ArchiveSummary.class);
+                }
+            }
+            await(categoryInserts);
+            await(bookInserts);
+
+            if (declared == null) {
+                throw new IOException("归档不完整：缺少 summary.json，导出可能中途失败");
+            }
+            if (declared.categories() != progress.categories || declared.books() != progress.books) {
+                throw new IOException("归档内容与摘要不符：分类" + progress.categories + "/" + declared.categories()
+                        + "，书籍" + progress.books + "/" + declared.books());
+            }
+        } catch (IOException | RuntimeException e) {
+            try {
+                rollback(writer, categoryIds, bookIds, written);
+            } catch (Exception rollbackFailure) {
+                e.addSuppressed(rollbackFailure);
+            }
+            throw e;
+        } finally {
+            writer.shutdownNow();
+        }
+
+        //导出时已被删除的文件同样留在 pending 中
+        progress.missingFiles = pending.size();
+        ArchiveSummary summary = progress.summary(fileBytes, gzip.getCompressedBytes(), System.currentTimeMillis() - start);
+        log.info("书库恢复完成: {}个分类, {}本书, {}个文件(缺失{}), 文件{}MB, 耗时{}ms",
+                summary.categories(), summary.books(), summary.files(), summary.missingFiles(),
+                summary.bytes() >> 20, summary.millis());
+        return summary;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        compressor.shutdownNow();
+    }
+
+    /**
+     * 没有进行中的事务时暂时解绑请求上的 EntityManager，快照事务新建自己的 EntityManager，提交后连接随之归还
+     */
+    private void withoutRequestEntityManager(Runnable action) {
+        Object bound = TransactionSynchronizationManager.isActualTransactionActive() ? null
+                : TransactionSynchronizationManager.unbindResourceIfPossible(entityManagerFactory);
+        try {
+            action.run();
+        } finally {
+            if (bound != null) {
+                TransactionSynchronizationManager.bindResource(entityManagerFactory, bound);
+            }
+        }
+    }
+
+    private void spoolCategories(DataOutputStream spool, Progress progress) throws IOException {
+        long after = 0;
+        int chunk = 0;
+        List<Object[]> rows;
+        do {
+            rows = categoryRepository.findArchiveRows(after, PageRequest.of(0, chunkSize));
+            if (rows.isEmpty()) {
+                break;
+            }
+            ByteArrayOutputStream lines = new ByteArrayOutputStream();
+            for (Object[] row : rows) {
+                writeLine(lines, new ArchivedCategory((Long) row[0], (String) row[1]));
+            }
+            spoolChunk(spool, String.format("%scategories/%06d.jsonl", ROOT, ++chunk), lines.toByteArray());
+            progress.categories += rows.size();
+            after = (Long) rows.get(rows.size() - 1)[0];
+        } while (rows.size() == chunkSize);
+    }
+
+    private void spoolBooks(DataOutputStream spool, Progress progress) throws IOException {
+        long after = 0;
+        int chunk = 0;
+        List<Object[]> rows;
+        do {
+            rows = bookRepository.findArchiveRows(after, PageRequest.of(0, chunkSize));
+            if (rows.isEmpty()) {
+                break;
+            }
+            long until = (Long) rows.get(rows.size() - 1)[0];
+            Map<Long, List<Long>> categoryIds = new HashMap<>();
+            for (Object[] link : bookRepository.findCategoryLinks(after, until)) {
+                categoryIds.computeIfAbsent((Long) link[0], id -> new ArrayList<>()).add((Long) link[1]);
+            }
+
+            ByteArrayOutputStream lines = new ByteArrayOutputStream();
+            for (Object[] row : rows) {
+                Long id = (Long) row[0];
+                String coverPath = (String) row[3];
+                String filePath = (String) row[6];
+                String ebookEntry = fileEntry(id, "ebook", filePath);
+                String coverEntry = fileEntry(id, "cover", coverPath);
+                if (coverPath != null && coverEntry == null) {
+                    //默认封面等不存在的路径原样保留
+                    log.debug("封面文件不存在，只导出路径: bookId={}, {}", id, coverPath);
+                }
+                List<Long> categories = categoryIds.getOrDefault(id, List.of());
+                writeLine(lines, new ArchivedBook(id, (String) row[1], (String) row[2], (String) row[7], (Long) row[9],
+                        filePath, coverPath, (String) row[4], (String) row[5], (byte[]) row[8],
+                        categories.stream().sorted().toList(), ebookEntry, coverEntry));
+            }
+            spoolChunk(spool, String.format("%sbooks/%06d.jsonl", ROOT, ++chunk), lines.toByteArray());
+            progress.books += rows.size();
+            after = until;
+        } while (rows.size() == chunkSize);
+    }
+
+    private static void spoolChunk(DataOutputStream spool, String name, byte[] content) throws IOException {
+        spool.writeUTF(name);
+        spool.writeInt(content.length);
+        spool.write(content);
+    }
+
+    /**
+     * 按顺序把清单分块写入归档，每个书籍分块之后紧跟这一块书籍的文件，恢复时读到文件前已知道它属于哪本书
+     */
+    private void writeManifest(TarWriter tar, Path manifest, Progress progress, long modified) throws IOException {
+        try (DataInputStream spool = new DataInputStream(new BufferedInputStream(Files.newInputStream(manifest)))) {
+            while (true) {
+                String name;
+                try {
+                    name = spool.readUTF();
+                } catch (EOFException e) {
+                    break;
+                }
+                byte[] content = new byte[spool.readInt()];
+                spool.readFully(content);
+                tar.write(name, content, modified);
+                if (name.startsWith(ROOT + "books/")) {
+                    writeFiles(tar, readLines(content, ArchivedBook.class), progress);
+                }
+            }
+        }
+    }
+
+    private void writeFiles(TarWriter tar, List<ArchivedBook> books, Progress progress) throws IOException {
+        Map<String, Path> files = new LinkedHashMap<>();
+        for (ArchivedBook book : books) {
+            if (book.ebookEntry() != null) {
+                files.put(book.ebookEntry(), Paths.get(book.filePath()));
+            }
+            if (book.coverEntry() != null) {
+                files.put(book.coverEntry(), Paths.get(book.coverPath()));
+            }
+        }
+        for (Map.Entry<String, Path> file : files.entrySet()) {
+            try (FileChannel channel = FileChannel.open(file.getValue(), StandardOpenOption.READ)) {
+                tar.write(file.getKey(), channel, channel.size(), Files.getLastModifiedTime(file.getValue()).toMillis());
+                progress.files++;
+            } catch (NoSuchFileException e) {
+                //读取清单之后被删除
+                log.warn("导出时文件已被删除: {}", file.getValue());
+                progress.missingFiles++;
+            }
+        }
+    }
+
+    /**
+     * 文件存在时给出它在归档中的条目名
+     */
+    private static String fileEntry(Long id, String kind, String path) {
+        if (path == null || path.isBlank()) {
+            return null;
+        }
+        Path file = Paths.get(path);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        return ROOT + "files/" + id + "/" + kind + "/" + file.getFileName();
+    }
+
+    /**
+     * 为归档中的文件选定恢复位置，只取条目名最后一段，已存在同名文件时加书籍id前缀
+     */
+    private static Path reserve(Path dir, Long id, String entry, Set<String> reserved) {
+        String filename = entry.substring(entry.lastIndexOf('/') + 1);
+        if (filename.isEmpty() || filename.equals(".") || filename.equals("..")) {
+            filename = String.valueOf(id);
+        }
+        Path target = dir.resolve(filename);
+        if (Files.exists(target) || !reserved.add(target.toString())) {
+            target = dir.resolve(id + "_" + filename);
+            reserved.add(target.toString());
+        }
+        return target;
+    }
+
+    /**
+     * 写到临时文件再改名，中途失败不留下残缺的文件；目标已存在时不覆盖
+     */
+    private static void restoreFile(InputStream content, Path target) throws IOException {
+        Path temp = Files.createTempFile(target.toAbsolutePath().getParent(), target.getFileName().toString(), ".part");
+        try {
+            Files.copy(content, temp, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(temp, target);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * 恢复失败时删除已写入的关联、书籍、分类和文件。先等正在执行的写库任务结束，避免删除之后又有数据提交
+     */
+    private void rollback(ExecutorService writer, List<Long> categoryIds, List<Long> bookIds, List<Path> written)
+            throws IOException {
+        writer.shutdownNow();
+        try {
+            if (!writer.awaitTermination(1, TimeUnit.MINUTES)) {
+                throw new IOException("写库任务未能结束，请手动清空书库后重试");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("等待写库任务结束时被中断，请手动清空书库后重试");
+        }
+        for (int from = 0; from < bookIds.size(); from += chunkSize) {
+            List<Long> ids = bookIds.subList(from, Math.min(bookIds.size(), from + chunkSize));
+            writeTemplate.executeWithoutResult(status -> {
+                bookRepository.deleteCategoryLinksByBookIds(ids);
+                bookRepository.deleteByIds(ids);
+            });
+        }
+        for (int from = 0; from < categoryIds.size(); from += chunkSize) {
+            List<Long> ids = categoryIds.subList(from, Math.min(categoryIds.size(), from + chunkSize));
+            writeTemplate.executeWithoutResult(status -> categoryRepository.deleteByIds(ids));
+        }
+        for (Path file : written) {
+            Files.deleteIfExists(file);
+        }
+        log.warn("恢复失败，已删除写入的{}个分类、{}本书和{}个文件", categoryIds.size(), bookIds.size(), written.size());
+    }
+
+    private void insertCategories(List<ArchivedCategory> categories) {
+        writeTemplate.executeWithoutResult(status -> categories.forEach(category ->
+                categoryRepository.insertArchived(category.id(), category.name())));
+    }
+
+    private void insertBooks(List<ArchivedBook> books) {
+        writeTemplate.executeWithoutResult(status -> {
+            for (ArchivedBook book : books) {
+                bookRepository.insertArchived(book.id(), book.title(), book.author(), book.coverPath(),
+                        book.coverColor(), book.coverBlurHash(), book.filePath(), book.originalFilename(),
+                        book.contentSignature(), book.duplicateOf());
+            }
+            for (ArchivedBook book : books) {
+                if (book.categoryIds() != null) {
+                    book.categoryIds().forEach(categoryId -> bookRepository.insertCategoryLink(book.id(), categoryId));
+                }
+            }
+        });
+    }
+
+    private void checkFormat(byte[] content) throws IOException {
+        Map<?, ?> format = objectMapper.readValue(content, Map.class);
+        if (!"kindle-library".equals(format.get("format"))) {
+            throw new IOException("不是书库归档");
+        }
+        if (!(format.get("version") instanceof Number version) || version.intValue() > FORMAT_VERSION) {
+            throw new IOException("不支持的归档版本: " + format.get("version"));
+        }
+    }
+
+    private void writeLine(ByteArrayOutputStream lines, Object value) throws IOException {
+        lines.write(objectMapper.writeValueAsBytes(value));
+        lines.write('\n');
+    }
+
+    private <T> List<T> readLines(byte[] content, Class<T> type) throws IOException {
+        List<T> values = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(content), StandardCharsets.UTF_8));
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            if (!line.isBlank()) {
+                values.add(objectMapper.readValue(line, type));
+            }
+        }
+        return values;
+    }
+
+    private static void await(List<Future<?>> futures) throws IOException {
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("恢复被中断");
+        } catch (ExecutionException e) {
+            throw new IOException("写入数据库失败: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private static final class Progress {
+        private long categories;
+        private long books;
+        private long files;
+        private long missingFiles;
+
+        ArchiveSummary summary(long bytes, long compressedBytes, long millis) {
+            return new ArchiveSummary(categories, books, files, missingFiles, bytes, compressedBytes, millis);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.example.kindle.service.archive;
+
+import java.io.*;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+/**
+ * 并行 gzip 解压，对应 {@link ParallelGzipOutputStream}：
+ * 读取线程只解析成员头部的 "KB" 子字段得到成员长度、整块读入，解压交给线程池，按顺序交付。
+ * 遇到不带该子字段的成员（例如被其他工具重新压缩过）时，剩余部分退回 {@link GZIPInputStream} 顺序解压。
+ */
+class ParallelGzipInputStream extends InputStream {
+
+    //单个成员解压后的上限，防止损坏的长度字段耗尽内存
+    static final int MAX_BLOCK_SIZE = 64 * 1024 * 1024;
+
+    private final InputStream in;
+    private final ExecutorService executor;
+    private final int maxInFlight;
+    private final Deque<Future<byte[]>> inFlight = new ArrayDeque<>();
+
+    private byte[] current = new byte[0];
+    private int position;
+    private boolean endOfMembers;
+    private InputStream fallback;
+    private long compressedBytes;
+
+    ParallelGzipInputStream(InputStream in, ExecutorService executor, int maxInFlight) {
+        this.in = in.markSupported() ? in : new BufferedInputStream(in);
+        this.executor = executor;
+        this.maxInFlight = Math.max(1, maxInFlight);
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (position == current.length) {
+            if (fallback != null && inFlight.isEmpty()) {
+                return fallback.read(b, off, len);
+            }
+            fillQueue();
+            if (inFlight.isEmpty()) {
+                if (fallback != null) {
+                    continue;
+                }
+                return -1;
+            }
+            current = take();
+            position = 0;
+        }
+        int n = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inFlight.forEach(future -> future.cancel(true));
+        inFlight.clear();
+        in.close();
+    }
+
+    /**
+     * @return 已读取的压缩字节数，退回顺序解压后不再准确
+     */
+    long getCompressedBytes() {
+        return compressedBytes;
+    }
+
+    private void fillQueue() throws IOException {
+        while (!endOfMembers && fallback == null && inFlight.size() < maxInFlight) {
+            byte[] member = readMember();
+            if (member == null) {
+                endOfMembers = true;
+                return;
+            }
+            compressedBytes += member.length;
+            inFlight.addLast(executor.submit(() -> decompress(member)));
+        }
+    }
+
+    private byte[] take() throws IOException {
+        try {
+            return inFlight.removeFirst().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("解压被中断");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException io ? io : new IOException("解压失败", cause);
+        }
+    }
+
+    /**
+     * 读取一个完整的成员，流结束时返回 null
+     */
+    private byte[] readMember() throws IOException {
+        in.mark(ParallelGzipOutputStream.HEADER_BYTES);
+        byte[] header = new byte[ParallelGzipOutputStream.HEADER_BYTES];
+        int read = in.readNBytes(header, 0, header.length);
+        if (read == 0) {
+            return null;
+        }
+        if ((header[0] & 0xFF) != 0x1f || (header[1] & 0xFF) != 0x8b) {
+            if (compressedBytes == 0) {
+                throw new IOException("不是 gzip 格式");
+            }
+            //尾部的填充字节，与 GZIPInputStream 一样忽略
+            return null;
+        }
+        if (read < header.length || header[2] != 8 || header[3] != 4 || header[10] != 8 || header[11] != 0
+                || header[12] != ParallelGzipOutputStream.SUBFIELD_ID1 || header[13] != ParallelGzipOutputStream.SUBFIELD_ID2
+                || header[14] != 4 || header[15] != 0) {
+            in.reset();
+            fallback = new GZIPInputStream(in, 64 * 1024);
+            return null;
+        }
+        int total = readIntLE(header, 16);
+        if (total < ParallelGzipOutputStream.HEADER_BYTES + ParallelGzipOutputStream.TRAILER_BYTES
+                || total > 2 * MAX_BLOCK_SIZE) {
+            throw new IOException("gzip 成员长度不正确: " + total);
+        }
+        byte[] member = new byte[total];
+        System.arraycopy(header, 0, member, 0, header.length);
+        if (in.readNBytes(member, header.length, total - header.length) != total - header.length) {
+            throw new EOFException("gzip 成员不完整");
+        }
+        return member;
+    }
+
+    static byte[] decompress(byte[] member) throws IOException {
+        int trailer = member.length - ParallelGzipOutputStream.TRAILER_BYTES;
+        int expectedCrc = readIntLE(member, trailer);
+        int size = readIntLE(member, trailer + 4);
+        if (size < 0 || size > MAX_BLOCK_SIZE) {
+            throw new IOException("gzip 成员长度不正确: " + size);
+        }
+        byte[] data = new byte[size];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(member, ParallelGzipOutputStream.HEADER_BYTES, trailer - ParallelGzipOutputStream.HEADER_BYTES);
+            int length = 0;
+            while (length < data.length && !inflater.finished()) {
+                int n = inflater.inflate(data, length, data.length - length);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += n;
+            }
+            if (length != data.length) {
+                throw new IOException("gzip 成员数据不完整");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("gzip 数据损坏", e);
+        } finally {
+            inflater.end();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        if ((int) crc.getValue() != expectedCrc) {
+            throw new IOException("gzip 成员校验失败");
+        }
+        return data;
+    }
+
+    private static int readIntLE(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF) | (bytes[offset + 1] & 0xFF) << 8
+                | (bytes[offset + 2] & 0xFF) << 16 | (bytes[offset + 3] & 0xFF) << 24;
+    }
+}
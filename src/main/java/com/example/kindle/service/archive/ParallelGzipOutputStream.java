@@ -0,0 +1,227 @@
+package com.example.kindle.service.archive;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * 并行 gzip 压缩：输入按固定大小分块，每块在线程池中独立压缩成一个 gzip 成员，按原顺序写出。
+ * 多个成员首尾相接仍是合法的 gzip 文件，gzip -d、tar xzf 都能直接解开。
+ * 每个成员头部的 FEXTRA 字段（子字段 "KB"）记录该成员的总字节数，
+ * 读取方不必解压就能找到成员边界，从而并行解压（同 BGZF 的做法）。
+ * 同时在途的块数有上限，内存占用约为 块大小 × 2 × 上限。
+ */
+class ParallelGzipOutputStream extends OutputStream {
+
+    static final byte SUBFIELD_ID1 = 'K';
+    static final byte SUBFIELD_ID2 = 'B';
+    //固定头 10 字节 + XLEN 2 字节 + 子字段 8 字节
+    static final int HEADER_BYTES = 20;
+    static final int TRAILER_BYTES = 8;
+    private static final int SAMPLE_BYTES = 16 * 1024;
+    private static final double INCOMPRESSIBLE_RATIO = 0.97;
+
+    private final OutputStream out;
+    private final ExecutorService executor;
+    private final int level;
+    private final int maxInFlight;
+    private final Deque<Future<byte[]>> inFlight = new ArrayDeque<>();
+
+    private byte[] block;
+    private int length;
+    private boolean wroteMember;
+    private boolean closed;
+    private long compressedBytes;
+
+    /**
+     * @param out 输出流，关闭时一并关闭
+     * @param executor 压缩线程池
+     * @param level 压缩级别 0~9
+     * @param blockSize 分块大小
+     * @param maxInFlight 同时在途的块数上限
+     */
+    ParallelGzipOutputStream(OutputStream out, ExecutorService executor, int level, int blockSize, int maxInFlight) {
+        this.out = out;
+        this.executor = executor;
+        this.level = level;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.block = new byte[blockSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        block[length++] = (byte) b;
+        if (length == block.length) {
+            submitBlock();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = Math.min(len, block.length - length);
+            System.arraycopy(b, off, block, length, n);
+            length += n;
+            off += n;
+            len -= n;
+            if (length == block.length) {
+                submitBlock();
+            }
+        }
+    }
+
+    /**
+     * 把已缓冲的数据压缩成成员并全部写出
+     */
+    @Override
+    public void flush() throws IOException {
+        if (length > 0) {
+            submitBlock();
+        }
+        while (!inFlight.isEmpty()) {
+            writeNext();
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (length > 0 || !wroteMember) {
+                submitBlock();
+            }
+            while (!inFlight.isEmpty()) {
+                writeNext();
+            }
+        } finally {
+            inFlight.forEach(future -> future.cancel(true));
+            out.close();
+        }
+    }
+
+    /**
+     * @return 已写出的压缩后字节数
+     */
+    long getCompressedBytes() {
+        return compressedBytes;
+    }
+
+    private void submitBlock() throws IOException {
+        byte[] data = block;
+        int size = length;
+        inFlight.addLast(executor.submit(() -> compress(data, size, level)));
+        wroteMember = true;
+        block = new byte[block.length];
+        length = 0;
+        while (inFlight.size() >= maxInFlight) {
+            writeNext();
+        }
+    }
+
+    private void writeNext() throws IOException {
+        try {
+            byte[] member = inFlight.removeFirst().get();
+            out.write(member);
+            compressedBytes += member.length;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("压缩被中断");
+        } catch (ExecutionException e) {
+            throw new IOException("压缩失败", e.getCause());
+        }
+    }
+
+    /**
+     * 把一块数据压缩成完整的 gzip 成员
+     */
+    static byte[] compress(byte[] data, int size, int level) {
+        Deflater deflater = new Deflater(level > 0 && isIncompressible(data, size) ? Deflater.NO_COMPRESSION : level, true);
+        try {
+            deflater.setInput(data, 0, size);
+            deflater.finish();
+            byte[] member = new byte[HEADER_BYTES + size + size / 1000 + 64 + TRAILER_BYTES];
+            int position = HEADER_BYTES;
+            while (!deflater.finished()) {
+                if (position == member.length - TRAILER_BYTES) {
+                    member = Arrays.copyOf(member, member.length * 2);
+                }
+                position += deflater.deflate(member, position, member.length - TRAILER_BYTES - position);
+            }
+            int total = position + TRAILER_BYTES;
+            member = Arrays.copyOf(member, total);
+
+            CRC32 crc = new CRC32();
+            crc.update(data, 0, size);
+            writeHeader(member, total);
+            writeIntLE(member, position, (int) crc.getValue());
+            writeIntLE(member, position + 4, size);
+            return member;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * 电子书（EPUB 本身是 zip）和封面图片大多已经压缩过，再压缩只浪费 CPU。
+     * 先用最快级别压缩块首、中、尾三段样本，都压不下去时整块按不压缩存储
+     */
+    private static boolean isIncompressible(byte[] data, int size) {
+        if (size < SAMPLE_BYTES * 4) {
+            return false;
+        }
+        Deflater probe = new Deflater(Deflater.BEST_SPEED, true);
+        try {
+            byte[] output = new byte[SAMPLE_BYTES];
+            for (int offset : new int[]{0, (size - SAMPLE_BYTES) / 2, size - SAMPLE_BYTES}) {
+                probe.reset();
+                probe.setInput(data, offset, SAMPLE_BYTES);
+                probe.finish();
+                int compressed = 0;
+                while (!probe.finished() && compressed < SAMPLE_BYTES) {
+                    compressed += probe.deflate(output);
+                }
+                if (compressed < SAMPLE_BYTES * INCOMPRESSIBLE_RATIO) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            probe.end();
+        }
+    }
+
+    private static void writeHeader(byte[] member, int total) {
+        member[0] = 0x1f;
+        member[1] = (byte) 0x8b;
+        member[2] = 8;      // deflate
+        member[3] = 4;      // FLG.FEXTRA
+        //MTIME 4 字节为 0，XFL 为 0
+        member[9] = (byte) 255; // OS 未知
+        member[10] = 8;     // XLEN
+        member[11] = 0;
+        member[12] = SUBFIELD_ID1;
+        member[13] = SUBFIELD_ID2;
+        member[14] = 4;     // 子字段长度
+        member[15] = 0;
+        writeIntLE(member, 16, total);
+    }
+
+    static void writeIntLE(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) value;
+        bytes[offset + 1] = (byte) (value >>> 8);
+        bytes[offset + 2] = (byte) (value >>> 16);
+        bytes[offset + 3] = (byte) (value >>> 24);
+    }
+}
@@ -0,0 +1,185 @@
+package com.example.kindle.service.archive;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 顺序读取 {@link TarWriter} 写出的归档：支持普通文件和 PAX 扩展头中的 path，其他类型的条目跳过。
+ */
+class TarReader implements AutoCloseable {
+
+    private final InputStream in;
+    private long remaining; // 当前条目未读的字节数
+    private long padding; // 当前条目之后的填充字节数
+
+    TarReader(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * 跳过当前条目未读的部分，读取下一个普通文件条目
+     * @return 下一个条目，归档结束时为 null
+     */
+    Entry next() throws IOException {
+        skipCurrent();
+        String paxPath = null;
+        while (true) {
+            byte[] header = in.readNBytes(TarWriter.BLOCK);
+            if (header.length == 0 || isZero(header)) {
+                return null;
+            }
+            if (header.length < TarWriter.BLOCK) {
+                throw new EOFException("归档不完整");
+            }
+            verifyChecksum(header);
+            long size = parseOctal(header, 124, 12);
+            byte type = header[156];
+            remaining = size;
+            padding = (TarWriter.BLOCK - size % TarWriter.BLOCK) % TarWriter.BLOCK;
+            if (type == 'x') {
+                if (size > 64 * 1024) {
+                    throw new IOException("PAX 扩展头过大");
+                }
+                paxPath = parsePaxPath(readCurrent());
+                skipCurrent();
+                continue;
+            }
+            if (type != '0' && type != 0) {
+                skipCurrent();
+                paxPath = null;
+                continue;
+            }
+            String name = paxPath != null ? paxPath : cString(header, 0, 100);
+            String prefix = cString(header, 345, 155);
+            if (paxPath == null && !prefix.isEmpty()) {
+                name = prefix + "/" + name;
+            }
+            return new Entry(name, size, new EntryStream());
+        }
+    }
+
+    /**
+     * 读取当前条目的全部内容，只用于清单等小文件
+     */
+    byte[] readCurrent() throws IOException {
+        byte[] content = in.readNBytes((int) remaining);
+        if (content.length != remaining) {
+            throw new EOFException("归档不完整");
+        }
+        remaining = 0;
+        return content;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private void skipCurrent() throws IOException {
+        long skip = remaining + padding;
+        remaining = 0;
+        padding = 0;
+        while (skip > 0) {
+            long skipped = in.skip(skip);
+            if (skipped <= 0) {
+                if (in.read() < 0) {
+                    throw new EOFException("归档不完整");
+                }
+                skipped = 1;
+            }
+            skip -= skipped;
+        }
+    }
+
+    private static void verifyChecksum(byte[] header) throws IOException {
+        long expected = parseOctal(header, 148, 8);
+        long actual = 0;
+        for (int i = 0; i < header.length; i++) {
+            actual += (i >= 148 && i < 156) ? ' ' : header[i] & 0xFF;
+        }
+        if (actual != expected) {
+            throw new IOException("归档头部校验失败");
+        }
+    }
+
+    private static long parseOctal(byte[] header, int offset, int length) {
+        long value = 0;
+        for (int i = offset; i < offset + length; i++) {
+            byte b = header[i];
+            if (b >= '0' && b <= '7') {
+                value = value * 8 + (b - '0');
+            } else if (b == 0 || (b == ' ' && value > 0)) {
+                break;
+            }
+        }
+        return value;
+    }
+
+    private static String cString(byte[] header, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && header[end] != 0) {
+            end++;
+        }
+        return new String(header, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    private static String parsePaxPath(byte[] records) {
+        String text = new String(records, StandardCharsets.UTF_8);
+        String path = null;
+        for (String record : text.split("\n")) {
+            int space = record.indexOf(' ');
+            int equals = record.indexOf('=', space + 1);
+            if (space > 0 && equals > space && record.substring(space + 1, equals).equals("path")) {
+                path = record.substring(equals + 1);
+            }
+        }
+        return path;
+    }
+
+    private static boolean isZero(byte[] block) {
+        for (byte b : block) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param name 条目名称
+     * @param size 内容字节数
+     * @param content 内容，读到条目末尾即结束，关闭不影响归档
+     */
+    record Entry(String name, long size, InputStream content) {
+    }
+
+    private class EntryStream extends InputStream {
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("归档不完整");
+            }
+            remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = in.read(b, off, (int) Math.min(len, remaining));
+            if (n < 0) {
+                throw new EOFException("归档不完整");
+            }
+            remaining -= n;
+            return n;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.kindle.service.archive;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 最简单的 ustar 写入，只写普通文件；名称超过 100 字节或含非 ASCII 字符时前置 PAX 扩展头。
+ * 条目大小必须事先知道，调用方负责写满声明的字节数。
+ */
+class TarWriter implements AutoCloseable {
+
+    static final int BLOCK = 512;
+    private static final long MAX_SIZE = 077777777777L; // 11 位八进制
+
+    private final OutputStream out;
+    private final byte[] copyBuffer = new byte[64 * 1024];
+    private long bytesWritten;
+
+    TarWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * 写入一个内存中的小文件
+     */
+    void write(String name, byte[] content, long modified) throws IOException {
+        writeHeader(name, content.length, modified);
+        out.write(content);
+        bytesWritten += content.length;
+        pad(content.length);
+    }
+
+    /**
+     * 写入文件内容，大小取打开时的通道大小，之后被追加的部分不写入
+     */
+    void write(String name, FileChannel channel, long size, long modified) throws IOException {
+        writeHeader(name, size, modified);
+        ByteBuffer buffer = ByteBuffer.wrap(copyBuffer);
+        long remaining = size;
+        long position = 0;
+        while (remaining > 0) {
+            buffer.clear().limit((int) Math.min(copyBuffer.length, remaining));
+            int n = channel.read(buffer, position);
+            if (n < 0) {
+                throw new IOException("文件在导出过程中被截断: " + name);
+            }
+            out.write(copyBuffer, 0, n);
+            position += n;
+            remaining -= n;
+        }
+        bytesWritten += size;
+        pad(size);
+    }
+
+    /**
+     * @return 已写入的未压缩字节数
+     */
+    long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * 写入两个全零块作为归档结尾，不关闭底层流
+     */
+    @Override
+    public void close() throws IOException {
+        out.write(new byte[BLOCK * 2]);
+        bytesWritten += BLOCK * 2;
+        out.flush();
+    }
+
+    private void writeHeader(String name, long size, long modified) throws IOException {
+        if (size > MAX_SIZE) {
+            throw new IOException("文件过大，无法写入归档: " + name);
+        }
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        if (nameBytes.length > 100 || nameBytes.length != name.length()) {
+            byte[] pax = paxRecord("path", name);
+            out.write(header("././@PaxHeader".getBytes(StandardCharsets.US_ASCII), pax.length, modified, (byte) 'x'));
+            out.write(pax);
+            bytesWritten += BLOCK + pax.length;
+            pad(pax.length);
+            nameBytes = truncatedAscii(name);
+        }
+        out.write(header(nameBytes, size, modified, (byte) '0'));
+        bytesWritten += BLOCK;
+    }
+
+    private static byte[] header(byte[] name, long size, long modified, byte type) {
+        byte[] header = new byte[BLOCK];
+        System.arraycopy(name, 0, header, 0, Math.min(name.length, 100));
+        octal(header, 100, 8, 0644);
+        octal(header, 108, 8, 0);
+        octal(header, 116, 8, 0);
+        octal(header, 124, 12, size);
+        octal(header, 136, 12, Math.max(0, modified / 1000));
+        header[156] = type;
+        System.arraycopy("ustar\u000000".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 8);
+        //校验和按该字段全为空格计算
+        for (int i = 148; i < 156; i++) {
+            header[i] = ' ';
+        }
+        long checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xFF;
+        }
+        octal(header, 148, 7, checksum);
+        return header;
+    }
+
+    /**
+     * 以 NUL 结尾的定长八进制字段
+     */
+    private static void octal(byte[] header, int offset, int length, long value) {
+        String digits = Long.toOctalString(value);
+        int pad = length - 1 - digits.length();
+        for (int i = 0; i < length - 1; i++) {
+            header[offset + i] = (byte) (i < pad ? '0' : digits.charAt(i - pad));
+        }
+        header[offset + length - 1] = 0;
+    }
+
+    /**
+     * PAX 记录 "长度 键=值\n"，长度包含自身的位数
+     */
+    private static byte[] paxRecord(String key, String value) {
+        int body = (" " + key + "=" + value + "\n").getBytes(StandardCharsets.UTF_8).length;
+        int length = body + String.valueOf(body).length();
+        if (String.valueOf(length).length() != String.valueOf(body).length()) {
+            length++;
+        }
+        return (length + " " + key + "=" + value + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 不支持 PAX 的工具看到的替代名称
+     */
+    private static byte[] truncatedAscii(String name) {
+        StringBuilder ascii = new StringBuilder();
+        for (int i = 0; i < name.length() && ascii.length() < 100; i++) {
+            char c = name.charAt(i);
+            ascii.append(c < 0x80 ? c : '_');
+        }
+        return ascii.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private void pad(long size) throws IOException {
+        int remainder = (int) (size % BLOCK);
+        if (remainder != 0) {
+            out.write(new byte[BLOCK - remainder]);
+            bytesWritten += BLOCK - remainder;
+        }
+    }
+}
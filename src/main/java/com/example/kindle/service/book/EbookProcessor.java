@@ -2,7 +2,9 @@ package com.example.kindle.service.book; // 创建一个新的 ebook 子包
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
 import java.util.Map;
 
 public interface EbookProcessor {
@@ -24,4 +26,43 @@ public interface EbookProcessor {
      * @throws IOException 如果文件处理失败
      */
     Map<String, String> process(InputStream inputStream, String originalFilename, Path saveDirectory) throws IOException;
+
+    /**
+     * 处理已经写入最终存储位置的电子书文件，提取元数据。
+     * 默认实现通过 process 重新保存一份并删除原文件，处理器应尽量覆盖以避免复制。
+     * @param ebookPath 已保存的电子书文件路径
+     * @param originalFilename 原始文件名
+     * @param saveDirectory 保存文件的目录路径
+     * @return 与 process 相同的元数据 Map
+     * @throws IOException 如果文件处理失败
+     */
+    default Map<String, String> processStored(Path ebookPath, String originalFilename, Path saveDirectory) throws IOException {
+        Map<String, String> metadata;
+        try (InputStream inputStream = Files.newInputStream(ebookPath)) {
+            metadata = process(inputStream, originalFilename, saveDirectory);
+        }
+        Files.deleteIfExists(ebookPath);
+        return metadata;
+    }
+
+    /**
+     * 提取电子书正文纯文本，用于相似度计算等。
+     * @param ebookPath 已保存的电子书文件路径
+     * @param maxChars 最多提取的字符数
+     * @return 正文纯文本，不支持时返回空字符串
+     * @throws IOException 如果文件读取失败
+     */
+    default String extractText(Path ebookPath, int maxChars) throws IOException {
+        return "";
+    }
+
+    /**
+     * 按阅读顺序提取各章节纯文本，用于书内搜索。
+     * @param ebookPath 已保存的电子书文件路径
+     * @return 章节文本列表，不支持时返回空列表
+     * @throws IOException 如果文件读取失败
+     */
+    default List<String> extractChapters(Path ebookPath) throws IOException {
+        return List.of();
+    }
 }
\ No newline at end of file
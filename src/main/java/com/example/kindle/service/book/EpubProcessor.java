@@ -1,22 +1,40 @@
 package com.example.kindle.service.book;
 
+import com.example.kindle.service.cover.CoverPlaceholders; // 封面占位计算
 import nl.siegmann.epublib.domain.Book; // 导入 epublib 库的 Book 类，代表一个电子书对象
+import nl.siegmann.epublib.domain.Resource; // epub 中的单个资源（章节、图片等）
+import nl.siegmann.epublib.domain.SpineReference; // 阅读顺序中的章节引用
 import nl.siegmann.epublib.epub.EpubReader; // 导入 epublib 库的 EpubReader，用于读取 EPUB 文件
+import org.slf4j.Logger; // 日志
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component; // Spring 注解，将此类标记为 Spring 组件
 
 import java.io.IOException; // IO 异常处理
 import java.io.InputStream; // 输入流
+import java.nio.charset.Charset; // 字符集
+import java.nio.charset.StandardCharsets; // 常用字符集
 import java.nio.file.Files; // 文件操作工具类
 import java.nio.file.Path; // 路径对象
 import java.nio.file.StandardCopyOption; // 文件复制选项
+import java.util.ArrayList; // 列表实现
 import java.util.HashMap; // Map 实现
 import java.util.List; // 列表
 import java.util.Map; // 映射
+import java.util.regex.Pattern; // 正则
 import java.util.stream.Collectors; // 流操作工具
 
 @Component // 核心注解：告诉 Spring 框架，这是一个组件（Bean），Spring 会自动管理它的生命周期
 public class EpubProcessor implements EbookProcessor { // 实现 EbookProcessor 接口
 
+    private static final Logger log = LoggerFactory.getLogger(EpubProcessor.class);
+
+    // 上传时最多提取的正文字符数，足够计算相似度签名
+    private static final int MAX_TEXT_CHARS = 200_000;
+
+    private static final Pattern SCRIPT_STYLE = Pattern.compile("(?is)<(script|style)[^>]*>.*?</\\1>");
+    private static final Pattern TAG = Pattern.compile("(?s)<[^>]*>");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
     /**
      * 检查此处理器是否支持给定的文件扩展名。
      *
@@ -41,8 +59,6 @@ public class EpubProcessor implements EbookProcessor { // 实现 EbookProcessor
      */
     @Override
     public Map<String, String> process(InputStream inputStream, String originalFilename, Path saveDirectory) throws IOException {
-        Map<String, String> metadata = new HashMap<>(); // 用于存储提取到的元数据
-
         // 1. 确保保存目录存在
         if (!Files.exists(saveDirectory)) {
             // 如果目录不存在，则创建所有必需的父目录
@@ -61,6 +77,29 @@ public class EpubProcessor implements EbookProcessor { // 实现 EbookProcessor
         // 3. 保存电子书文件
         Files.copy(inputStream, ebookPath, StandardCopyOption.REPLACE_EXISTING);
 
+        return readStored(ebookPath, originalFilename, saveDirectory, uniqueFilename);
+    }
+
+    /**
+     * 处理已经写入最终存储位置的电子书（例如分片上传完成的文件），不再复制文件。
+     *
+     * @param ebookPath        已保存的电子书文件路径
+     * @param originalFilename 原始文件名
+     * @param saveDirectory    保存文件的根目录，封面保存在其下的 cover 目录
+     * @return 与 process 相同的元数据 Map
+     * @throws IOException 如果文件处理失败
+     */
+    @Override
+    public Map<String, String> processStored(Path ebookPath, String originalFilename, Path saveDirectory) throws IOException {
+        return readStored(ebookPath, originalFilename, saveDirectory, String.valueOf(System.currentTimeMillis()));
+    }
+
+    /**
+     * 读取已保存电子书的元数据和封面，解析失败时删除该文件
+     */
+    private Map<String, String> readStored(Path ebookPath, String originalFilename, Path saveDirectory, String uniqueFilename) throws IOException {
+        Map<String, String> metadata = new HashMap<>(); // 用于存储提取到的元数据
+
         // 4. 使用 epublib 读取电子书元数据
         try (InputStream bookInputStream = Files.newInputStream(ebookPath)) {
             EpubReader epubReader = new EpubReader();
@@ -102,6 +141,12 @@ public class EpubProcessor implements EbookProcessor { // 实现 EbookProcessor
 
                 Files.write(coverPath, coverImageData);
                 metadata.put("coverPath", coverPath.toString());
+                metadata.put("coverExtracted", "true"); // 本次上传提取出的封面，拒绝上传时可以删除
+                //计算封面占位，失败时只是没有占位，不影响上传
+                CoverPlaceholders.compute(coverImageData).ifPresent(placeholder -> {
+                    metadata.put("coverColor", placeholder.color());
+                    metadata.put("coverBlurHash", placeholder.blurHash());
+                });
             } catch(IOException e){
                     System.out.println("处理封面图片失败"+e.getMessage());
                     metadata.put("coverPath", "default_cover.jpg");
@@ -109,6 +154,9 @@ public class EpubProcessor implements EbookProcessor { // 实现 EbookProcessor
 
             }
 
+            //4.5 提取正文纯文本，供相似度等计算使用
+            metadata.put("text", readText(epubBook, MAX_TEXT_CHARS));
+
         } catch (Exception e) {
             // 5. 错误处理：如果解析 EPUB 失败 (例如文件损坏或不是有效的 EPUB)，
             // 删除已经保存到服务器的文件，避免留下无效文件
@@ -119,4 +167,88 @@ public class EpubProcessor implements EbookProcessor { // 实现 EbookProcessor
 
         return metadata; // 返回包含提取元数据和文件路径的 Map
     }
+
+    /**
+     * 提取电子书正文纯文本
+     *
+     * @param ebookPath 已保存的电子书文件路径
+     * @param maxChars  最多提取的字符数
+     * @return 正文纯文本
+     * @throws IOException 如果文件读取失败
+     */
+    @Override
+    public String extractText(Path ebookPath, int maxChars) throws IOException {
+        try (InputStream bookInputStream = Files.newInputStream(ebookPath)) {
+            Book epubBook = new EpubReader().readEpub(bookInputStream);
+            return readText(epubBook, maxChars);
+        }
+    }
+
+    /**
+     * 按阅读顺序提取各章节纯文本
+     *
+     * @param ebookPath 已保存的电子书文件路径
+     * @return 章节文本列表
+     * @throws IOException 如果文件读取失败
+     */
+    @Override
+    public List<String> extractChapters(Path ebookPath) throws IOException {
+        try (InputStream bookInputStream = Files.newInputStream(ebookPath)) {
+            Book epubBook = new EpubReader().readEpub(bookInputStream);
+            return readChapters(epubBook);
+        }
+    }
+
+    /**
+     * 按阅读顺序拼接章节文本，超过 maxChars 后截断
+     */
+    private String readText(Book epubBook, int maxChars) {
+        StringBuilder text = new StringBuilder();
+        for (String chapter : readChapters(epubBook)) {
+            if (text.length() >= maxChars) {
+                break;
+            }
+            text.append(chapter, 0, Math.min(chapter.length(), maxChars - text.length())).append('\n');
+        }
+        return text.toString();
+    }
+
+    /**
+     * 按 spine 顺序读取每个章节并去掉 HTML 标签
+     */
+    private List<String> readChapters(Book epubBook) {
+        List<String> chapters = new ArrayList<>();
+        for (SpineReference reference : epubBook.getSpine().getSpineReferences()) {
+            Resource resource = reference.getResource();
+            if (resource == null) {
+                continue;
+            }
+            try {
+                chapters.add(htmlToText(new String(resource.getData(), charsetOf(resource))));
+            } catch (IOException e) {
+                log.warn("读取章节失败 {}: {}", resource.getHref(), e.getMessage());
+            }
+        }
+        return chapters;
+    }
+
+    private static Charset charsetOf(Resource resource) {
+        try {
+            return resource.getInputEncoding() != null ? Charset.forName(resource.getInputEncoding()) : StandardCharsets.UTF_8;
+        } catch (Exception e) {
+            return StandardCharsets.UTF_8;
+        }
+    }
+
+    private static String htmlToText(String html) {
+        String text = SCRIPT_STYLE.matcher(html).replaceAll(" ");
+        text = TAG.matcher(text).replaceAll(" ");
+        text = text.replace("&nbsp;", " ")
+                .replace("&lt;", "<")
+                .replace("&gt;", ">")
+                .replace("&quot;", "\"")
+                .replace("&#39;", "'")
+                .replace("&amp;", "&");
+        return WHITESPACE.matcher(text).replaceAll(" ").trim();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,118 @@
+package com.example.kindle.service.cover;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * BlurHash 编码：把图片压缩成二三十个字符的 DCT 分量，客户端解码后得到模糊的占位图。
+ * 算法与 https://github.com/woltapp/blurhash 一致
+ */
+public final class BlurHash {
+
+    private static final String BASE83 =
+            "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz#$%*+,-.:;=?@[]^_{|}~";
+
+    // sRGB 0~255 到线性空间的查表
+    private static final double[] SRGB_TO_LINEAR = new double[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            double v = i / 255.0;
+            SRGB_TO_LINEAR[i] = v <= 0.04045 ? v / 12.92 : Math.pow((v + 0.055) / 1.055, 2.4);
+        }
+    }
+
+    private BlurHash() {
+    }
+
+    /**
+     * @param image 图片，调用方应先缩小到几十像素，计算量与像素数成正比
+     * @param componentsX 横向分量数 1~9
+     * @param componentsY 纵向分量数 1~9
+     * @return BlurHash 字符串
+     */
+    public static String encode(BufferedImage image, int componentsX, int componentsY) {
+        if (componentsX < 1 || componentsX > 9 || componentsY < 1 || componentsY > 9) {
+            throw new IllegalArgumentException("分量数必须在 1~9 之间");
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+        double[] linear = new double[pixels.length * 3];
+        for (int i = 0; i < pixels.length; i++) {
+            linear[i * 3] = SRGB_TO_LINEAR[(pixels[i] >> 16) & 0xFF];
+            linear[i * 3 + 1] = SRGB_TO_LINEAR[(pixels[i] >> 8) & 0xFF];
+            linear[i * 3 + 2] = SRGB_TO_LINEAR[pixels[i] & 0xFF];
+        }
+
+        double[][] factors = new double[componentsX * componentsY][];
+        for (int j = 0; j < componentsY; j++) {
+            for (int i = 0; i < componentsX; i++) {
+                factors[j * componentsX + i] = basis(linear, width, height, i, j);
+            }
+        }
+
+        StringBuilder hash = new StringBuilder();
+        append(hash, (componentsX - 1) + (componentsY - 1) * 9, 1);
+
+        double maxValue = 1;
+        if (factors.length > 1) {
+            double actualMax = 0;
+            for (int k = 1; k < factors.length; k++) {
+                for (double value : factors[k]) {
+                    actualMax = Math.max(actualMax, Math.abs(value));
+                }
+            }
+            int quantisedMax = (int) Math.max(0, Math.min(82, Math.floor(actualMax * 166 - 0.5)));
+            maxValue = (quantisedMax + 1) / 166.0;
+            append(hash, quantisedMax, 1);
+        } else {
+            append(hash, 0, 1);
+        }
+
+        double[] dc = factors[0];
+        append(hash, (linearToSrgb(dc[0]) << 16) + (linearToSrgb(dc[1]) << 8) + linearToSrgb(dc[2]), 4);
+        for (int k = 1; k < factors.length; k++) {
+            double[] ac = factors[k];
+            int r = quantiseAc(ac[0], maxValue);
+            int g = quantiseAc(ac[1], maxValue);
+            int b = quantiseAc(ac[2], maxValue);
+            append(hash, r * 19 * 19 + g * 19 + b, 2);
+        }
+        return hash.toString();
+    }
+
+    private static double[] basis(double[] linear, int width, int height, int i, int j) {
+        double r = 0, g = 0, b = 0;
+        double normalisation = (i == 0 && j == 0) ? 1 : 2;
+        for (int y = 0; y < height; y++) {
+            double cosY = Math.cos(Math.PI * j * y / height);
+            for (int x = 0; x < width; x++) {
+                double factor = normalisation * Math.cos(Math.PI * i * x / width) * cosY;
+                int p = (y * width + x) * 3;
+                r += factor * linear[p];
+                g += factor * linear[p + 1];
+                b += factor * linear[p + 2];
+            }
+        }
+        double scale = 1.0 / (width * height);
+        return new double[]{r * scale, g * scale, b * scale};
+    }
+
+    private static int quantiseAc(double value, double maxValue) {
+        double signed = Math.copySign(Math.pow(Math.abs(value / maxValue), 0.5), value);
+        return (int) Math.max(0, Math.min(18, Math.floor(signed * 9 + 9.5)));
+    }
+
+    private static int linearToSrgb(double value) {
+        double v = Math.max(0, Math.min(1, value));
+        double srgb = v <= 0.0031308 ? v * 12.92 : 1.055 * Math.pow(v, 1 / 2.4) - 0.055;
+        return (int) Math.round(srgb * 255);
+    }
+
+    private static void append(StringBuilder hash, int value, int length) {
+        for (int i = 1; i <= length; i++) {
+            int digit = (value / (int) Math.pow(83, length - i)) % 83;
+            hash.append(BASE83.charAt(digit));
+        }
+    }
+}
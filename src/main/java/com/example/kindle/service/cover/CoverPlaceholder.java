@@ -0,0 +1,9 @@
+package com.example.kindle.service.cover;
+
+/**
+ * 封面占位信息，随书籍列表一起返回，客户端在真实封面加载前先绘制
+ * @param color 主色调，形如 #a1b2c3
+ * @param blurHash BlurHash 字符串
+ */
+public record CoverPlaceholder(String color, String blurHash) {
+}
@@ -0,0 +1,136 @@
+package com.example.kindle.service.cover;
+
+import com.example.kindle.event.CoverPlaceholdersChangedEvent;
+import com.example.kindle.repository.BookRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * 启动后为已有书籍回填封面占位：按id分批读取缺少占位的书，批内并行解码封面，每批一个事务写回。
+ * 每批只发布一个 CoverPlaceholdersChangedEvent，热门和相似书籍快照替换占位字段即可，
+ * 不按书发布 BookChangedEvent，避免触发相似度重算、查重重载、OPDS 重载等逐本刷新。
+ * 全部补齐后再启动只会查到无法解码的封面，开销可以忽略
+ */
+@Component
+public class CoverPlaceholderBackfill {
+
+    private static final Logger log = LoggerFactory.getLogger(CoverPlaceholderBackfill.class);
+
+    private static final int PAGE_SIZE = 500;
+
+    private final BookRepository bookRepository;
+    private final TransactionTemplate readTemplate;
+    private final TransactionTemplate writeTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${cover.backfill.enabled:true}")
+    private boolean enabled;
+    @Value("${cover.backfill.parallelism:0}")
+    private int parallelism; // 解码封面的并行度，0 表示 CPU 核数
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "cover-backfill");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private ForkJoinPool pool;
+
+    public CoverPlaceholderBackfill(BookRepository bookRepository, PlatformTransactionManager transactionManager,
+                                    ApplicationEventPublisher eventPublisher) {
+        this.bookRepository = bookRepository;
+        this.eventPublisher = eventPublisher;
+        this.readTemplate = new TransactionTemplate(transactionManager);
+        this.readTemplate.setReadOnly(true);
+        this.writeTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!enabled) {
+            return;
+        }
+        pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        executor.submit(() -> {
+            try {
+                backfill();
+            } catch (Exception e) {
+                log.warn("回填封面占位失败", e);
+            } finally {
+                pool.shutdown();
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+    void backfill() throws ExecutionException, InterruptedException {
+        long start = System.currentTimeMillis();
+        int updated = 0;
+        int failed = 0;
+        long lastId = 0;
+        while (!Thread.currentThread().isInterrupted()) {
+            long after = lastId;
+            List<Object[]> page = readTemplate.execute(status ->
+                    bookRepository.findCoversWithoutPlaceholder(after, PageRequest.of(0, PAGE_SIZE)));
+            if (page == null || page.isEmpty()) {
+                break;
+            }
+            lastId = (Long) page.get(page.size() - 1)[0];
+
+            List<Result> results = pool.submit(() -> page.parallelStream()
+                    .map(row -> new Result((Long) row[0], (String) row[1],
+                            CoverPlaceholders.compute(Paths.get((String) row[1]))))
+                    .toList()).get();
+
+            List<Long> written = writeTemplate.execute(status -> {
+                List<Long> ids = new ArrayList<>();
+                for (Result result : results) {
+                    if (result.placeholder().isPresent()) {
+                        CoverPlaceholder placeholder = result.placeholder().get();
+                        if (bookRepository.updateCoverPlaceholder(result.id(), result.coverPath(),
+                                placeholder.color(), placeholder.blurHash()) > 0) {
+                            ids.add(result.id());
+                        }
+                    }
+                }
+                if (!ids.isEmpty()) {
+                    //事务提交后才会通知监听器
+                    eventPublisher.publishEvent(new CoverPlaceholdersChangedEvent(List.copyOf(ids)));
+                }
+                return ids;
+            });
+            updated += written == null ? 0 : written.size();
+            failed += (int) results.stream().filter(result -> result.placeholder().isEmpty()).count();
+        }
+        if (updated > 0 || failed > 0) {
+            log.info("封面占位回填完成，更新{}本，无法解码{}本，耗时{}ms", updated, failed, System.currentTimeMillis() - start);
+        }
+    }
+
+    private record Result(Long id, String coverPath, Optional<CoverPlaceholder> placeholder) {
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.kindle.service.cover;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Optional;
+
+/**
+ * 从封面图片计算占位信息：先缩小到 32 像素以内，再取主色调和 BlurHash。
+ * 占位只是锦上添花，任何解码失败（格式错误、超大图片、解码器异常、内存不足）都返回空，不影响上传
+ */
+public final class CoverPlaceholders {
+
+    private static final int SAMPLE_SIZE = 32;
+    private static final int COMPONENTS_X = 4;
+    private static final int COMPONENTS_Y = 3;
+    //超过这个像素数的图片不解码，防止解压炸弹
+    private static final long MAX_PIXELS = 100_000_000L;
+
+    private CoverPlaceholders() {
+    }
+
+    /**
+     * @param cover 封面文件
+     * @return 占位信息，文件不存在或无法解码时为空
+     */
+    public static Optional<CoverPlaceholder> compute(Path cover) {
+        if (cover == null || !Files.isRegularFile(cover)) {
+            return Optional.empty();
+        }
+        try (InputStream in = Files.newInputStream(cover)) {
+            return compute(in);
+        } catch (IOException | RuntimeException | OutOfMemoryError e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * @param cover 封面图片字节
+     * @return 占位信息，无法解码时为空
+     */
+    public static Optional<CoverPlaceholder> compute(byte[] cover) {
+        if (cover == null) {
+            return Optional.empty();
+        }
+        try {
+            return compute(new ByteArrayInputStream(cover));
+        } catch (IOException | RuntimeException | OutOfMemoryError e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * 先从文件头读出尺寸，过大的图片直接放弃；解码时按比例隔行隔列采样，只解出略大于采样尺寸的图像
+     */
+    private static Optional<CoverPlaceholder> compute(InputStream in) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(in)) {
+            if (input == null) {
+                return Optional.empty();
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return Optional.empty();
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if (width <= 0 || height <= 0 || (long) width * height > MAX_PIXELS) {
+                    return Optional.empty();
+                }
+                ImageReadParam param = reader.getDefaultReadParam();
+                int step = Math.max(1, Math.max(width, height) / (SAMPLE_SIZE * 4));
+                param.setSourceSubsampling(step, step, 0, 0);
+                BufferedImage image = reader.read(0, param);
+                BufferedImage sample = downscale(image);
+                return Optional.of(new CoverPlaceholder(dominantColor(sample), BlurHash.encode(sample, COMPONENTS_X, COMPONENTS_Y)));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static BufferedImage downscale(BufferedImage image) {
+        double scale = Math.min(1.0, (double) SAMPLE_SIZE / Math.max(image.getWidth(), image.getHeight()));
+        int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+        BufferedImage sample = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = sample.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(image, 0, 0, width, height, null);
+        g.dispose();
+        return sample;
+    }
+
+    /**
+     * 每个通道量化为 4 位后统计出现最多的颜色桶，返回桶内像素的平均色
+     */
+    private static String dominantColor(BufferedImage image) {
+        int[] pixels = image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+        int[] counts = new int[4096];
+        long[] sums = new long[4096 * 3];
+        int best = 0;
+        for (int pixel : pixels) {
+            int r = (pixel >> 16) & 0xFF, g = (pixel >> 8) & 0xFF, b = pixel & 0xFF;
+            int bucket = (r >> 4) << 8 | (g >> 4) << 4 | (b >> 4);
+            counts[bucket]++;
+            sums[bucket * 3] += r;
+            sums[bucket * 3 + 1] += g;
+            sums[bucket * 3 + 2] += b;
+            if (counts[bucket] > counts[best]) {
+                best = bucket;
+            }
+        }
+        int n = counts[best];
+        return String.format("#%02x%02x%02x", sums[best * 3] / n, sums[best * 3 + 1] / n, sums[best * 3 + 2] / n);
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.kindle.service.dedup;
+
+/**
+ * 去重模式为 reject 时拒绝疑似重复的上传，对应 HTTP 409
+ */
+public class DuplicateBookException extends RuntimeException {
+
+    private final Long existingBookId;
+
+    public DuplicateBookException(Long existingBookId) {
+        super("疑似重复上传，与已有书籍id为" + existingBookId + "的书相似");
+        this.existingBookId = existingBookId;
+    }
+
+    /**
+     * @return 相似的已有书籍id
+     */
+    public Long getExistingBookId() {
+        return existingBookId;
+    }
+}
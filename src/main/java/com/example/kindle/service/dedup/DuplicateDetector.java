@@ -0,0 +1,266 @@
+package com.example.kindle.service.dedup;
+
+import com.example.kindle.event.BookChangedEvent;
+import com.example.kindle.repository.BookRepository;
+import com.example.kindle.service.recommend.MinHash;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+/**
+ * 上传时的近似重复检测：正文 MinHash 签名按 16 段 × 4 行做 LSH 分桶，
+ * 另加一个"规范化标题 + 作者"的桶，命中的候选书再用签名估计相似度确认；
+ * 桶只用哈希定位，标题作者是否一致按规范化后的字符串比较，哈希碰撞不会误判。
+ * 单次检查只查 17 个桶，与书籍总数无关。
+ */
+@Service
+public class DuplicateDetector {
+
+    private static final Logger log = LoggerFactory.getLogger(DuplicateDetector.class);
+
+    private static final int BANDS = 16;
+    private static final int ROWS = MinHash.NUM_HASHES / BANDS;
+    private static final int PAGE_SIZE = 2000;
+    private static final Pattern BRACKETS = Pattern.compile("[(（\\[【](.*?)[)）\\]】]");
+    //括号里的版本、格式、译者等信息不影响是否同一本书
+    private static final Pattern EDITION_NOISE = Pattern.compile(
+            "(?iu)(版|修订|典藏|精装|平装|珍藏|全本|足本|插图|注释|译|双语|中英|edition|\\bed\\.|revised|unabridged|"
+                    + "abridged|annotated|illustrated|translated|epub|mobi|azw3?|pdf|kindle)");
+    //分卷信息必须保留，否则同一套书的各卷会被当成同一本
+    private static final Pattern VOLUME = Pattern.compile(
+            "(?iu)(^\\s*[上中下]\\s*$|^\\s*\\d+\\s*$|第.*[卷册部集篇辑]|[卷册部集篇辑]\\s*[\\d一二三四五六七八九十]"
+                    + "|[\\d一二三四五六七八九十]+\\s*[卷册部集篇辑]|\\b(vol|volume|part|book|tome|no)\\b)");
+
+    private final BookRepository bookRepository;
+    private final TransactionTemplate readTemplate;
+
+    @Value("${dedup.mode:flag}")
+    private String mode; // off：不检测，flag：标记 duplicateOf，reject：拒绝上传
+    @Value("${dedup.content-threshold:0.8}")
+    private double contentThreshold;
+    @Value("${dedup.metadata-content-threshold:0.3}")
+    private double metadataContentThreshold; // 标题作者一致时放宽的正文相似度要求
+
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+    private final LshIndex index = new LshIndex(1 << 16);
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * @param metadata 规范化的标题和作者，标题为空时为 null
+     */
+    private record Entry(int[] signature, String metadata) {
+    }
+
+    public DuplicateDetector(BookRepository bookRepository, PlatformTransactionManager transactionManager) {
+        this.bookRepository = bookRepository;
+        this.readTemplate = new TransactionTemplate(transactionManager);
+        this.readTemplate.setReadOnly(true);
+    }
+
+    public boolean isEnabled() {
+        return !"off".equalsIgnoreCase(mode);
+    }
+
+    public boolean isRejectMode() {
+        return "reject".equalsIgnoreCase(mode);
+    }
+
+    /**
+     * 查找与待上传书籍最相似的已有书籍
+     * @param title 标题
+     * @param author 作者
+     * @param signature 正文签名，可以为 null
+     * @return 超过阈值的最相似书籍
+     */
+    public Optional<DuplicateMatch> findDuplicate(String title, String author, int[] signature) {
+        if (!isEnabled()) {
+            return Optional.empty();
+        }
+        String metadata = normalizedMetadata(title, author);
+        Set<Long> candidates = new HashSet<>();
+        lock.readLock().lock();
+        try {
+            if (signature != null) {
+                for (int band = 0; band < BANDS; band++) {
+                    index.forEach(bandKey(signature, band), candidates::add);
+                }
+            }
+            if (metadata != null) {
+                index.forEach(metadataBucket(metadata), candidates::add);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        DuplicateMatch best = null;
+        for (Long candidateId : candidates) {
+            Entry entry = entries.get(candidateId);
+            if (entry == null) {
+                continue;
+            }
+            double similarity = MinHash.similarity(signature, entry.signature());
+            boolean sameMetadata = metadata != null && metadata.equals(entry.metadata());
+            boolean duplicate = similarity >= contentThreshold
+                    || (sameMetadata && (signature == null || entry.signature() == null || similarity >= metadataContentThreshold));
+            if (duplicate && (best == null || similarity > best.similarity())) {
+                best = new DuplicateMatch(candidateId, similarity, sameMetadata);
+            }
+        }
+        return Optional.ofNullable(best);
+    }
+
+    /**
+     * 启动时按id区间并行从数据库读取签名重建索引，不阻塞启动
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!isEnabled()) {
+            return;
+        }
+        Thread thread = new Thread(this::rebuild, "duplicate-index-rebuild");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onBookChanged(BookChangedEvent event) {
+        if (!isEnabled()) {
+            return;
+        }
+        remove(event.bookId());
+        if (event.type() == BookChangedEvent.Type.SAVED) {
+            readTemplate.executeWithoutResult(status -> bookRepository.findById(event.bookId())
+                    .ifPresent(book -> add(book.getId(), book.getTitle(), book.getAuthor(),
+                            MinHash.fromBytes(book.getContentSignature()))));
+        }
+    }
+
+    void rebuild() {
+        try {
+            long start = System.currentTimeMillis();
+            Long maxId = readTemplate.execute(status -> bookRepository.findMaxId());
+            lock.writeLock().lock();
+            try {
+                index.clear();
+                entries.clear();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            if (maxId == null) {
+                return;
+            }
+            int partitions = Runtime.getRuntime().availableProcessors();
+            long step = maxId / partitions + 1;
+            IntStream.range(0, partitions).parallel().forEach(p -> loadRange(p * step, Math.min(maxId, (p + 1) * step)));
+            log.info("重复检测索引重建完成，共{}本，耗时{}ms", entries.size(), System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.warn("重建重复检测索引失败", e);
+        }
+    }
+
+    /**
+     * 读取 (from, to] 区间内的书籍签名
+     */
+    private void loadRange(long from, long to) {
+        long after = from;
+        while (after < to) {
+            long cursor = after;
+            List<Object[]> rows = readTemplate.execute(status ->
+                    bookRepository.findSignatures(cursor, to, PageRequest.of(0, PAGE_SIZE)));
+            if (rows == null || rows.isEmpty()) {
+                return;
+            }
+            for (Object[] row : rows) {
+                add((Long) row[0], (String) row[1], (String) row[2], MinHash.fromBytes((byte[]) row[3]));
+            }
+            after = (Long) rows.get(rows.size() - 1)[0];
+        }
+    }
+
+    private void add(Long bookId, String title, String author, int[] signature) {
+        Entry entry = new Entry(signature, normalizedMetadata(title, author));
+        lock.writeLock().lock();
+        try {
+            if (entries.putIfAbsent(bookId, entry) != null) {
+                return;
+            }
+            if (signature != null) {
+                for (int band = 0; band < BANDS; band++) {
+                    index.put(bandKey(signature, band), bookId);
+                }
+            }
+            if (entry.metadata() != null) {
+                index.put(metadataBucket(entry.metadata()), bookId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void remove(Long bookId) {
+        lock.writeLock().lock();
+        try {
+            Entry entry = entries.remove(bookId);
+            if (entry == null) {
+                return;
+            }
+            if (entry.signature() != null) {
+                for (int band = 0; band < BANDS; band++) {
+                    index.remove(bandKey(entry.signature(), band), bookId);
+                }
+            }
+            if (entry.metadata() != null) {
+                index.remove(metadataBucket(entry.metadata()), bookId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static int bandKey(int[] signature, int band) {
+        long hash = band;
+        for (int r = 0; r < ROWS; r++) {
+            hash = 31 * hash + signature[band * ROWS + r];
+        }
+        return (int) MinHash.mix(hash);
+    }
+
+    /**
+     * 规范化标题 + 作者：去掉括号中的版本、格式信息，保留分卷信息，只留字母数字并转小写
+     * @return 标题为空时返回 null 表示不参与匹配
+     */
+    static String normalizedMetadata(String title, String author) {
+        String titleKey = MinHash.normalize(title == null ? "" : BRACKETS.matcher(title).replaceAll(match ->
+                isEditionNoise(match.group(1)) ? "" : Matcher.quoteReplacement(match.group())));
+        if (titleKey.isEmpty()) {
+            return null;
+        }
+        return titleKey + "\u0000" + MinHash.normalize(author);
+    }
+
+    private static boolean isEditionNoise(String bracketed) {
+        return EDITION_NOISE.matcher(bracketed).find() && !VOLUME.matcher(bracketed).find();
+    }
+
+    /**
+     * 标题作者所在的桶，只用于查找候选
+     */
+    private static int metadataBucket(String metadata) {
+        return (int) MinHash.mix(((long) BANDS << 56) ^ metadata.hashCode());
+    }
+}
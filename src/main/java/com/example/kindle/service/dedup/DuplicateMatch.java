@@ -0,0 +1,10 @@
+package com.example.kindle.service.dedup;
+
+/**
+ * 疑似重复的已有书籍
+ * @param bookId 已有书籍id
+ * @param similarity 正文相似度估计
+ * @param sameMetadata 规范化后的标题和作者是否一致
+ */
+public record DuplicateMatch(Long bookId, double similarity, boolean sameMetadata) {
+}
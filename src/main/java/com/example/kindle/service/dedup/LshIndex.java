@@ -0,0 +1,97 @@
+package com.example.kindle.service.dedup;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * 基本类型数组实现的 int -> long 多值哈希表，用作 LSH 分桶。
+ * 每个条目只占 keys/values/next 三个数组槽位，百万本书 × 17 个桶约 350MB 以内，
+ * 避免 HashMap<Long, Set<Long>> 的装箱开销。非线程安全，由调用方加锁。
+ */
+final class LshIndex {
+
+    private static final long REMOVED = Long.MIN_VALUE;
+
+    private int[] keys;
+    private long[] values;
+    private int[] next;
+    private int[] heads;
+    private int size;
+    private int live;
+
+    LshIndex(int initialCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(16, initialCapacity - 1) << 1);
+        allocate(capacity);
+    }
+
+    void put(int key, long value) {
+        if (size == keys.length) {
+            resize(live * 2 >= keys.length ? keys.length << 1 : keys.length);
+        }
+        int bucket = bucket(key);
+        keys[size] = key;
+        values[size] = value;
+        next[size] = heads[bucket];
+        heads[bucket] = size;
+        size++;
+        live++;
+    }
+
+    void forEach(int key, LongConsumer consumer) {
+        for (int entry = heads[bucket(key)]; entry >= 0; entry = next[entry]) {
+            if (keys[entry] == key && values[entry] != REMOVED) {
+                consumer.accept(values[entry]);
+            }
+        }
+    }
+
+    /**
+     * 标记删除，空间在下次扩容时回收
+     */
+    void remove(int key, long value) {
+        for (int entry = heads[bucket(key)]; entry >= 0; entry = next[entry]) {
+            if (keys[entry] == key && values[entry] == value) {
+                values[entry] = REMOVED;
+                live--;
+                return;
+            }
+        }
+    }
+
+    void clear() {
+        Arrays.fill(heads, -1);
+        size = 0;
+        live = 0;
+    }
+
+    int size() {
+        return live;
+    }
+
+    private int bucket(int key) {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (heads.length - 1);
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new long[capacity];
+        next = new int[capacity];
+        heads = new int[capacity];
+        Arrays.fill(heads, -1);
+        size = 0;
+        live = 0;
+    }
+
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        long[] oldValues = values;
+        int oldSize = size;
+        allocate(capacity);
+        for (int i = 0; i < oldSize; i++) {
+            if (oldValues[i] != REMOVED) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+}
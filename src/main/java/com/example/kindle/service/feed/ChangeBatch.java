@@ -0,0 +1,14 @@
+package com.example.kindle.service.feed;
+
+import com.example.kindle.entity.ChangeEvent;
+
+import java.util.List;
+
+/**
+ * 一批按序号排列的变更
+ * @param events 变更列表
+ * @param since 下次请求使用的序号，即本批最后一条变更的序号；没有变更时为请求的序号
+ * @param hasMore 是否还有已发布的变更未返回
+ */
+public record ChangeBatch(List<ChangeEvent> events, long since, boolean hasMore) {
+}
@@ -0,0 +1,11 @@
+package com.example.kindle.service.feed;
+
+/**
+ * 请求的序号早于保留期，之后的部分变更已被清理，客户端需要重新全量同步
+ */
+public class ChangeFeedGoneException extends RuntimeException {
+
+    public ChangeFeedGoneException(String message) {
+        super(message);
+    }
+}
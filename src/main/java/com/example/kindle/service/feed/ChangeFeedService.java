@@ -0,0 +1,321 @@
+package com.example.kindle.service.feed;
+
+import com.example.kindle.config.RoutingContext;
+import com.example.kindle.entity.ChangeEvent;
+import com.example.kindle.repository.ChangeEventRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 书库变更流：业务修改时在同一事务中写入 change_event（事务性发件箱），
+ * 分发线程按序号顺序读出并发布到内存缓冲，客户端从某个序号开始增量拉取或订阅。
+ * <p>
+ * 自增序号在插入时分配、提交顺序却可能不同，所以分发线程遇到序号空洞时先等待，
+ * 超过 gap-timeout 仍未补上才视为回滚留下的空洞并跳过，保证已发布的序号之前不会再冒出新变更。
+ */
+@Service
+public class ChangeFeedService {
+
+    private static final Logger log = LoggerFactory.getLogger(ChangeFeedService.class);
+
+    private static final int PURGE_CHUNK_SIZE = 5000;
+
+    private final ChangeEventRepository changeEventRepository;
+    private final TransactionTemplate template;
+    //只读查询也固定走主库（见 readOnPrimary），避免从库延迟导致分发线程误判空洞
+    private final TransactionTemplate readTemplate;
+
+    @Value("${feed.batch-size:500}")
+    private int batchSize; // 单次读取、发布的最大条数
+    @Value("${feed.buffer-size:10000}")
+    private int bufferSize; // 内存中保留的最近变更条数，更早的从数据库读
+    @Value("${feed.poll-interval:PT1S}")
+    private Duration pollInterval;
+    @Value("${feed.gap-timeout:PT10S}")
+    private Duration gapTimeout;
+    @Value("${feed.retention:P7D}")
+    private Duration retention;
+
+    //以下发布状态只在分发线程中修改
+    private final ConcurrentSkipListMap<Long, ChangeEvent> buffer = new ConcurrentSkipListMap<>();
+    private int buffered;
+    private volatile long bufferFloor; // 缓冲中最早一条之前已发布的最大序号
+    private volatile long head; // 已发布的最大序号
+    private volatile long purgedThrough; // 已清理的最大序号
+    private long gapAt;
+    private long gapSince;
+
+    private final Set<Runnable> listeners = ConcurrentHashMap.newKeySet();
+    private final Semaphore wakeUp = new Semaphore(0);
+    private Thread dispatcher;
+
+    public ChangeFeedService(ChangeEventRepository changeEventRepository, PlatformTransactionManager transactionManager) {
+        this.changeEventRepository = changeEventRepository;
+        this.template = new TransactionTemplate(transactionManager);
+        this.readTemplate = new TransactionTemplate(transactionManager);
+        this.readTemplate.setReadOnly(true);
+    }
+
+    /**
+     * 记录一条变更，必须在业务修改所在的事务中调用，提交后唤醒分发线程
+     * @param entityType 变更对象类型
+     * @param entityId 变更对象id
+     * @param action 变更动作
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void record(ChangeEvent.EntityType entityType, Long entityId, ChangeEvent.Action action) {
+        ChangeEvent event = new ChangeEvent();
+        event.setEntityType(entityType);
+        event.setEntityId(entityId);
+        event.setAction(action);
+        event.setCreatedAt(Instant.now());
+        changeEventRepository.save(event);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                wakeUp.release();
+            }
+        });
+    }
+
+    /**
+     * @return 已发布的最大序号，客户端全量同步前先记下，之后从这里开始增量同步
+     */
+    public long head() {
+        return head;
+    }
+
+    /**
+     * 读取 since 之后已发布的变更
+     * @param since 上次同步到的序号
+     * @param limit 最多返回条数
+     * @return 变更批次
+     * @throws ChangeFeedGoneException since 之后的部分变更已被清理
+     */
+    public ChangeBatch read(long since, int limit) {
+        if (since < purgedThrough) {
+            throw new ChangeFeedGoneException("序号" + since + "之后的部分变更已过期清理，请重新全量同步");
+        }
+        int size = Math.max(1, Math.min(limit, batchSize));
+        long until = head;
+        if (since >= until) {
+            return new ChangeBatch(List.of(), since, false);
+        }
+        List<ChangeEvent> events = null;
+        if (since >= bufferFloor) {
+            events = new ArrayList<>(size);
+            for (ChangeEvent event : buffer.tailMap(since, false).values()) {
+                if (event.getId() > until || events.size() >= size) {
+                    break;
+                }
+                events.add(event);
+            }
+            //遍历期间分发线程可能淘汰了 since 之后的条目，水位越过 since 时结果可能缺条，改读数据库
+            if (since < bufferFloor) {
+                events = null;
+            }
+        }
+        if (events == null) {
+            events = readOnPrimary(() -> changeEventRepository
+                    .findByIdGreaterThanAndIdLessThanEqualOrderByIdAsc(since, until, PageRequest.of(0, size)));
+        }
+        long last = events.isEmpty() ? until : events.get(events.size() - 1).getId();
+        return new ChangeBatch(events, last, last < until);
+    }
+
+    /**
+     * 长轮询：有新变更时立即返回，否则最多等待 wait 后返回空批次
+     * @param since 上次同步到的序号
+     * @param limit 最多返回条数
+     * @param wait 最长等待时间
+     * @return 变更批次；序号已过期时为 410
+     */
+    public DeferredResult<ResponseEntity<?>> poll(long since, int limit, Duration wait) {
+        DeferredResult<ResponseEntity<?>> result = new DeferredResult<>(wait.toMillis(),
+                ResponseEntity.ok(new ChangeBatch(List.of(), since, false)));
+        try {
+            ChangeBatch batch = read(since, limit);
+            if (!batch.events().isEmpty() || wait.isZero() || wait.isNegative()) {
+                result.setResult(ResponseEntity.ok(batch));
+                return result;
+            }
+        } catch (ChangeFeedGoneException e) {
+            result.setResult(ResponseEntity.status(410).body(e.getMessage()));
+            return result;
+        }
+
+        Runnable listener = () -> {
+            if (head > since && !result.isSetOrExpired()) {
+                try {
+                    result.setResult(ResponseEntity.ok(read(since, limit)));
+                } catch (ChangeFeedGoneException e) {
+                    result.setResult(ResponseEntity.status(410).body(e.getMessage()));
+                }
+            }
+        };
+        listeners.add(listener);
+        result.onCompletion(() -> listeners.remove(listener));
+        //注册前可能刚好发布了新变更
+        listener.run();
+        return result;
+    }
+
+    /**
+     * 注册发布监听，在分发线程中回调，回调中不应阻塞
+     */
+    public void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Runnable listener) {
+        listeners.remove(listener);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        //从稍早的位置开始，启动时其他节点尚未提交的变更也能按空洞规则发布
+        Instant safePoint = Instant.now().minus(gapTimeout);
+        readOnPrimary(() -> {
+            Long minId = changeEventRepository.findMinId();
+            Long safeId = changeEventRepository.findMaxIdBefore(safePoint);
+            long floor = minId == null ? 0 : minId - 1;
+            purgedThrough = floor;
+            head = safeId == null ? floor : Math.max(safeId, floor);
+            bufferFloor = head;
+            return null;
+        });
+        dispatcher = new Thread(this::dispatchLoop, "change-feed");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (dispatcher != null) {
+            dispatcher.interrupt();
+        }
+    }
+
+    private void dispatchLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                wakeUp.tryAcquire(pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+                wakeUp.drainPermits();
+                while (dispatchOnce()) {
+                    //整批发布说明可能还有积压，继续读
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                log.warn("分发变更失败", e);
+            }
+        }
+    }
+
+    /**
+     * 按序号读取未发布的变更，遇到未超时的空洞时停在空洞之前
+     * @return 是否读满一整批
+     */
+    private boolean dispatchOnce() {
+        long after = head;
+        List<ChangeEvent> page = readOnPrimary(() ->
+                changeEventRepository.findByIdGreaterThanOrderByIdAsc(after, PageRequest.of(0, batchSize)));
+        if (page == null || page.isEmpty()) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        long expected = after + 1;
+        List<ChangeEvent> ready = new ArrayList<>(page.size());
+        for (ChangeEvent event : page) {
+            if (event.getId() != expected) {
+                if (gapAt != expected) {
+                    gapAt = expected;
+                    gapSince = now;
+                }
+                if (now - gapSince < gapTimeout.toMillis()) {
+                    break;
+                }
+                log.debug("变更序号{}~{}超时未出现，按回滚处理", expected, event.getId() - 1);
+            }
+            ready.add(event);
+            expected = event.getId() + 1;
+        }
+        publish(ready);
+        return ready.size() == batchSize;
+    }
+
+    private void publish(List<ChangeEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        for (ChangeEvent event : events) {
+            buffer.put(event.getId(), event);
+            buffered++;
+        }
+        while (buffered > bufferSize) {
+            //先提高水位再移除，读取方遍历时漏掉的条目一定能通过水位发现
+            Long evicted = buffer.firstKey();
+            bufferFloor = evicted;
+            buffer.remove(evicted);
+            buffered--;
+        }
+        head = events.get(events.size() - 1).getId();
+        for (Runnable listener : listeners) {
+            try {
+                listener.run();
+            } catch (Exception e) {
+                log.warn("变更监听处理失败", e);
+            }
+        }
+    }
+
+    /**
+     * 清理超过保留期的变更，每批单独提交
+     */
+    @Scheduled(initialDelayString = "PT1H", fixedDelayString = "PT1H")
+    public void purgeExpired() {
+        Long maxId = readOnPrimary(() -> changeEventRepository.findMaxIdBefore(Instant.now().minus(retention)));
+        if (maxId == null) {
+            return;
+        }
+        //先提高水位，避免客户端读到清理了一半的区间
+        purgedThrough = Math.max(purgedThrough, maxId);
+        int deleted;
+        do {
+            deleted = template.execute(status -> changeEventRepository.deleteUpTo(maxId, PURGE_CHUNK_SIZE));
+        } while (deleted >= PURGE_CHUNK_SIZE);
+    }
+
+    /**
+     * 只读事务中查询，固定走主库：不占用写事务，也不会让读写分离把当前调用方判定为刚写过
+     */
+    private <T> T readOnPrimary(Supplier<T> query) {
+        return RoutingContext.onPrimary(() -> readTemplate.execute(status -> query.get()));
+    }
+}
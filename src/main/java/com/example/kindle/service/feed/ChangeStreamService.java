@@ -0,0 +1,210 @@
+package com.example.kindle.service.feed;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 变更流的 SSE 推送。每个订阅者只记录自己的游标，不为它排队变更：
+ * 有新发布时安排一次发送任务，从游标处按批读取并发送，慢的订阅者只会落后，
+ * 不会占用额外内存；落后超出内存缓冲时改从数据库读取。
+ * 每轮发送最多若干批后让出线程，避免一个慢连接长期占用发送线程。
+ * 写入交给单独的写线程，发送线程最多等待 feed.sse.write-timeout，超时的订阅者被断开，
+ * 卡住的写入只占用写线程，直到容器的写超时使其失败，不会拖住其他订阅者。
+ */
+@Service
+public class ChangeStreamService {
+
+    private static final int BATCHES_PER_TURN = 4;
+
+    private final ChangeFeedService changeFeedService;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final ExecutorService sender;
+    private final ExecutorService writer;
+
+    @Value("${feed.sse.max-subscribers:1000}")
+    private int maxSubscribers;
+    @Value("${feed.sse.timeout:PT30M}")
+    private Duration timeout; // 连接超时后客户端带 Last-Event-ID 重连即可续传
+    @Value("${feed.sse.write-timeout:PT10S}")
+    private Duration writeTimeout; // 单次写入的最长等待，超过即断开该订阅者
+    @Value("${feed.batch-size:500}")
+    private int batchSize;
+
+    public ChangeStreamService(ChangeFeedService changeFeedService, @Value("${feed.sse.threads:8}") int threads) {
+        this.changeFeedService = changeFeedService;
+        AtomicInteger counter = new AtomicInteger();
+        this.sender = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "change-stream-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger writerCounter = new AtomicInteger();
+        this.writer = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "change-stream-write-" + writerCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        changeFeedService.addListener(() -> subscribers.forEach(Subscriber::schedule));
+    }
+
+    /**
+     * 订阅变更流
+     * @param since 从该序号之后开始推送，为空时只推送新变更
+     * @return SSE 连接，事件名为 changes，数据为一批变更的 JSON 数组，事件 id 为该批最后的序号
+     * @throws ChangeFeedGoneException since 之后的部分变更已被清理
+     * @throws IllegalStateException 订阅数已满
+     */
+    public SseEmitter subscribe(Long since) {
+        if (subscribers.size() >= maxSubscribers) {
+            throw new IllegalStateException("变更流订阅数已满");
+        }
+        long cursor = since == null ? changeFeedService.head() : since;
+        changeFeedService.read(cursor, 1);
+
+        SseEmitter emitter = new SseEmitter(timeout.toMillis());
+        Subscriber subscriber = new Subscriber(emitter, cursor);
+        subscribers.add(subscriber);
+        emitter.onCompletion(subscriber::close);
+        emitter.onTimeout(subscriber::close);
+        emitter.onError(e -> subscriber.close());
+        subscriber.schedule();
+        return emitter;
+    }
+
+    //定期发送注释行，防止代理断开空闲连接
+    @Scheduled(fixedDelayString = "${feed.sse.heartbeat:PT15S}")
+    public void heartbeat() {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.heartbeatDue = true;
+            subscriber.schedule();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+        sender.shutdownNow();
+        writer.shutdownNow();
+    }
+
+    private class Subscriber {
+        private final SseEmitter emitter;
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile long cursor;
+        private volatile boolean heartbeatDue;
+        private volatile boolean closed;
+
+        Subscriber(SseEmitter emitter, long cursor) {
+            this.emitter = emitter;
+            this.cursor = cursor;
+        }
+
+        void schedule() {
+            if (!closed && scheduled.compareAndSet(false, true)) {
+                sender.execute(this::drain);
+            }
+        }
+
+        /**
+         * 同一订阅者同一时刻只有一个发送任务，不需要额外加锁
+         */
+        private void drain() {
+            try {
+                boolean sent = false;
+                for (int turn = 0; turn < BATCHES_PER_TURN && !closed && cursor < changeFeedService.head(); turn++) {
+                    ChangeBatch batch = changeFeedService.read(cursor, batchSize);
+                    if (batch.events().isEmpty()) {
+                        cursor = batch.since();
+                        break;
+                    }
+                    send(SseEmitter.event()
+                            .id(String.valueOf(batch.since()))
+                            .name("changes")
+                            .data(batch.events(), MediaType.APPLICATION_JSON));
+                    cursor = batch.since();
+                    sent = true;
+                }
+                if (heartbeatDue && !sent && !closed) {
+                    send(SseEmitter.event().comment("heartbeat"));
+                }
+                heartbeatDue = false;
+            } catch (ChangeFeedGoneException e) {
+                try {
+                    send(SseEmitter.event().name("reset").data(e.getMessage()));
+                } catch (IOException ignored) {
+                    // 连接已断开
+                }
+                //写入超时时已安排关闭，这里再 complete 会等卡住的写入
+                if (!closed) {
+                    emitter.complete();
+                }
+                close();
+            } catch (IOException | IllegalStateException e) {
+                close();
+            } finally {
+                scheduled.set(false);
+            }
+            //发送期间可能有新发布，或本轮未发完
+            if (!closed && cursor < changeFeedService.head()) {
+                schedule();
+            }
+        }
+
+        /**
+         * 在写线程上写入并限时等待；超时时断开订阅者，连接在卡住的写入结束后关闭
+         */
+        private void send(SseEmitter.SseEventBuilder event) throws IOException {
+            Future<?> write = writer.submit(() -> {
+                emitter.send(event);
+                return null;
+            });
+            try {
+                write.get(writeTimeout.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                close();
+                //complete 与卡住的 send 争用同一把锁，放到写线程上等它结束
+                writer.execute(() -> {
+                    try {
+                        emitter.complete();
+                    } catch (IllegalStateException ignored) {
+                        // 连接已结束
+                    }
+                });
+                throw new IOException("变更流写入超时", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("变更流写入被中断", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException io) {
+                    throw io;
+                }
+                if (e.getCause() instanceof RuntimeException runtime) {
+                    throw runtime;
+                }
+                throw new IOException(e.getCause());
+            }
+        }
+
+        void close() {
+            closed = true;
+            subscribers.remove(this);
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.example.kindle.service.opds;
+
+import java.time.Instant;
+
+/**
+ * 目录快照中的一本书，只保留渲染 OPDS 条目需要的字段
+ */
+record CatalogEntry(Long id, String title, String author, String coverPath, String originalFilename,
+                    boolean hasFile, long[] categoryIds, Instant updated) {
+}
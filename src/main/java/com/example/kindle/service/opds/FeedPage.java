@@ -0,0 +1,40 @@
+package com.example.kindle.service.opds;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * 与 OPDS 版本无关的一页目录内容，由 OpdsFeedRenderer 渲染成 Atom 或 JSON
+ * @param id 目录唯一标识
+ * @param title 标题
+ * @param path 相对于 OPDS 根路径的地址
+ * @param query 除分页外的查询参数，可以为 null
+ * @param page 当前页，从0开始
+ * @param pageSize 每页条数
+ * @param total 总条数
+ * @param navigation 导航条目（根目录）
+ * @param publications 书籍条目（获取目录）
+ * @param updated 最后更新时间
+ */
+record FeedPage(String id, String title, String path, String query, int page, int pageSize, int total,
+                List<NavigationItem> navigation, List<CatalogEntry> publications, Instant updated) {
+
+    record NavigationItem(String id, String title, String path, String rel, int count) {
+    }
+
+    boolean isNavigation() {
+        return !navigation.isEmpty();
+    }
+
+    boolean hasNext() {
+        return (long) (page + 1) * pageSize < total;
+    }
+
+    String pageHref(String base, int targetPage) {
+        StringBuilder href = new StringBuilder(base).append(path).append('?');
+        if (query != null) {
+            href.append(query).append('&');
+        }
+        return href.append("page=").append(targetPage).toString();
+    }
+}
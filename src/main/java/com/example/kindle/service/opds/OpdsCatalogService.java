@@ -0,0 +1,346 @@
+package com.example.kindle.service.opds;
+
+import com.example.kindle.entity.Book;
+import com.example.kindle.entity.Category;
+import com.example.kindle.event.BookChangedEvent;
+import com.example.kindle.event.CategoryChangedEvent;
+import com.example.kindle.repository.BookRepository;
+import com.example.kindle.repository.CategoryRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * OPDS 目录：启动时把书籍和分类加载成内存快照，目录页按需渲染成压缩字节后缓存。
+ * 书籍或分类变更时只更新快照中受影响的条目，并让相关页面（根目录、最新、所属分类）失效，
+ * 下次请求时重新渲染；稳定状态下目录请求不访问数据库。
+ * updated 时间取自书籍的 updatedAt，重启后渲染结果和 ETag 保持不变。
+ */
+@Service
+public class OpdsCatalogService {
+
+    private static final Logger log = LoggerFactory.getLogger(OpdsCatalogService.class);
+    private static final int LOAD_PAGE_SIZE = 1000;
+
+    private final BookRepository bookRepository;
+    private final CategoryRepository categoryRepository;
+    private final OpdsFeedRenderer renderer;
+    private final TransactionTemplate readTemplate;
+    private final TransactionTemplate writeTemplate;
+
+    @Value("${opds.page-size:50}")
+    private int pageSize;
+    @Value("${opds.title:KindleHub}")
+    private String catalogTitle;
+
+    private final Map<Long, CatalogEntry> books = new ConcurrentHashMap<>();
+    private final Map<Long, String> categories = new ConcurrentHashMap<>();
+    private final Map<Long, NavigableSet<Long>> booksByCategory = new ConcurrentHashMap<>();
+    private final NavigableSet<Long> newest = new ConcurrentSkipListSet<>(Comparator.reverseOrder());
+    private final Map<String, RenderedFeed> cache = new ConcurrentHashMap<>();
+    //每次快照变更加一，渲染期间发生变更的结果不写入缓存
+    private final AtomicLong generation = new AtomicLong();
+    //写缓存前的代数检查和失效清理互斥，避免检查通过后、写入前被失效的旧页面重新写回缓存
+    private final Object cacheLock = new Object();
+    private volatile Instant updated = Instant.EPOCH; // 快照中最新的书籍修改时间
+
+    public OpdsCatalogService(BookRepository bookRepository, CategoryRepository categoryRepository,
+                              OpdsFeedRenderer renderer, PlatformTransactionManager transactionManager) {
+        this.bookRepository = bookRepository;
+        this.categoryRepository = categoryRepository;
+        this.renderer = renderer;
+        this.readTemplate = new TransactionTemplate(transactionManager);
+        this.readTemplate.setReadOnly(true);
+        this.writeTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public RenderedFeed root(boolean v2) {
+        return cached(key(v2, "root"), () -> render(v2, rootPage()));
+    }
+
+    public RenderedFeed newest(boolean v2, int page) {
+        return cached(key(v2, "newest:" + page), () -> render(v2, listPage("urn:kindlehub:newest", "最新上架",
+                "/newest", null, page, newest)));
+    }
+
+    public Optional<RenderedFeed> category(boolean v2, Long categoryId, int page) {
+        String name = categories.get(categoryId);
+        if (name == null) {
+            return Optional.empty();
+        }
+        return Optional.of(cached(key(v2, "category:" + categoryId + ":" + page), () -> render(v2,
+                listPage("urn:kindlehub:category:" + categoryId, name, "/category/" + categoryId, null, page,
+                        booksByCategory.getOrDefault(categoryId, Collections.emptyNavigableSet())))));
+    }
+
+    /**
+     * 搜索结果由内存快照过滤得到，查询词不可枚举，因此不缓存
+     */
+    public RenderedFeed search(boolean v2, String query, int page) {
+        String keyword = query == null ? "" : query.trim().toLowerCase();
+        NavigableSet<Long> matched = new TreeSet<>(Comparator.reverseOrder());
+        if (!keyword.isEmpty()) {
+            for (CatalogEntry entry : books.values()) {
+                if (contains(entry.title(), keyword) || contains(entry.author(), keyword)) {
+                    matched.add(entry.id());
+                }
+            }
+        }
+        String param = (v2 ? "query=" : "q=") + URLEncoder.encode(keyword, StandardCharsets.UTF_8);
+        return render(v2, listPage("urn:kindlehub:search", "搜索: " + keyword, "/search", param, page, matched));
+    }
+
+    public RenderedFeed openSearchDescription() {
+        return cached("v1:opensearch", () -> renderer.renderOpenSearchDescription(catalogTitle));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void load() {
+        long start = System.currentTimeMillis();
+        generation.incrementAndGet();
+        books.clear();
+        categories.clear();
+        booksByCategory.clear();
+        newest.clear();
+        updated = Instant.EPOCH;
+        clearCache();
+
+        Integer filled = writeTemplate.execute(status -> bookRepository.fillMissingUpdatedAt(Instant.now()));
+        if (filled != null && filled > 0) {
+            log.info("为{}本书补充了修改时间", filled);
+        }
+        Map<Long, List<Long>> links = new HashMap<>();
+        readTemplate.executeWithoutResult(status -> {
+            for (Category category : categoryRepository.findAll()) {
+                categories.put(category.getId(), category.getName());
+            }
+            for (Object[] row : bookRepository.findAllCategoryLinks()) {
+                links.computeIfAbsent((Long) row[0], k -> new ArrayList<>()).add((Long) row[1]);
+            }
+        });
+        long lastId = 0;
+        while (true) {
+            long after = lastId;
+            List<Book> page = readTemplate.execute(status ->
+                    bookRepository.findByIdGreaterThanOrderByIdAsc(after, PageRequest.of(0, LOAD_PAGE_SIZE)));
+            if (page == null || page.isEmpty()) {
+                break;
+            }
+            for (Book book : page) {
+                put(toEntry(book, links.getOrDefault(book.getId(), List.of())));
+            }
+            lastId = page.get(page.size() - 1).getId();
+        }
+        //加载期间渲染的页面基于不完整的快照
+        generation.incrementAndGet();
+        clearCache();
+        log.info("OPDS目录快照加载完成，共{}本，耗时{}ms", books.size(), System.currentTimeMillis() - start);
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public synchronized void onBookChanged(BookChangedEvent event) {
+        generation.incrementAndGet();
+        Set<Long> affectedCategories = new HashSet<>();
+        CatalogEntry old = remove(event.bookId());
+        if (old != null) {
+            for (long categoryId : old.categoryIds()) {
+                affectedCategories.add(categoryId);
+            }
+        }
+        if (event.type() == BookChangedEvent.Type.SAVED) {
+            Optional<CatalogEntry> entry = readTemplate.execute(status -> bookRepository.findById(event.bookId())
+                    .map(book -> toEntry(book, bookRepository.findCategoryIdsByBookId(book.getId()))));
+            if (entry != null && entry.isPresent()) {
+                put(entry.get());
+                for (long categoryId : entry.get().categoryIds()) {
+                    affectedCategories.add(categoryId);
+                }
+            }
+        }
+        invalidate("root");
+        invalidate("newest:");
+        for (Long categoryId : affectedCategories) {
+            invalidate("category:" + categoryId + ":");
+        }
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public synchronized void onCategoryChanged(CategoryChangedEvent event) {
+        generation.incrementAndGet();
+        Long categoryId = event.categoryId();
+        Set<Long> affectedBooks = new HashSet<>(booksByCategory.getOrDefault(categoryId, Collections.emptyNavigableSet()));
+        switch (event.type()) {
+            case CREATED -> readTemplate.executeWithoutResult(status -> categoryRepository.findById(categoryId)
+                    .ifPresent(category -> categories.put(categoryId, category.getName())));
+            case DELETED -> {
+                categories.remove(categoryId);
+                booksByCategory.remove(categoryId);
+            }
+            case BOOKS_CHANGED -> {
+                List<Long> ids = readTemplate.execute(status -> bookRepository.findIdsByCategoryId(categoryId));
+                NavigableSet<Long> members = new ConcurrentSkipListSet<>(Comparator.reverseOrder());
+                if (ids != null) {
+                    members.addAll(ids);
+                }
+                booksByCategory.put(categoryId, members);
+                affectedBooks.addAll(members);
+            }
+        }
+        //同步书籍条目上的分类列表，分类名变化会出现在这些书所在的其他分类页里
+        Set<Long> otherCategories = new HashSet<>();
+        for (Long bookId : affectedBooks) {
+            CatalogEntry entry = books.get(bookId);
+            if (entry == null) {
+                continue;
+            }
+            Set<Long> ids = new TreeSet<>();
+            for (long id : entry.categoryIds()) {
+                if (id != categoryId) {
+                    ids.add(id);
+                }
+            }
+            NavigableSet<Long> members = booksByCategory.get(categoryId);
+            if (members != null && members.contains(bookId)) {
+                ids.add(categoryId);
+            }
+            otherCategories.addAll(ids);
+            books.put(bookId, withCategories(entry, ids));
+        }
+        invalidate("root");
+        invalidate("newest:");
+        invalidate("category:" + categoryId + ":");
+        for (Long id : otherCategories) {
+            invalidate("category:" + id + ":");
+        }
+    }
+
+    private FeedPage rootPage() {
+        List<FeedPage.NavigationItem> navigation = new ArrayList<>();
+        navigation.add(new FeedPage.NavigationItem("urn:kindlehub:newest", "最新上架", "/newest",
+                "http://opds-spec.org/sort/new", newest.size()));
+        categories.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .forEach(e -> navigation.add(new FeedPage.NavigationItem("urn:kindlehub:category:" + e.getKey(),
+                        e.getValue(), "/category/" + e.getKey(), "subsection",
+                        booksByCategory.getOrDefault(e.getKey(), Collections.emptyNavigableSet()).size())));
+        return new FeedPage("urn:kindlehub:root", catalogTitle, "", null, 0, pageSize, navigation.size(),
+                navigation, List.of(), updated);
+    }
+
+    private FeedPage listPage(String id, String title, String path, String query, int page, NavigableSet<Long> ids) {
+        int current = Math.max(page, 0);
+        List<CatalogEntry> entries = new ArrayList<>(pageSize);
+        Iterator<Long> iterator = ids.iterator();
+        int skip = current * pageSize;
+        Instant pageUpdated = Instant.EPOCH;
+        while (iterator.hasNext() && entries.size() < pageSize) {
+            Long bookId = iterator.next();
+            if (skip > 0) {
+                skip--;
+                continue;
+            }
+            CatalogEntry entry = books.get(bookId);
+            if (entry != null) {
+                entries.add(entry);
+                if (entry.updated().isAfter(pageUpdated)) {
+                    pageUpdated = entry.updated();
+                }
+            }
+        }
+        return new FeedPage(id, title, path, query, current, pageSize, ids.size(), List.of(), entries, pageUpdated);
+    }
+
+    private RenderedFeed render(boolean v2, FeedPage page) {
+        return v2 ? renderer.renderJson(page, categories) : renderer.renderAtom(page, categories);
+    }
+
+    private RenderedFeed cached(String key, Supplier<RenderedFeed> render) {
+        RenderedFeed feed = cache.get(key);
+        if (feed != null) {
+            return feed;
+        }
+        long before = generation.get();
+        feed = render.get();
+        synchronized (cacheLock) {
+            if (generation.get() == before) {
+                cache.putIfAbsent(key, feed);
+            }
+        }
+        return feed;
+    }
+
+    private void invalidate(String prefix) {
+        synchronized (cacheLock) {
+            cache.keySet().removeIf(key -> key.startsWith("v1:" + prefix) || key.startsWith("v2:" + prefix));
+        }
+    }
+
+    private void clearCache() {
+        synchronized (cacheLock) {
+            cache.clear();
+        }
+    }
+
+    private static String key(boolean v2, String page) {
+        return (v2 ? "v2:" : "v1:") + page;
+    }
+
+    private void put(CatalogEntry entry) {
+        books.put(entry.id(), entry);
+        if (entry.updated().isAfter(updated)) {
+            updated = entry.updated();
+        }
+        newest.add(entry.id());
+        for (long categoryId : entry.categoryIds()) {
+            booksByCategory.computeIfAbsent(categoryId, k -> new ConcurrentSkipListSet<>(Comparator.reverseOrder()))
+                    .add(entry.id());
+        }
+    }
+
+    private CatalogEntry remove(Long bookId) {
+        CatalogEntry old = books.remove(bookId);
+        newest.remove(bookId);
+        if (old != null) {
+            for (long categoryId : old.categoryIds()) {
+                NavigableSet<Long> members = booksByCategory.get(categoryId);
+                if (members != null) {
+                    members.remove(bookId);
+                }
+            }
+        }
+        return old;
+    }
+
+    private static CatalogEntry toEntry(Book book, List<Long> categoryIds) {
+        return new CatalogEntry(book.getId(), book.getTitle(), book.getAuthor(), book.getCoverPath(),
+                book.getOriginalFilename(), book.getFilePath() != null,
+                categoryIds.stream().mapToLong(Long::longValue).sorted().distinct().toArray(),
+                book.getUpdatedAt() != null ? book.getUpdatedAt() : Instant.EPOCH);
+    }
+
+    private static CatalogEntry withCategories(CatalogEntry entry, Set<Long> categoryIds) {
+        return new CatalogEntry(entry.id(), entry.title(), entry.author(), entry.coverPath(), entry.originalFilename(),
+                entry.hasFile(), categoryIds.stream().mapToLong(Long::longValue).toArray(), entry.updated());
+    }
+
+    private static boolean contains(String value, String keyword) {
+        return value != null && value.toLowerCase().contains(keyword);
+    }
+}
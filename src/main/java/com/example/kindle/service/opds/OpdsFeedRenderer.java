@@ -0,0 +1,287 @@
+package com.example.kindle.service.opds;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 把 FeedPage 渲染成 OPDS 1.2（Atom XML）或 OPDS 2.0（JSON），并压缩成可直接返回的字节
+ */
+@Component
+public class OpdsFeedRenderer {
+
+    public static final String V1_BASE = "/opds";
+    public static final String V2_BASE = "/opds/v2";
+    public static final String ATOM_NAVIGATION = "application/atom+xml;profile=opds-catalog;kind=navigation";
+    public static final String ATOM_ACQUISITION = "application/atom+xml;profile=opds-catalog;kind=acquisition";
+    public static final String OPDS2 = "application/opds+json";
+    public static final String OPENSEARCH = "application/opensearchdescription+xml";
+
+    private final ObjectMapper objectMapper;
+
+    public OpdsFeedRenderer(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * OPDS 1.2 Atom 目录
+     */
+    public RenderedFeed renderAtom(FeedPage page, Map<Long, String> categoryNames) {
+        String type = page.isNavigation() ? ATOM_NAVIGATION : ATOM_ACQUISITION;
+        StringBuilder xml = new StringBuilder(4096);
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+                .append("<feed xmlns=\"http://www.w3.org/2005/Atom\" xmlns:dc=\"http://purl.org/dc/terms/\"")
+                .append(" xmlns:opds=\"http://opds-spec.org/2010/catalog\"")
+                .append(" xmlns:opensearch=\"http://a9.com/-/spec/opensearch/1.1/\">\n");
+        xml.append("  <id>").append(escape(page.id())).append("</id>\n");
+        xml.append("  <title>").append(escape(page.title())).append("</title>\n");
+        xml.append("  <updated>").append(timestamp(page.updated())).append("</updated>\n");
+        link(xml, "self", page.pageHref(V1_BASE, page.page()), type);
+        link(xml, "start", V1_BASE, ATOM_NAVIGATION);
+        link(xml, "search", V1_BASE + "/opensearch.xml", OPENSEARCH);
+
+        if (!page.isNavigation()) {
+            xml.append("  <opensearch:totalResults>").append(page.total()).append("</opensearch:totalResults>\n");
+            xml.append("  <opensearch:itemsPerPage>").append(page.pageSize()).append("</opensearch:itemsPerPage>\n");
+            link(xml, "first", page.pageHref(V1_BASE, 0), type);
+            if (page.page() > 0) {
+                link(xml, "previous", page.pageHref(V1_BASE, page.page() - 1), type);
+            }
+            if (page.hasNext()) {
+                link(xml, "next", page.pageHref(V1_BASE, page.page() + 1), type);
+            }
+        }
+
+        for (FeedPage.NavigationItem item : page.navigation()) {
+            xml.append("  <entry>\n");
+            xml.append("    <title>").append(escape(item.title())).append("</title>\n");
+            xml.append("    <id>").append(escape(item.id())).append("</id>\n");
+            xml.append("    <updated>").append(timestamp(page.updated())).append("</updated>\n");
+            xml.append("    <content type=\"text\">").append(item.count()).append(" 本</content>\n");
+            xml.append("    <link rel=\"").append(item.rel()).append("\" href=\"").append(escape(V1_BASE + item.path()))
+                    .append("\" type=\"").append(ATOM_ACQUISITION).append("\"/>\n");
+            xml.append("  </entry>\n");
+        }
+
+        for (CatalogEntry entry : page.publications()) {
+            xml.append("  <entry>\n");
+            xml.append("    <title>").append(escape(entry.title())).append("</title>\n");
+            xml.append("    <id>urn:kindlehub:book:").append(entry.id()).append("</id>\n");
+            xml.append("    <updated>").append(timestamp(entry.updated())).append("</updated>\n");
+            if (entry.author() != null) {
+                xml.append("    <author><name>").append(escape(entry.author())).append("</name></author>\n");
+            }
+            for (long categoryId : entry.categoryIds()) {
+                String name = categoryNames.get(categoryId);
+                if (name != null) {
+                    xml.append("    <category term=\"").append(categoryId).append("\" label=\"")
+                            .append(escape(name)).append("\"/>\n");
+                }
+            }
+            if (entry.hasFile()) {
+                link(xml, "http://opds-spec.org/acquisition", "/book/file/" + entry.id(), fileType(entry), "    ");
+            }
+            String cover = coverHref(entry);
+            if (cover != null) {
+                link(xml, "http://opds-spec.org/image", cover, imageType(cover), "    ");
+                link(xml, "http://opds-spec.org/image/thumbnail", cover, imageType(cover), "    ");
+            }
+            xml.append("  </entry>\n");
+        }
+        xml.append("</feed>\n");
+        return compress(xml.toString().getBytes(StandardCharsets.UTF_8), type);
+    }
+
+    /**
+     * OPDS 2.0 JSON 目录
+     */
+    public RenderedFeed renderJson(FeedPage page, Map<Long, String> categoryNames) {
+        Map<String, Object> feed = new LinkedHashMap<>();
+        Map<String, Object> metadata = new LinkedHashMap<>();
+        metadata.put("title", page.title());
+        metadata.put("modified", timestamp(page.updated()));
+        if (!page.isNavigation()) {
+            metadata.put("numberOfItems", page.total());
+            metadata.put("itemsPerPage", page.pageSize());
+            metadata.put("currentPage", page.page() + 1);
+        }
+        feed.put("metadata", metadata);
+
+        List<Map<String, Object>> links = new ArrayList<>();
+        links.add(jsonLink("self", page.pageHref(V2_BASE, page.page()), OPDS2));
+        links.add(jsonLink("start", V2_BASE, OPDS2));
+        Map<String, Object> search = jsonLink("search", V2_BASE + "/search{?query}", OPDS2);
+        search.put("templated", true);
+        links.add(search);
+        if (!page.isNavigation()) {
+            links.add(jsonLink("first", page.pageHref(V2_BASE, 0), OPDS2));
+            if (page.page() > 0) {
+                links.add(jsonLink("previous", page.pageHref(V2_BASE, page.page() - 1), OPDS2));
+            }
+            if (page.hasNext()) {
+                links.add(jsonLink("next", page.pageHref(V2_BASE, page.page() + 1), OPDS2));
+            }
+        }
+        feed.put("links", links);
+
+        if (page.isNavigation()) {
+            List<Map<String, Object>> navigation = new ArrayList<>();
+            for (FeedPage.NavigationItem item : page.navigation()) {
+                Map<String, Object> link = jsonLink(item.rel(), V2_BASE + item.path(), OPDS2);
+                link.put("title", item.title());
+                link.put("properties", Map.of("numberOfItems", item.count()));
+                navigation.add(link);
+            }
+            feed.put("navigation", navigation);
+        } else {
+            List<Map<String, Object>> publications = new ArrayList<>();
+            for (CatalogEntry entry : page.publications()) {
+                publications.add(publication(entry, categoryNames));
+            }
+            feed.put("publications", publications);
+        }
+
+        try {
+            return compress(objectMapper.writeValueAsBytes(feed), OPDS2);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * OPDS 1.2 搜索使用的 OpenSearch 描述文档
+     */
+    public RenderedFeed renderOpenSearchDescription(String title) {
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<OpenSearchDescription xmlns=\"http://a9.com/-/spec/opensearch/1.1/\">\n"
+                + "  <ShortName>" + escape(title) + "</ShortName>\n"
+                + "  <Description>按书名或作者搜索</Description>\n"
+                + "  <InputEncoding>UTF-8</InputEncoding>\n"
+                + "  <OutputEncoding>UTF-8</OutputEncoding>\n"
+                + "  <Url type=\"" + ATOM_ACQUISITION + "\" template=\"" + V1_BASE + "/search?q={searchTerms}\"/>\n"
+                + "</OpenSearchDescription>\n";
+        return compress(xml.getBytes(StandardCharsets.UTF_8), OPENSEARCH);
+    }
+
+    private Map<String, Object> publication(CatalogEntry entry, Map<Long, String> categoryNames) {
+        Map<String, Object> metadata = new LinkedHashMap<>();
+        metadata.put("@type", "http://schema.org/Book");
+        metadata.put("identifier", "urn:kindlehub:book:" + entry.id());
+        metadata.put("title", entry.title());
+        if (entry.author() != null) {
+            metadata.put("author", List.of(Map.of("name", entry.author())));
+        }
+        metadata.put("modified", timestamp(entry.updated()));
+        List<Map<String, Object>> subjects = new ArrayList<>();
+        for (long categoryId : entry.categoryIds()) {
+            String name = categoryNames.get(categoryId);
+            if (name != null) {
+                subjects.add(Map.of("name", name, "code", String.valueOf(categoryId)));
+            }
+        }
+        if (!subjects.isEmpty()) {
+            metadata.put("subject", subjects);
+        }
+
+        Map<String, Object> publication = new LinkedHashMap<>();
+        publication.put("metadata", metadata);
+        List<Map<String, Object>> links = new ArrayList<>();
+        if (entry.hasFile()) {
+            links.add(jsonLink("http://opds-spec.org/acquisition", "/book/file/" + entry.id(), fileType(entry)));
+        }
+        publication.put("links", links);
+        String cover = coverHref(entry);
+        if (cover != null) {
+            Map<String, Object> image = new LinkedHashMap<>();
+            image.put("href", cover);
+            image.put("type", imageType(cover));
+            publication.put("images", List.of(image));
+        }
+        return publication;
+    }
+
+    private static Map<String, Object> jsonLink(String rel, String href, String type) {
+        Map<String, Object> link = new LinkedHashMap<>();
+        link.put("rel", rel);
+        link.put("href", href);
+        link.put("type", type);
+        return link;
+    }
+
+    private static void link(StringBuilder xml, String rel, String href, String type) {
+        link(xml, rel, href, type, "  ");
+    }
+
+    private static void link(StringBuilder xml, String rel, String href, String type, String indent) {
+        xml.append(indent).append("<link rel=\"").append(escape(rel)).append("\" href=\"").append(escape(href))
+                .append("\" type=\"").append(escape(type)).append("\"/>\n");
+    }
+
+    private static String coverHref(CatalogEntry entry) {
+        if (entry.coverPath() == null || entry.coverPath().isBlank()) {
+            return null;
+        }
+        return "/book/image/" + Paths.get(entry.coverPath()).getFileName();
+    }
+
+    private static String fileType(CatalogEntry entry) {
+        String name = entry.originalFilename();
+        return name != null && name.toLowerCase().endsWith(".epub") ? "application/epub+zip" : "application/octet-stream";
+    }
+
+    private static String imageType(String href) {
+        String lower = href.toLowerCase();
+        if (lower.endsWith(".png")) return "image/png";
+        if (lower.endsWith(".gif")) return "image/gif";
+        return "image/jpeg";
+    }
+
+    private static String timestamp(Instant instant) {
+        return instant.truncatedTo(ChronoUnit.SECONDS).toString();
+    }
+
+    private static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '<' -> sb.append("&lt;");
+                case '>' -> sb.append("&gt;");
+                case '&' -> sb.append("&amp;");
+                case '"' -> sb.append("&quot;");
+                case '\'' -> sb.append("&apos;");
+                default -> {
+                    //去掉 XML 不允许的控制字符
+                    if (c >= 0x20 || c == '\n' || c == '\r' || c == '\t') {
+                        sb.append(c);
+                    }
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    private static RenderedFeed compress(byte[] raw, String contentType) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(raw);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new RenderedFeed(out.toByteArray(), "\"" + DigestUtils.md5DigestAsHex(raw) + "\"", contentType);
+    }
+}
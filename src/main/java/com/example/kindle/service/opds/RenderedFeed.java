@@ -0,0 +1,26 @@
+package com.example.kindle.service.opds;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * 预渲染并 gzip 压缩后的目录页
+ * @param gzipped 压缩后的内容
+ * @param etag 内容摘要，带引号
+ * @param contentType 媒体类型
+ */
+public record RenderedFeed(byte[] gzipped, String etag, String contentType) {
+
+    /**
+     * 客户端不接受 gzip 时解压返回
+     */
+    public byte[] plain() {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped))) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package com.example.kindle.service.popularity;
+
+import com.example.kindle.entity.Book;
+import com.example.kindle.entity.BookPopularity;
+import com.example.kindle.event.BookChangedEvent;
+import com.example.kindle.event.CoverPlaceholdersChangedEvent;
+import com.example.kindle.repository.BookPopularityRepository;
+import com.example.kindle.repository.BookRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 书籍热度统计：请求线程只对每本书、每种事件的 LongAdder 加一，不访问数据库也不加锁。
+ * 单独的聚合线程定期收集增量：
+ * 一份写入当前时间桶的 Space-Saving 草图，合并窗口内各桶得到热门榜并缓存成只读快照；
+ * 一份累积起来按书籍id排序后在一个事务中批量累加到 book_popularity 表。
+ */
+@Service
+public class PopularityService {
+
+    private static final Logger log = LoggerFactory.getLogger(PopularityService.class);
+
+    private static final PopularityType[] TYPES = PopularityType.values();
+
+    private final BookRepository bookRepository;
+    private final BookPopularityRepository bookPopularityRepository;
+    private final TransactionTemplate readTemplate;
+    private final TransactionTemplate writeTemplate;
+
+    @Value("${popularity.tick:PT5S}")
+    private Duration tick; // 收集增量、刷新热门榜的间隔
+    @Value("${popularity.flush-interval:PT1M}")
+    private Duration flushInterval;
+    @Value("${popularity.window:PT24H}")
+    private Duration window;
+    @Value("${popularity.buckets:24}")
+    private int bucketCount;
+    @Value("${popularity.sketch-capacity:1000}")
+    private int sketchCapacity; // 每个时间桶每种事件最多跟踪的书籍数
+    @Value("${popularity.top-k:100}")
+    private int topK;
+
+    //请求线程写入的增量
+    private final Map<Long, LongAdder[]> live = new ConcurrentHashMap<>();
+
+    //以下结构只在聚合线程中访问
+    private final Map<Long, long[]> pending = new HashMap<>();
+    //上一轮从 live 中移除的空闲计数器，请求线程可能还持有引用，下一轮再收一次
+    private List<Map.Entry<Long, LongAdder[]>> retired = new ArrayList<>();
+    private SpaceSaving[][] sketches;
+    private int currentBucket;
+    private long currentBucketStart;
+    private long lastFlush;
+    private final Map<Long, Book> books = new HashMap<>();
+
+    //对外只读的热门榜快照
+    private volatile Map<PopularityType, List<TrendingBook>> trending = Map.of();
+
+    private final ScheduledExecutorService aggregator = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "popularity");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public PopularityService(BookRepository bookRepository, BookPopularityRepository bookPopularityRepository,
+                             PlatformTransactionManager transactionManager) {
+        this.bookRepository = bookRepository;
+        this.bookPopularityRepository = bookPopularityRepository;
+        this.readTemplate = new TransactionTemplate(transactionManager);
+        this.readTemplate.setReadOnly(true);
+        this.writeTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @PostConstruct
+    public void start() {
+        sketches = new SpaceSaving[TYPES.length][bucketCount];
+        for (SpaceSaving[] byBucket : sketches) {
+            for (int i = 0; i < bucketCount; i++) {
+                byBucket[i] = new SpaceSaving(sketchCapacity);
+            }
+        }
+        currentBucketStart = System.currentTimeMillis();
+        lastFlush = currentBucketStart;
+        aggregator.scheduleWithFixedDelay(this::tickSafely, tick.toMillis(), tick.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 记录一次事件，只做内存自增
+     * @param bookId 书籍id
+     * @param type 事件类型
+     */
+    public void record(Long bookId, PopularityType type) {
+        LongAdder[] adders = live.get(bookId);
+        if (adders == null) {
+            adders = live.computeIfAbsent(bookId, id -> {
+                LongAdder[] created = new LongAdder[TYPES.length];
+                for (int i = 0; i < created.length; i++) {
+                    created[i] = new LongAdder();
+                }
+                return created;
+            });
+        }
+        adders[type.ordinal()].increment();
+    }
+
+    /**
+     * 热门书籍，直接返回内存快照
+     * @param type 事件类型
+     * @param limit 返回数量
+     * @return 统计窗口内按次数降序排列的书籍
+     */
+    public List<TrendingBook> getTrending(PopularityType type, int limit) {
+        List<TrendingBook> list = trending.getOrDefault(type, List.of());
+        return list.size() <= limit ? list : list.subList(0, Math.max(limit, 0));
+    }
+
+    /**
+     * 书籍累计热度，最近一次批量写入之后的增量不包含在内
+     * @param bookId 书籍id
+     * @return 累计次数，尚无记录时全部为0
+     */
+    public BookPopularity getTotals(Long bookId) {
+        return readTemplate.execute(status -> bookPopularityRepository.findById(bookId).orElseGet(() -> {
+            BookPopularity empty = new BookPopularity();
+            empty.setBookId(bookId);
+            return empty;
+        }));
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onBookChanged(BookChangedEvent event) {
+        aggregator.execute(() -> {
+            books.remove(event.bookId());
+            if (event.type() == BookChangedEvent.Type.DELETED) {
+                live.remove(event.bookId());
+                retired.removeIf(entry -> entry.getKey().equals(event.bookId()));
+                pending.remove(event.bookId());
+                for (SpaceSaving[] byBucket : sketches) {
+                    for (SpaceSaving sketch : byBucket) {
+                        sketch.remove(event.bookId());
+                    }
+                }
+                try {
+                    writeTemplate.executeWithoutResult(status -> {
+                        if (bookPopularityRepository.existsById(event.bookId())) {
+                            bookPopularityRepository.deleteById(event.bookId());
+                        }
+                    });
+                } catch (Exception e) {
+                    log.warn("删除书籍热度失败, bookId={}", event.bookId(), e);
+                }
+            }
+            rebuildTrending();
+        });
+    }
+
+    //回填封面占位后丢弃缓存的书籍，重建时重新读取榜上的书
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onCoverPlaceholdersChanged(CoverPlaceholdersChangedEvent event) {
+        aggregator.execute(() -> {
+            if (books.keySet().removeAll(event.bookIds())) {
+                rebuildTrending();
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        //停止前把尚未写入的增量落库
+        aggregator.execute(() -> {
+            collect();
+            flush();
+        });
+        aggregator.shutdown();
+        aggregator.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    private void tickSafely() {
+        try {
+            collect();
+            rebuildTrending();
+            if (System.currentTimeMillis() - lastFlush >= flushInterval.toMillis()) {
+                flush();
+            }
+        } catch (Exception e) {
+            log.warn("热度统计聚合失败", e);
+        }
+    }
+
+    /**
+     * 取出请求线程累积的增量，计入当前时间桶和待写入数据；
+     * 本轮没有增量的书从 live 中移除，避免访问过的书越积越多
+     */
+    private void collect() {
+        rotateBuckets();
+        for (Map.Entry<Long, LongAdder[]> entry : retired) {
+            drain(entry.getKey(), entry.getValue());
+        }
+        retired = new ArrayList<>();
+        for (Map.Entry<Long, LongAdder[]> entry : live.entrySet()) {
+            Long bookId = entry.getKey();
+            LongAdder[] adders = entry.getValue();
+            if (!drain(bookId, adders) && live.remove(bookId, adders)) {
+                retired.add(Map.entry(bookId, adders));
+            }
+        }
+    }
+
+    /**
+     * @return 是否有增量
+     */
+    private boolean drain(Long bookId, LongAdder[] adders) {
+        boolean any = false;
+        for (int t = 0; t < TYPES.length; t++) {
+            long delta = adders[t].sumThenReset();
+            if (delta > 0) {
+                pending.computeIfAbsent(bookId, id -> new long[TYPES.length])[t] += delta;
+                sketches[t][currentBucket].offer(bookId, delta);
+                any = true;
+            }
+        }
+        return any;
+    }
+
+    /**
+     * 时间窗口按桶滑动，过期的桶清空后复用
+     */
+    private void rotateBuckets() {
+        long bucketMillis = Math.max(1, window.toMillis() / bucketCount);
+        long now = System.currentTimeMillis();
+        int advanced = 0;
+        while (now - currentBucketStart >= bucketMillis && advanced < bucketCount) {
+            currentBucket = (currentBucket + 1) % bucketCount;
+            currentBucketStart += bucketMillis;
+            for (SpaceSaving[] byBucket : sketches) {
+                byBucket[currentBucket].clear();
+            }
+            advanced++;
+        }
+        if (now - currentBucketStart >= bucketMillis) {
+            //长时间未运行，整个窗口都已清空
+            currentBucketStart = now;
+        }
+    }
+
+    /**
+     * 合并窗口内各桶的草图生成热门榜，榜上书籍的标题等信息缓存在内存中
+     */
+    private void rebuildTrending() {
+        Map<PopularityType, List<Map.Entry<Long, Long>>> ranked = new EnumMap<>(PopularityType.class);
+        Set<Long> onBoard = new HashSet<>();
+        for (PopularityType type : TYPES) {
+            Map<Long, Long> totals = new HashMap<>();
+            for (SpaceSaving sketch : sketches[type.ordinal()]) {
+                sketch.addTo(totals);
+            }
+            List<Map.Entry<Long, Long>> top = totals.entrySet().stream()
+                    .sorted(Map.Entry.<Long, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+                    .limit(topK)
+                    .toList();
+            ranked.put(type, top);
+            top.forEach(entry -> onBoard.add(entry.getKey()));
+        }
+        books.keySet().retainAll(onBoard);
+        Set<Long> missing = new HashSet<>(onBoard);
+        missing.removeAll(books.keySet());
+        if (!missing.isEmpty()) {
+            List<Book> loaded = readTemplate.execute(status -> bookRepository.findAllById(missing));
+            if (loaded != null) {
+                loaded.forEach(book -> books.put(book.getId(), book));
+            }
+        }
+
+        Map<PopularityType, List<TrendingBook>> snapshot = new EnumMap<>(PopularityType.class);
+        ranked.forEach((type, top) -> snapshot.put(type, top.stream()
+                .filter(entry -> books.containsKey(entry.getKey()))
+                .map(entry -> {
+                    Book book = books.get(entry.getKey());
+                    return new TrendingBook(book.getId(), book.getTitle(), book.getAuthor(), book.getCoverPath(),
+                            book.getCoverColor(), book.getCoverBlurHash(), entry.getValue());
+                })
+                .toList()));
+        trending = snapshot;
+    }
+
+    /**
+     * 按书籍id顺序批量累加到数据库，多个节点同时写入时加锁顺序一致，避免死锁；失败时保留增量下次重试
+     */
+    private void flush() {
+        lastFlush = System.currentTimeMillis();
+        if (pending.isEmpty()) {
+            return;
+        }
+        TreeMap<Long, long[]> batch = new TreeMap<>(pending);
+        try {
+            writeTemplate.executeWithoutResult(status -> batch.forEach((bookId, counts) ->
+                    bookPopularityRepository.addCounts(bookId, counts[PopularityType.VIEW.ordinal()],
+                            counts[PopularityType.DOWNLOAD.ordinal()], counts[PopularityType.SEND.ordinal()])));
+            pending.clear();
+        } catch (Exception e) {
+            log.warn("写入书籍热度失败，{}本书的增量将在下次重试", batch.size(), e);
+        }
+    }
+}
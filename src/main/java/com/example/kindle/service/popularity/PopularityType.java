@@ -0,0 +1,13 @@
+package com.example.kindle.service.popularity;
+
+/**
+ * 热度事件类型
+ */
+public enum PopularityType {
+    //查看书籍详情
+    VIEW,
+    //下载电子书文件
+    DOWNLOAD,
+    //发送到Kindle
+    SEND
+}
@@ -0,0 +1,79 @@
+package com.example.kindle.service.popularity;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Space-Saving 频繁项草图：最多保留 capacity 个计数器，满了以后新元素顶替当前计数最小的元素并继承其计数。
+ * 真实次数超过总量 / capacity 的元素一定在其中，计数最多偏高被顶替者的计数。
+ * 非线程安全，只在热度聚合线程中使用。
+ */
+class SpaceSaving {
+
+    private final int capacity;
+    private final Map<Long, Counter> counters = new HashMap<>();
+    private final TreeSet<Counter> byCount = new TreeSet<>(
+            Comparator.comparingLong((Counter c) -> c.count).thenComparingLong(c -> c.key));
+
+    SpaceSaving(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * 记录 key 出现 weight 次
+     */
+    void offer(long key, long weight) {
+        Counter counter = counters.get(key);
+        if (counter != null) {
+            byCount.remove(counter);
+            counter.count += weight;
+            byCount.add(counter);
+            return;
+        }
+        if (counters.size() < capacity) {
+            add(new Counter(key, weight));
+            return;
+        }
+        Counter min = byCount.pollFirst();
+        counters.remove(min.key);
+        add(new Counter(key, min.count + weight));
+    }
+
+    void remove(long key) {
+        Counter counter = counters.remove(key);
+        if (counter != null) {
+            byCount.remove(counter);
+        }
+    }
+
+    void clear() {
+        counters.clear();
+        byCount.clear();
+    }
+
+    /**
+     * 把各元素的计数累加到 totals 中，用于合并多个时间桶
+     */
+    void addTo(Map<Long, Long> totals) {
+        for (Counter counter : counters.values()) {
+            totals.merge(counter.key, counter.count, Long::sum);
+        }
+    }
+
+    private void add(Counter counter) {
+        counters.put(counter.key, counter);
+        byCount.add(counter);
+    }
+
+    private static final class Counter {
+        private final long key;
+        private long count;
+
+        Counter(long key, long count) {
+            this.key = key;
+            this.count = count;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.example.kindle.service.popularity;
+
+/**
+ * 热门书籍
+ * @param id 书籍id
+ * @param title 标题
+ * @param author 作者
+ * @param coverPath 封面路径
+ * @param coverColor 封面主色调
+ * @param coverBlurHash 封面 BlurHash
+ * @param count 统计窗口内的次数（估计值，可能略微偏高）
+ */
+public record TrendingBook(Long id, String title, String author, String coverPath, String coverColor,
+                           String coverBlurHash, long count) {
+}
@@ -0,0 +1,12 @@
+package com.example.kindle.service.recommend;
+
+/**
+ * 单本书的紧凑特征：排序后的分类id、规范化作者、正文 MinHash 签名
+ */
+record BookVector(Long id, String title, String author, String coverPath, String coverColor, String coverBlurHash,
+                  long[] categoryIds, String authorKey, int[] signature) {
+
+    SimilarBook toSimilarBook(double score) {
+        return new SimilarBook(id, title, author, coverPath, coverColor, coverBlurHash, score);
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.kindle.service.recommend;
+
+/**
+ * 相似书籍推荐结果
+ * @param id 书籍id
+ * @param title 标题
+ * @param author 作者
+ * @param coverPath 封面路径
+ * @param coverColor 封面主色调
+ * @param coverBlurHash 封面 BlurHash
+ * @param score 相似度得分
+ */
+public record SimilarBook(Long id, String title, String author, String coverPath, String coverColor, String coverBlurHash, double score) {
+}
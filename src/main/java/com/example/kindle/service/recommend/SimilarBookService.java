@@ -0,0 +1,499 @@
+package com.example.kindle.service.recommend;
+
+import com.example.kindle.entity.Book;
+import com.example.kindle.event.BookChangedEvent;
+import com.example.kindle.event.CoverPlaceholdersChangedEvent;
+import com.example.kindle.repository.BookRepository;
+import com.example.kindle.service.book.EbookProcessor;
+import com.example.kindle.service.book.EbookProcessorFactory;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * 相似书籍推荐：为每本书预先计算 top-K 相似书籍并常驻内存。
+ * 相似度 = 分类 Jaccard、同作者、正文 MinHash 相似度的加权和；
+ * 候选集来自分类、作者和 MinHash 分段的倒排索引，避免两两比较全部书籍。
+ * 全量重建分页读取、使用 fork-join 并行计算；书籍变更后通过反向索引找到列表中包含它的书，只增量更新这些书。
+ */
+@Service
+public class SimilarBookService {
+
+    private static final Logger log = LoggerFactory.getLogger(SimilarBookService.class);
+
+    private static final String UNKNOWN_AUTHOR = "未知作者";
+    private static final int BANDS = 16;
+    private static final int ROWS = MinHash.NUM_HASHES / BANDS;
+    private static final int PAGE_SIZE = 1000;
+    private static final int MAX_TEXT_CHARS = 200_000;
+
+    private final BookRepository bookRepository;
+    private final EbookProcessorFactory ebookProcessorFactory;
+    private final TransactionTemplate readTemplate;
+    private final TransactionTemplate writeTemplate;
+
+    @Value("${recommend.top-k:20}")
+    private int topK;
+    @Value("${recommend.category-weight:0.5}")
+    private double categoryWeight;
+    @Value("${recommend.author-weight:0.2}")
+    private double authorWeight;
+    @Value("${recommend.content-weight:0.3}")
+    private double contentWeight;
+    @Value("${recommend.max-candidates:5000}")
+    private int maxCandidates; // 单本书最多比较的候选书籍数
+
+    //对外只读的推荐结果
+    private final Map<Long, List<SimilarBook>> neighbors = new ConcurrentHashMap<>();
+    //以下结构只在 updateExecutor 线程中修改
+    private final Map<Long, BookVector> vectors = new ConcurrentHashMap<>();
+    private final Map<Long, Set<Long>> byCategory = new ConcurrentHashMap<>();
+    private final Map<String, Set<Long>> byAuthor = new ConcurrentHashMap<>();
+    private final Map<Long, Set<Long>> byBand = new ConcurrentHashMap<>();
+    //反向索引：书籍id -> 推荐列表中包含它的书籍id
+    private final Map<Long, Set<Long>> listedIn = new HashMap<>();
+
+    private final ExecutorService updateExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "similar-books");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    public SimilarBookService(BookRepository bookRepository, EbookProcessorFactory ebookProcessorFactory,
+                              PlatformTransactionManager transactionManager) {
+        this.bookRepository = bookRepository;
+        this.ebookProcessorFactory = ebookProcessorFactory;
+        this.readTemplate = new TransactionTemplate(transactionManager);
+        this.readTemplate.setReadOnly(true);
+        this.writeTemplate = new TransactionTemplate(transactionManager);
+        //签名回写可能发生在只读事务内，需要单独开启写事务
+        this.writeTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * 获取相似书籍
+     * @param bookId 书籍id
+     * @param limit 返回数量
+     * @return 按相似度降序排列的书籍，未建立索引时返回空列表
+     */
+    public List<SimilarBook> getSimilarBooks(Long bookId, int limit) {
+        List<SimilarBook> list = neighbors.getOrDefault(bookId, List.of());
+        return list.size() <= limit ? list : list.subList(0, Math.max(limit, 0));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        updateExecutor.submit(this::rebuildSafely);
+    }
+
+    //定期全量重建，修正批量分类操作等未发布事件的变更
+    @Scheduled(initialDelayString = "${recommend.rebuild-interval:PT6H}", fixedDelayString = "${recommend.rebuild-interval:PT6H}")
+    public void scheduledRebuild() {
+        updateExecutor.submit(this::rebuildSafely);
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onBookChanged(BookChangedEvent event) {
+        updateExecutor.submit(() -> {
+            try {
+                refresh(event.bookId());
+            } catch (Exception e) {
+                log.warn("更新相似书籍失败, bookId={}", event.bookId(), e);
+            }
+        });
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onCoverPlaceholdersChanged(CoverPlaceholdersChangedEvent event) {
+        updateExecutor.submit(() -> {
+            try {
+                replacePlaceholders(event.bookIds());
+            } catch (Exception e) {
+                log.warn("更新相似书籍封面占位失败", e);
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        updateExecutor.shutdownNow();
+        pool.shutdownNow();
+    }
+
+    private void rebuildSafely() {
+        try {
+            rebuild();
+        } catch (Exception e) {
+            log.warn("重建相似书籍索引失败", e);
+        }
+    }
+
+    /**
+     * 全量重建：分批读取书籍特征，并行补全缺失的签名，再并行计算每本书的 top-K
+     */
+    void rebuild() throws ExecutionException, InterruptedException {
+        long start = System.currentTimeMillis();
+        List<BookVector> loaded = new ArrayList<>();
+        long lastId = 0;
+        while (true) {
+            long after = lastId;
+            //每页只保留特征向量，书籍实体用完即可回收
+            BookPage page = readTemplate.execute(status -> {
+                List<Book> books = bookRepository.findByIdGreaterThanOrderByIdAsc(after, PageRequest.of(0, PAGE_SIZE));
+                Map<Long, List<Long>> links = new HashMap<>();
+                if (!books.isEmpty()) {
+                    for (Object[] row : bookRepository.findCategoryLinks(after, books.get(books.size() - 1).getId())) {
+                        links.computeIfAbsent((Long) row[0], k -> new ArrayList<>()).add((Long) row[1]);
+                    }
+                }
+                return new BookPage(books, links);
+            });
+            if (page == null || page.books().isEmpty()) {
+                break;
+            }
+            loaded.addAll(pool.submit(() -> page.books().parallelStream()
+                    .map(book -> toVector(book, page.links().getOrDefault(book.getId(), List.of())))
+                    .toList()).get());
+            lastId = page.books().get(page.books().size() - 1).getId();
+        }
+
+        vectors.clear();
+        byCategory.clear();
+        byAuthor.clear();
+        byBand.clear();
+        for (BookVector vector : loaded) {
+            vectors.put(vector.id(), vector);
+            index(vector);
+        }
+
+        BookVector[] all = loaded.toArray(new BookVector[0]);
+        Map<Long, List<SimilarBook>> computed = new ConcurrentHashMap<>();
+        pool.invoke(new NeighborTask(all, 0, all.length, computed));
+        neighbors.putAll(computed);
+        neighbors.keySet().retainAll(computed.keySet());
+        listedIn.clear();
+        computed.forEach((id, list) -> list.forEach(similar ->
+                listedIn.computeIfAbsent(similar.id(), k -> new HashSet<>()).add(id)));
+        log.info("相似书籍索引重建完成，共{}本，耗时{}ms", all.length, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 增量更新单本书：重新计算它自己的 top-K，并把它插入候选书籍的列表；
+     * 原本列表中包含它的书重新计算，保证删除、改名、改分类后结果不过期
+     */
+    private void refresh(Long bookId) {
+        BookVector old = vectors.remove(bookId);
+        if (old != null) {
+            unindex(old);
+        }
+        Set<Long> affected = new HashSet<>(listedIn.getOrDefault(bookId, Set.of()));
+
+        Optional<BookVector> current = readTemplate.execute(status -> bookRepository.findById(bookId)
+                .map(book -> toVector(book, bookRepository.findCategoryIdsByBookId(bookId))));
+        if (current == null || current.isEmpty()) {
+            setNeighbors(bookId, null);
+            listedIn.remove(bookId);
+        } else {
+            BookVector vector = current.get();
+            vectors.put(bookId, vector);
+            index(vector);
+            setNeighbors(bookId, computeNeighbors(vector));
+            for (Long candidateId : candidates(vector)) {
+                if (!affected.contains(candidateId)) {
+                    offer(candidateId, vector);
+                }
+            }
+        }
+
+        for (Long id : affected) {
+            BookVector vector = vectors.get(id);
+            setNeighbors(id, vector != null ? computeNeighbors(vector) : null);
+        }
+    }
+
+    /**
+     * 只替换特征和推荐列表中的封面占位字段，相似度不受封面影响，不需要重新计算
+     */
+    private void replacePlaceholders(List<Long> bookIds) {
+        List<Book> books = readTemplate.execute(status -> bookRepository.findAllById(bookIds));
+        if (books == null) {
+            return;
+        }
+        for (Book book : books) {
+            BookVector old = vectors.get(book.getId());
+            if (old == null) {
+                continue;
+            }
+            vectors.put(book.getId(), new BookVector(old.id(), old.title(), old.author(), old.coverPath(),
+                    book.getCoverColor(), book.getCoverBlurHash(), old.categoryIds(), old.authorKey(), old.signature()));
+            for (Long listingId : listedIn.getOrDefault(book.getId(), Set.of())) {
+                List<SimilarBook> list = neighbors.get(listingId);
+                if (list != null) {
+                    neighbors.put(listingId, list.stream()
+                            .map(similar -> similar.id().equals(book.getId())
+                                    ? new SimilarBook(similar.id(), similar.title(), similar.author(), similar.coverPath(),
+                                            book.getCoverColor(), book.getCoverBlurHash(), similar.score())
+                                    : similar)
+                            .toList());
+                }
+            }
+        }
+    }
+
+    /**
+     * 替换一本书的推荐列表并同步反向索引，list 为空表示删除
+     */
+    private void setNeighbors(Long id, List<SimilarBook> list) {
+        List<SimilarBook> previous = list != null ? neighbors.put(id, list) : neighbors.remove(id);
+        if (previous != null) {
+            for (SimilarBook similar : previous) {
+                removeFrom(listedIn, similar.id(), id);
+            }
+        }
+        if (list != null) {
+            for (SimilarBook similar : list) {
+                listedIn.computeIfAbsent(similar.id(), k -> new HashSet<>()).add(id);
+            }
+        }
+    }
+
+    /**
+     * 新书得分超过候选书当前最低分时插入其列表
+     */
+    private void offer(Long candidateId, BookVector vector) {
+        BookVector candidate = vectors.get(candidateId);
+        if (candidate == null) {
+            return;
+        }
+        double score = score(candidate, vector);
+        if (score <= 0) {
+            return;
+        }
+        List<SimilarBook> list = neighbors.getOrDefault(candidateId, List.of());
+        if (list.size() >= topK && list.get(list.size() - 1).score() >= score) {
+            return;
+        }
+        List<SimilarBook> updated = new ArrayList<>(list.size() + 1);
+        updated.addAll(list);
+        updated.add(vector.toSimilarBook(score));
+        updated.sort(Comparator.comparingDouble(SimilarBook::score).reversed());
+        if (updated.size() > topK) {
+            updated = updated.subList(0, topK);
+        }
+        setNeighbors(candidateId, List.copyOf(updated));
+    }
+
+    private List<SimilarBook> computeNeighbors(BookVector vector) {
+        PriorityQueue<SimilarBook> heap = new PriorityQueue<>(Comparator.comparingDouble(SimilarBook::score));
+        for (Long candidateId : candidates(vector)) {
+            BookVector other = vectors.get(candidateId);
+            if (other == null) {
+                continue;
+            }
+            double score = score(vector, other);
+            if (score <= 0) {
+                continue;
+            }
+            if (heap.size() < topK) {
+                heap.add(other.toSimilarBook(score));
+            } else if (heap.peek().score() < score) {
+                heap.poll();
+                heap.add(other.toSimilarBook(score));
+            }
+        }
+        List<SimilarBook> result = new ArrayList<>(heap);
+        result.sort(Comparator.comparingDouble(SimilarBook::score).reversed());
+        return List.copyOf(result);
+    }
+
+    /**
+     * 候选集：先取签名分段和作者（更精确），再取同分类，总数不超过 maxCandidates
+     */
+    private Set<Long> candidates(BookVector vector) {
+        Set<Long> result = new HashSet<>();
+        if (vector.signature() != null) {
+            for (int band = 0; band < BANDS; band++) {
+                addCandidates(result, byBand.get(bandKey(vector.signature(), band)));
+            }
+        }
+        if (vector.authorKey() != null) {
+            addCandidates(result, byAuthor.get(vector.authorKey()));
+        }
+        for (long categoryId : vector.categoryIds()) {
+            addCandidates(result, byCategory.get(categoryId));
+        }
+        result.remove(vector.id());
+        return result;
+    }
+
+    private void addCandidates(Set<Long> result, Set<Long> ids) {
+        if (ids == null) {
+            return;
+        }
+        for (Long id : ids) {
+            if (result.size() >= maxCandidates) {
+                return;
+            }
+            result.add(id);
+        }
+    }
+
+    private double score(BookVector a, BookVector b) {
+        double score = categoryWeight * jaccard(a.categoryIds(), b.categoryIds());
+        if (a.authorKey() != null && a.authorKey().equals(b.authorKey())) {
+            score += authorWeight;
+        }
+        return score + contentWeight * MinHash.similarity(a.signature(), b.signature());
+    }
+
+    private static double jaccard(long[] a, long[] b) {
+        if (a.length == 0 || b.length == 0) {
+            return 0;
+        }
+        int i = 0, j = 0, common = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] == b[j]) {
+                common++;
+                i++;
+                j++;
+            } else if (a[i] < b[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return (double) common / (a.length + b.length - common);
+    }
+
+    private void index(BookVector vector) {
+        for (long categoryId : vector.categoryIds()) {
+            byCategory.computeIfAbsent(categoryId, k -> ConcurrentHashMap.newKeySet()).add(vector.id());
+        }
+        if (vector.authorKey() != null) {
+            byAuthor.computeIfAbsent(vector.authorKey(), k -> ConcurrentHashMap.newKeySet()).add(vector.id());
+        }
+        if (vector.signature() != null) {
+            for (int band = 0; band < BANDS; band++) {
+                byBand.computeIfAbsent(bandKey(vector.signature(), band), k -> ConcurrentHashMap.newKeySet()).add(vector.id());
+            }
+        }
+    }
+
+    private void unindex(BookVector vector) {
+        for (long categoryId : vector.categoryIds()) {
+            removeFrom(byCategory, categoryId, vector.id());
+        }
+        if (vector.authorKey() != null) {
+            removeFrom(byAuthor, vector.authorKey(), vector.id());
+        }
+        if (vector.signature() != null) {
+            for (int band = 0; band < BANDS; band++) {
+                removeFrom(byBand, bandKey(vector.signature(), band), vector.id());
+            }
+        }
+    }
+
+    private static <K> void removeFrom(Map<K, Set<Long>> index, K key, Long id) {
+        index.computeIfPresent(key, (k, ids) -> {
+            ids.remove(id);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    private static long bandKey(int[] signature, int band) {
+        int hash = 17;
+        for (int r = 0; r < ROWS; r++) {
+            hash = 31 * hash + signature[band * ROWS + r];
+        }
+        return ((long) band << 32) | (hash & 0xffffffffL);
+    }
+
+    /**
+     * 构造特征，签名缺失时从电子书文件计算并写回数据库
+     */
+    private BookVector toVector(Book book, List<Long> categoryIds) {
+        long[] categories = categoryIds.stream().mapToLong(Long::longValue).sorted().distinct().toArray();
+        String author = book.getAuthor() == null ? "" : book.getAuthor().trim().toLowerCase();
+        String authorKey = author.isEmpty() || UNKNOWN_AUTHOR.equals(author) ? null : author;
+        int[] signature = MinHash.fromBytes(book.getContentSignature());
+        if (signature == null && book.getFilePath() != null) {
+            signature = computeSignature(book.getId(), book.getFilePath());
+        }
+        return new BookVector(book.getId(), book.getTitle(), book.getAuthor(), book.getCoverPath(),
+                book.getCoverColor(), book.getCoverBlurHash(), categories, authorKey, signature);
+    }
+
+    private int[] computeSignature(Long bookId, String filePath) {
+        Path path = Paths.get(filePath);
+        int dotIndex = filePath.lastIndexOf('.');
+        if (!Files.exists(path) || dotIndex < 0) {
+            return null;
+        }
+        try {
+            Optional<EbookProcessor> processor = ebookProcessorFactory.getProcessor(filePath.substring(dotIndex + 1));
+            if (processor.isEmpty()) {
+                return null;
+            }
+            int[] signature = MinHash.signature(processor.get().extractText(path, MAX_TEXT_CHARS));
+            if (signature != null) {
+                writeTemplate.executeWithoutResult(status ->
+                        bookRepository.updateContentSignature(bookId, MinHash.toBytes(signature)));
+            }
+            return signature;
+        } catch (Exception e) {
+            log.warn("计算正文签名失败, bookId={}: {}", bookId, e.getMessage());
+            return null;
+        }
+    }
+
+    private record BookPage(List<Book> books, Map<Long, List<Long>> links) {
+    }
+
+    /**
+     * 把书籍区间拆分成小块并行计算 top-K
+     */
+    private class NeighborTask extends RecursiveAction {
+        private static final int THRESHOLD = 256;
+        private final BookVector[] books;
+        private final int from;
+        private final int to;
+        private final Map<Long, List<SimilarBook>> result;
+
+        NeighborTask(BookVector[] books, int from, int to, Map<Long, List<SimilarBook>> result) {
+            this.books = books;
+            this.from = from;
+            this.to = to;
+            this.result = result;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= THRESHOLD) {
+                for (int i = from; i < to; i++) {
+                    result.put(books[i].id(), computeNeighbors(books[i]));
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new NeighborTask(books, from, mid, result), new NeighborTask(books, mid, to, result));
+        }
+    }
+}
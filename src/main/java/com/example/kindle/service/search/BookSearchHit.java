@@ -0,0 +1,12 @@
+package com.example.kindle.service.search;
+
+/**
+ * 书内搜索的一条命中，before + match + after 为命中位置附近的原文片段，match 为需要高亮的部分
+ * @param chapter 章节序号（按阅读顺序，从0开始）
+ * @param offset 命中位置在章节文本中的字节偏移
+ * @param before 命中之前的文本
+ * @param match 命中的文本
+ * @param after 命中之后的文本
+ */
+public record BookSearchHit(int chapter, int offset, String before, String match, String after) {
+}
@@ -0,0 +1,13 @@
+package com.example.kindle.service.search;
+
+import java.util.List;
+
+/**
+ * 书内搜索结果
+ * @param bookId 书籍id
+ * @param query 查询内容
+ * @param total 命中总数
+ * @param hits 按阅读顺序排列的前若干条命中
+ */
+public record BookSearchResult(Long bookId, String query, int total, List<BookSearchHit> hits) {
+}
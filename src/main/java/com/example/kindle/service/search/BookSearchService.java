@@ -0,0 +1,299 @@
+package com.example.kindle.service.search;
+
+import com.example.kindle.entity.Book;
+import com.example.kindle.event.BookChangedEvent;
+import com.example.kindle.repository.BookRepository;
+import com.example.kindle.service.book.EbookProcessor;
+import com.example.kindle.service.book.EbookProcessorFactory;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * 书内搜索：每本书的位置倒排索引保存在电子书旁边（xxx.epub.idx），
+ * 上传后在后台构建；搜索时索引还没建好就在后台开始构建并立即返回 503，不占用请求线程等待。
+ * 查询时内存映射索引文件，已打开的索引放在按文件大小计量的 LRU 缓存中。
+ * 删除书籍时一并删除索引文件，删除后才完成的构建结果直接丢弃。
+ */
+@Service
+public class BookSearchService {
+
+    private static final Logger log = LoggerFactory.getLogger(BookSearchService.class);
+
+    private static final String INDEX_SUFFIX = ".idx";
+
+    private final BookRepository bookRepository;
+    private final EbookProcessorFactory ebookProcessorFactory;
+    private final TransactionTemplate readTemplate;
+
+    @Value("${book-search.cache-size:256MB}")
+    private DataSize cacheSize;
+    @Value("${book-search.snippet-context:80}")
+    private int snippetContext; // 片段前后各保留的字节数
+    @Value("${book-search.max-hits:100}")
+    private int maxHits;
+
+    //访问顺序的 LRU，按索引文件大小计量
+    private final LinkedHashMap<Long, BookTextIndex> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedBytes;
+    //正在构建的索引，同一本书只建一次
+    private final Map<Long, CompletableFuture<BookTextIndex>> building = new ConcurrentHashMap<>();
+    //已删除的书，id 不会复用；仍在进行的构建完成后据此丢弃结果
+    private final Set<Long> deleted = ConcurrentHashMap.newKeySet();
+    private final ExecutorService builder;
+
+    public BookSearchService(BookRepository bookRepository, EbookProcessorFactory ebookProcessorFactory,
+                             PlatformTransactionManager transactionManager,
+                             @Value("${book-search.build-threads:2}") int buildThreads) {
+        this.bookRepository = bookRepository;
+        this.ebookProcessorFactory = ebookProcessorFactory;
+        this.readTemplate = new TransactionTemplate(transactionManager);
+        this.readTemplate.setReadOnly(true);
+        this.builder = Executors.newFixedThreadPool(buildThreads, r -> {
+            Thread thread = new Thread(r, "book-search-index");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 在书中搜索词语或短语
+     * @param bookId 书籍id
+     * @param query 查询内容，多个词按短语匹配
+     * @param limit 最多返回的命中数
+     * @return 搜索结果，书籍或电子书文件不存在时为空
+     * @throws IllegalArgumentException 查询内容中没有可搜索的词
+     * @throws IllegalStateException 索引尚未建好，已在后台构建
+     * @throws IOException 索引读取或构建失败
+     */
+    public Optional<BookSearchResult> search(Long bookId, String query, int limit) throws IOException {
+        List<String> terms = Tokenizer.terms(query);
+        if (terms.isEmpty()) {
+            throw new IllegalArgumentException("查询内容中没有可搜索的词");
+        }
+        Optional<BookTextIndex> index = getIndex(bookId);
+        if (index.isEmpty()) {
+            return Optional.empty();
+        }
+        BookTextIndex.SearchResult result = index.get().search(terms, Math.max(1, Math.min(limit, maxHits)), snippetContext);
+        return Optional.of(new BookSearchResult(bookId, query, result.total(), result.hits()));
+    }
+
+    /**
+     * 上传或修改后在后台预先建好索引，不放入缓存
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onBookChanged(BookChangedEvent event) {
+        if (event.type() == BookChangedEvent.Type.DELETED) {
+            deleted.add(event.bookId());
+            building.remove(event.bookId());
+            evict(event.bookId());
+            return;
+        }
+        builder.execute(() -> {
+            try {
+                Optional<Path> ebook = ebookPath(event.bookId());
+                if (ebook.isPresent() && !isFresh(ebook.get(), indexPath(ebook.get()))) {
+                    build(ebook.get(), indexPath(ebook.get()));
+                    discardIfDeleted(event.bookId(), ebook.get());
+                }
+            } catch (Exception e) {
+                log.warn("建立书内搜索索引失败, bookId={}: {}", event.bookId(), e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * 删除书籍的索引文件，在删除书籍的事务中调用，提交后才执行
+     * @param bookId 书籍id
+     * @param ebookPath 电子书文件路径
+     */
+    public void deleteIndex(Long bookId, String ebookPath) {
+        if (ebookPath == null) {
+            return;
+        }
+        Path indexPath = indexPath(Paths.get(ebookPath));
+        Runnable delete = () -> {
+            deleted.add(bookId);
+            building.remove(bookId);
+            evict(bookId);
+            deleteQuietly(indexPath);
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    delete.run();
+                }
+            });
+        } else {
+            delete.run();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        builder.shutdownNow();
+    }
+
+    /**
+     * 缓存中或磁盘上已有索引时直接返回；否则在后台构建，请求立即以 IllegalStateException 返回
+     */
+    private Optional<BookTextIndex> getIndex(Long bookId) throws IOException {
+        synchronized (cache) {
+            BookTextIndex cached = cache.get(bookId);
+            if (cached != null) {
+                return Optional.of(cached);
+            }
+        }
+        Optional<Path> ebook = ebookPath(bookId);
+        if (ebook.isEmpty()) {
+            return Optional.empty();
+        }
+        CompletableFuture<BookTextIndex> pending = building.get(bookId);
+        if (pending == null) {
+            Path indexPath = indexPath(ebook.get());
+            if (isFresh(ebook.get(), indexPath)) {
+                try {
+                    BookTextIndex index = BookTextIndex.open(indexPath);
+                    put(bookId, index);
+                    return Optional.of(index);
+                } catch (IOException e) {
+                    log.warn("索引文件损坏，重新构建: {}", indexPath);
+                }
+            }
+            pending = building.computeIfAbsent(bookId, id -> startBuild(id, ebook.get()));
+        }
+        if (!pending.isDone()) {
+            throw new IllegalStateException("索引构建中，请稍后重试");
+        }
+        try {
+            return Optional.of(pending.join());
+        } catch (CompletionException e) {
+            building.remove(bookId, pending);
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+            throw new IOException("建立书内搜索索引失败: " + cause.getMessage(), cause);
+        }
+    }
+
+    private CompletableFuture<BookTextIndex> startBuild(Long bookId, Path ebook) {
+        CompletableFuture<BookTextIndex> created = CompletableFuture.supplyAsync(() -> {
+            try {
+                Path indexPath = indexPath(ebook);
+                build(ebook, indexPath);
+                return BookTextIndex.open(indexPath);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, builder);
+        created.whenComplete((index, error) -> {
+            if (index != null && !discardIfDeleted(bookId, ebook)) {
+                put(bookId, index);
+                //放入缓存的同时被删除
+                if (deleted.contains(bookId)) {
+                    evict(bookId);
+                }
+            }
+            //失败的结果留给下一次搜索请求报告错误，之后重新构建
+            if (error == null) {
+                building.remove(bookId, created);
+            }
+        });
+        return created;
+    }
+
+    /**
+     * 构建期间书被删除时删掉刚写出的索引文件
+     * @return 是否已删除
+     */
+    private boolean discardIfDeleted(Long bookId, Path ebook) {
+        if (!deleted.contains(bookId)) {
+            return false;
+        }
+        deleteQuietly(indexPath(ebook));
+        return true;
+    }
+
+    private static void deleteQuietly(Path indexPath) {
+        try {
+            Files.deleteIfExists(indexPath);
+        } catch (IOException e) {
+            log.warn("删除书内搜索索引失败: {}", indexPath, e);
+        }
+    }
+
+    private Optional<Path> ebookPath(Long bookId) {
+        return readTemplate.execute(status -> bookRepository.findById(bookId))
+                .map(Book::getFilePath)
+                .map(Paths::get)
+                .filter(Files::exists);
+    }
+
+    private void build(Path ebook, Path indexPath) throws IOException {
+        String filename = ebook.getFileName().toString();
+        int dotIndex = filename.lastIndexOf('.');
+        EbookProcessor processor = ebookProcessorFactory.getProcessor(dotIndex < 0 ? "" : filename.substring(dotIndex + 1))
+                .orElseThrow(() -> new IOException("不支持的电子书格式: " + filename));
+        long start = System.currentTimeMillis();
+        BookTextIndex.write(processor.extractChapters(ebook), indexPath);
+        log.info("书内搜索索引已建立: {}，{}字节，耗时{}ms", indexPath, Files.size(indexPath), System.currentTimeMillis() - start);
+    }
+
+    private static Path indexPath(Path ebook) {
+        return ebook.resolveSibling(ebook.getFileName() + INDEX_SUFFIX);
+    }
+
+    private static boolean isFresh(Path ebook, Path indexPath) throws IOException {
+        return Files.exists(indexPath)
+                && Files.getLastModifiedTime(indexPath).compareTo(Files.getLastModifiedTime(ebook)) >= 0;
+    }
+
+    private void put(Long bookId, BookTextIndex index) {
+        synchronized (cache) {
+            BookTextIndex previous = cache.put(bookId, index);
+            if (previous != null) {
+                cachedBytes -= previous.size();
+            }
+            cachedBytes += index.size();
+            //超出容量时淘汰最久未用的索引，映射在对象被回收后释放
+            Iterator<Map.Entry<Long, BookTextIndex>> iterator = cache.entrySet().iterator();
+            while (cachedBytes > cacheSize.toBytes() && cache.size() > 1 && iterator.hasNext()) {
+                Map.Entry<Long, BookTextIndex> eldest = iterator.next();
+                if (eldest.getKey().equals(bookId)) {
+                    continue;
+                }
+                cachedBytes -= eldest.getValue().size();
+                iterator.remove();
+            }
+        }
+    }
+
+    private void evict(Long bookId) {
+        synchronized (cache) {
+            BookTextIndex removed = cache.remove(bookId);
+            if (removed != null) {
+                cachedBytes -= removed.size();
+            }
+        }
+    }
+}
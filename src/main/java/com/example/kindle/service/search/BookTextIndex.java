@@ -0,0 +1,324 @@
+package com.example.kindle.service.search;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * 单本书的位置倒排索引，保存为电子书旁边的 .idx 文件，查询时整个文件内存映射，按需读取。
+ * <pre>
+ * 头部      magic(int) version(int) chapterCount(int) termCount(int)
+ * 章节表    chapterCount × [textOffset(long) textLength(int)]
+ * 词表      termCount × [termOffset(long) termLength(int) postingsOffset(long) postingsCount(int)]，按词的 UTF-8 字节序排列
+ * 词池      各个词的 UTF-8 字节
+ * 倒排表    每条为 (章节, 词序号, 字节偏移) 的变长整数差值编码
+ * 正文      各章节纯文本的 UTF-8 字节，用于截取片段
+ * </pre>
+ */
+final class BookTextIndex {
+
+    private static final int MAGIC = 0x4B494458; // "KIDX"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final int CHAPTER_ENTRY_BYTES = 12;
+    private static final int TERM_ENTRY_BYTES = 24;
+
+    private final MappedByteBuffer buffer;
+    private final long size;
+    private final int chapterCount;
+    private final int termCount;
+    private final int termTable;
+
+    private BookTextIndex(MappedByteBuffer buffer, long size) throws IOException {
+        this.buffer = buffer;
+        this.size = size;
+        if (size < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("索引文件格式不正确");
+        }
+        this.chapterCount = buffer.getInt(8);
+        this.termCount = buffer.getInt(12);
+        this.termTable = HEADER_BYTES + chapterCount * CHAPTER_ENTRY_BYTES;
+    }
+
+    /**
+     * 内存映射已有的索引文件
+     */
+    static BookTextIndex open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("索引文件过大: " + path);
+            }
+            //映射在通道关闭后仍然有效
+            return new BookTextIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, size), size);
+        }
+    }
+
+    /**
+     * 为各章节文本建立索引并写入文件，先写临时文件再原子替换
+     */
+    static void write(List<String> chapters, Path path) throws IOException {
+        List<byte[]> texts = new ArrayList<>(chapters.size());
+        //词 -> [章节, 词序号, 字节偏移] 三元组
+        Map<String, IntTriples> postings = new HashMap<>();
+        for (int c = 0; c < chapters.size(); c++) {
+            byte[] bytes = chapters.get(c).getBytes(StandardCharsets.UTF_8);
+            texts.add(bytes);
+            int chapter = c;
+            int[] position = {0};
+            //按 UTF-8 往返一次，保证字节偏移与写入的正文一致
+            Tokenizer.tokenize(new String(bytes, StandardCharsets.UTF_8), (term, offset) ->
+                    postings.computeIfAbsent(term, t -> new IntTriples()).add(chapter, position[0]++, offset));
+        }
+
+        List<byte[]> terms = new ArrayList<>(postings.size());
+        Map<byte[], IntTriples> byBytes = new IdentityHashMap<>();
+        postings.forEach((term, triples) -> {
+            byte[] bytes = term.getBytes(StandardCharsets.UTF_8);
+            terms.add(bytes);
+            byBytes.put(bytes, triples);
+        });
+        terms.sort(Arrays::compareUnsigned);
+
+        ByteArrayOutputStream pool = new ByteArrayOutputStream();
+        ByteArrayOutputStream postingBytes = new ByteArrayOutputStream();
+        long[] termOffsets = new long[terms.size()];
+        long[] postingOffsets = new long[terms.size()];
+        for (int i = 0; i < terms.size(); i++) {
+            termOffsets[i] = pool.size();
+            pool.writeBytes(terms.get(i));
+            postingOffsets[i] = postingBytes.size();
+            byBytes.get(terms.get(i)).encode(postingBytes);
+        }
+
+        long poolStart = HEADER_BYTES + (long) chapters.size() * CHAPTER_ENTRY_BYTES + (long) terms.size() * TERM_ENTRY_BYTES;
+        long postingsStart = poolStart + pool.size();
+        long textStart = postingsStart + postingBytes.size();
+
+        Path temp = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(chapters.size());
+                out.writeInt(terms.size());
+                long textOffset = textStart;
+                for (byte[] text : texts) {
+                    out.writeLong(textOffset);
+                    out.writeInt(text.length);
+                    textOffset += text.length;
+                }
+                for (int i = 0; i < terms.size(); i++) {
+                    out.writeLong(poolStart + termOffsets[i]);
+                    out.writeInt(terms.get(i).length);
+                    out.writeLong(postingsStart + postingOffsets[i]);
+                    out.writeInt(byBytes.get(terms.get(i)).size());
+                }
+                pool.writeTo(out);
+                postingBytes.writeTo(out);
+                for (byte[] text : texts) {
+                    out.write(text);
+                }
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    long size() {
+        return size;
+    }
+
+    /**
+     * 短语查询：各个词在同一章节中连续出现
+     * @param terms 查询分词结果
+     * @param limit 最多返回的命中数
+     * @param context 片段前后各保留的字节数
+     * @return 命中总数和前 limit 条片段
+     */
+    SearchResult search(List<String> terms, int limit, int context) {
+        List<Postings> lists = new ArrayList<>(terms.size());
+        for (String term : terms) {
+            Postings postings = lookup(term);
+            if (postings == null) {
+                return new SearchResult(0, List.of());
+            }
+            lists.add(postings);
+        }
+        Postings first = lists.get(0);
+        int total = 0;
+        List<BookSearchHit> hits = new ArrayList<>();
+        for (int i = 0; i < first.keys.length; i++) {
+            int lastIndex = i;
+            boolean matched = true;
+            for (int j = 1; j < lists.size() && matched; j++) {
+                lastIndex = Arrays.binarySearch(lists.get(j).keys, first.keys[i] + j);
+                matched = lastIndex >= 0;
+            }
+            if (!matched) {
+                continue;
+            }
+            total++;
+            if (hits.size() < limit) {
+                int chapter = (int) (first.keys[i] >>> 32);
+                hits.add(snippet(chapter, first.offsets[i], lists.get(lists.size() - 1).offsets[lastIndex], context));
+            }
+        }
+        return new SearchResult(total, hits);
+    }
+
+    /**
+     * 在词表中二分查找
+     */
+    private Postings lookup(String term) {
+        byte[] target = term.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = termCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int entry = termTable + mid * TERM_ENTRY_BYTES;
+            byte[] candidate = new byte[buffer.getInt(entry + 8)];
+            buffer.get((int) buffer.getLong(entry), candidate);
+            int cmp = Arrays.compareUnsigned(candidate, target);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return decode((int) buffer.getLong(entry + 12), buffer.getInt(entry + 20));
+            }
+        }
+        return null;
+    }
+
+    private Postings decode(int offset, int count) {
+        long[] keys = new long[count];
+        int[] offsets = new int[count];
+        int[] cursor = {offset};
+        int chapter = 0, position = 0, byteOffset = 0;
+        for (int i = 0; i < count; i++) {
+            int chapterDelta = readVarInt(cursor);
+            if (chapterDelta > 0) {
+                chapter += chapterDelta;
+                position = 0;
+                byteOffset = 0;
+            }
+            position += readVarInt(cursor);
+            byteOffset += readVarInt(cursor);
+            keys[i] = ((long) chapter << 32) | position;
+            offsets[i] = byteOffset;
+        }
+        return new Postings(keys, offsets);
+    }
+
+    private int readVarInt(int[] cursor) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get(cursor[0]++);
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    /**
+     * 截取命中位置前后的文本，边界对齐到完整的 UTF-8 字符
+     */
+    private BookSearchHit snippet(int chapter, int matchStart, int lastTokenStart, int context) {
+        int entry = HEADER_BYTES + chapter * CHAPTER_ENTRY_BYTES;
+        int textOffset = (int) buffer.getLong(entry);
+        int textLength = buffer.getInt(entry + 8);
+
+        int lastTokenBytes = Tokenizer.firstTokenBytes(decode(textOffset, lastTokenStart,
+                Math.min(textLength, lastTokenStart + 256)));
+        int matchEnd = lastTokenStart + lastTokenBytes;
+        int start = Math.max(0, matchStart - context);
+        while (start > 0 && isContinuation(buffer.get(textOffset + start))) {
+            start--;
+        }
+        int end = Math.min(textLength, matchEnd + context);
+        while (end < textLength && isContinuation(buffer.get(textOffset + end))) {
+            end++;
+        }
+        return new BookSearchHit(chapter, matchStart,
+                decode(textOffset, start, matchStart),
+                decode(textOffset, matchStart, matchEnd),
+                decode(textOffset, matchEnd, end));
+    }
+
+    private String decode(int textOffset, int from, int to) {
+        byte[] bytes = new byte[Math.max(0, to - from)];
+        buffer.get(textOffset + from, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static boolean isContinuation(byte b) {
+        return (b & 0xC0) == 0x80;
+    }
+
+    record SearchResult(int total, List<BookSearchHit> hits) {
+    }
+
+    /**
+     * @param keys 章节 << 32 | 词序号，升序
+     * @param offsets 对应的字节偏移
+     */
+    private record Postings(long[] keys, int[] offsets) {
+    }
+
+    /**
+     * 建索引时收集某个词的 (章节, 词序号, 字节偏移)，按出现顺序追加，天然有序
+     */
+    private static final class IntTriples {
+        private int[] values = new int[12];
+        private int length;
+
+        void add(int chapter, int position, int offset) {
+            if (length + 3 > values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+            }
+            values[length++] = chapter;
+            values[length++] = position;
+            values[length++] = offset;
+        }
+
+        int size() {
+            return length / 3;
+        }
+
+        void encode(OutputStream out) throws IOException {
+            int chapter = 0, position = 0, offset = 0;
+            for (int i = 0; i < length; i += 3) {
+                int chapterDelta = values[i] - chapter;
+                writeVarInt(out, chapterDelta);
+                if (chapterDelta > 0) {
+                    chapter = values[i];
+                    position = 0;
+                    offset = 0;
+                }
+                writeVarInt(out, values[i + 1] - position);
+                writeVarInt(out, values[i + 2] - offset);
+                position = values[i + 1];
+                offset = values[i + 2];
+            }
+        }
+
+        private static void writeVarInt(OutputStream out, int value) throws IOException {
+            while ((value & ~0x7F) != 0) {
+                out.write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.write(value);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.kindle.service.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 书内搜索的分词：连续的字母数字为一个词并转小写，汉字、假名、谚文每个字单独成词，其余字符为分隔符。
+ * 同时给出每个词在 UTF-8 文本中的字节偏移，建索引和截取片段时使用
+ */
+final class Tokenizer {
+
+    private Tokenizer() {
+    }
+
+    interface TokenConsumer {
+        void accept(String term, int byteOffset);
+    }
+
+    static void tokenize(String text, TokenConsumer consumer) {
+        int bytes = 0;
+        int i = 0;
+        StringBuilder word = new StringBuilder();
+        int wordStart = 0;
+        while (i < text.length()) {
+            int cp = text.codePointAt(i);
+            int charCount = Character.charCount(cp);
+            if (isIdeographic(cp)) {
+                if (!word.isEmpty()) {
+                    consumer.accept(word.toString().toLowerCase(Locale.ROOT), wordStart);
+                    word.setLength(0);
+                }
+                consumer.accept(new String(Character.toChars(cp)), bytes);
+            } else if (Character.isLetterOrDigit(cp)) {
+                if (word.isEmpty()) {
+                    wordStart = bytes;
+                }
+                word.appendCodePoint(cp);
+            } else if (!word.isEmpty()) {
+                consumer.accept(word.toString().toLowerCase(Locale.ROOT), wordStart);
+                word.setLength(0);
+            }
+            bytes += utf8Length(cp);
+            i += charCount;
+        }
+        if (!word.isEmpty()) {
+            consumer.accept(word.toString().toLowerCase(Locale.ROOT), wordStart);
+        }
+    }
+
+    static List<String> terms(String text) {
+        List<String> terms = new ArrayList<>();
+        tokenize(text, (term, offset) -> terms.add(term));
+        return terms;
+    }
+
+    /**
+     * @param text 以某个词开头的文本
+     * @return 开头这个词在原文中的 UTF-8 字节长度
+     */
+    static int firstTokenBytes(String text) {
+        if (text.isEmpty()) {
+            return 0;
+        }
+        int first = text.codePointAt(0);
+        if (isIdeographic(first) || !Character.isLetterOrDigit(first)) {
+            return utf8Length(first);
+        }
+        int bytes = 0;
+        int i = 0;
+        while (i < text.length()) {
+            int cp = text.codePointAt(i);
+            if (isIdeographic(cp) || !Character.isLetterOrDigit(cp)) {
+                break;
+            }
+            bytes += utf8Length(cp);
+            i += Character.charCount(cp);
+        }
+        return bytes;
+    }
+
+    private static boolean isIdeographic(int cp) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(cp);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+
+    private static int utf8Length(int cp) {
+        if (cp < 0x80) {
+            return 1;
+        } else if (cp < 0x800) {
+            return 2;
+        } else if (cp < 0x10000) {
+            return 3;
+        }
+        return 4;
+    }
+}
@@ -0,0 +1,10 @@
+package com.example.kindle.service.upload;
+
+/**
+ * 分片校验和与客户端提供的不一致，客户端应重传该分片
+ */
+public class ChecksumMismatchException extends IllegalArgumentException {
+    public ChecksumMismatchException(String message) {
+        super(message);
+    }
+}
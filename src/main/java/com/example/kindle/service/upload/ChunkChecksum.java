@@ -0,0 +1,72 @@
+package com.example.kindle.service.upload;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.zip.CRC32C;
+
+/**
+ * 解析 tus 风格的 Upload-Checksum 头（"算法 base64值"），边写入边计算
+ * 支持 crc32c、md5、sha1、sha256
+ */
+final class ChunkChecksum {
+
+    private final String algorithm;
+    private final String expected;
+    private final MessageDigest digest;
+    private final CRC32C crc;
+
+    private ChunkChecksum(String algorithm, String expected) {
+        this.algorithm = algorithm;
+        this.expected = expected;
+        if ("crc32c".equals(algorithm)) {
+            this.crc = new CRC32C();
+            this.digest = null;
+        } else {
+            this.crc = null;
+            try {
+                this.digest = MessageDigest.getInstance(switch (algorithm) {
+                    case "md5" -> "MD5";
+                    case "sha1" -> "SHA-1";
+                    case "sha256" -> "SHA-256";
+                    default -> throw new IllegalArgumentException("不支持的校验算法:" + algorithm);
+                });
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalArgumentException("不支持的校验算法:" + algorithm, e);
+            }
+        }
+    }
+
+    /**
+     * @param header Upload-Checksum 请求头，为空时返回 null 表示不校验
+     */
+    static ChunkChecksum parse(String header) {
+        if (header == null || header.isBlank()) {
+            return null;
+        }
+        String[] parts = header.trim().split("\\s+");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Upload-Checksum 格式应为: 算法 base64值");
+        }
+        return new ChunkChecksum(parts[0].toLowerCase(), parts[1]);
+    }
+
+    void update(ByteBuffer buffer) {
+        if (crc != null) {
+            crc.update(buffer);
+        } else {
+            digest.update(buffer);
+        }
+    }
+
+    void verify() {
+        byte[] actual = crc != null
+                ? ByteBuffer.allocate(4).putInt((int) crc.getValue()).array()
+                : digest.digest();
+        String encoded = Base64.getEncoder().encodeToString(actual);
+        if (!encoded.equals(expected)) {
+            throw new ChecksumMismatchException("分片" + algorithm + "校验失败，期望" + expected + "，实际" + encoded);
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package com.example.kindle.service.upload;
+
+import com.example.kindle.entity.Book;
+import com.example.kindle.service.BookService;
+import com.example.kindle.service.book.EbookProcessorFactory;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * 可续传的分片上传（tus 风格）：
+ * 创建上传时直接在电子书目录下创建最终文件，各分片按位置用 FileChannel 并发写入，
+ * 没有临时文件和二次复制；全部分片到齐后交给 EbookProcessor 解析并登记为 Book，
+ * 登记失败时保留上传和文件，客户端处理完问题后可以再次完成，不必重传。
+ * 上传状态只保存在内存中，服务重启后未完成的上传需要重新开始。
+ * 每个上传占用一个打开的文件和一个稀疏文件，同时进行的上传数有上限。
+ */
+@Service
+public class ResumableUploadService {
+
+    private static final Logger log = LoggerFactory.getLogger(ResumableUploadService.class);
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final BookService bookService;
+    private final EbookProcessorFactory ebookProcessorFactory;
+    private final Map<String, UploadSession> sessions = new ConcurrentHashMap<>();
+
+    @Value("${file.ebook-dir}")
+    private String ebookDir;
+    @Value("${upload.resumable.chunk-size:8MB}")
+    private DataSize defaultChunkSize;
+    @Value("${upload.resumable.min-chunk-size:256KB}")
+    private DataSize minChunkSize;
+    @Value("${upload.resumable.max-chunk-size:64MB}")
+    private DataSize maxChunkSize;
+    @Value("${upload.resumable.max-chunks:16384}")
+    private int maxChunks;
+    @Value("${upload.resumable.max-file-size:2GB}")
+    private DataSize maxFileSize;
+    @Value("${upload.resumable.expire-after:PT24H}")
+    private Duration expireAfter;
+    private final Semaphore sessionPermits;
+
+    public ResumableUploadService(BookService bookService, EbookProcessorFactory ebookProcessorFactory,
+                                  @Value("${upload.resumable.max-sessions:64}") int maxSessions) {
+        this.bookService = bookService;
+        this.ebookProcessorFactory = ebookProcessorFactory;
+        this.sessionPermits = new Semaphore(maxSessions);
+    }
+
+    /**
+     * 创建上传，按总长度预先建立稀疏文件
+     * @param filename 原始文件名
+     * @param length 文件总字节数
+     * @param chunkSize 分片大小，为空时使用默认值
+     * @param categoryIds 分类
+     * @return 上传进度
+     * @throws IllegalArgumentException 参数不合法或分类不存在
+     * @throws IllegalStateException 同时进行的上传数已达上限
+     */
+    public UploadStatus create(String filename, long length, Integer chunkSize, List<Long> categoryIds) throws IOException {
+        if (filename == null || filename.isBlank()) {
+            throw new IllegalArgumentException("文件名为空");
+        }
+        String safeName = Paths.get(filename).getFileName().toString();
+        int dotIndex = safeName.lastIndexOf('.');
+        if (dotIndex <= 0 || dotIndex == safeName.length() - 1) {
+            throw new IllegalArgumentException("无法识别扩展名");
+        }
+        String extension = safeName.substring(dotIndex + 1);
+        if (ebookProcessorFactory.getProcessor(extension).isEmpty()) {
+            throw new IllegalArgumentException("不支持该电子书格式:" + extension);
+        }
+        if (length <= 0 || length > maxFileSize.toBytes()) {
+            throw new IllegalArgumentException("文件大小应在1到" + maxFileSize.toBytes() + "字节之间");
+        }
+        int size = chunkSize != null ? chunkSize : (int) defaultChunkSize.toBytes();
+        if (size < minChunkSize.toBytes() || size > maxChunkSize.toBytes()) {
+            throw new IllegalArgumentException("分片大小应在" + minChunkSize.toBytes() + "到" + maxChunkSize.toBytes() + "字节之间");
+        }
+        long chunkCount = UploadSession.chunkCountOf(length, size);
+        if (chunkCount > maxChunks) {
+            throw new IllegalArgumentException("分片数" + chunkCount + "超过上限" + maxChunks + "，请增大分片大小");
+        }
+        //在传输前检查分类，避免传完整个文件才发现分类不存在
+        bookService.requireCategories(categoryIds);
+        if (!sessionPermits.tryAcquire()) {
+            throw new IllegalStateException("同时进行的上传过多，请稍后再试");
+        }
+
+        Path path = null;
+        try {
+            Path dir = Paths.get(ebookDir);
+            if (!Files.exists(dir)) {
+                Files.createDirectories(dir);
+            }
+            path = dir.resolve(System.currentTimeMillis() + "_" + safeName);
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE,
+                    StandardOpenOption.SPARSE);
+            try {
+                //写入最后一个字节确定文件长度，各分片之后按位置覆盖
+                channel.write(ByteBuffer.wrap(new byte[1]), length - 1);
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+
+            String id = UUID.randomUUID().toString();
+            UploadSession session = new UploadSession(id, safeName, length, size, (int) chunkCount, categoryIds, path, channel);
+            sessions.put(id, session);
+            return UploadStatus.of(session);
+        } catch (IOException | RuntimeException e) {
+            sessionPermits.release();
+            if (path != null) {
+                Files.deleteIfExists(path);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 查询上传进度
+     */
+    public Optional<UploadStatus> status(String id) {
+        return Optional.ofNullable(sessions.get(id)).map(UploadStatus::of);
+    }
+
+    /**
+     * 写入一个分片，可以乱序、并发调用；同一分片重复上传会覆盖之前的内容，
+     * 写入期间该分片视为缺失，长度或校验和不通过时保持缺失，需要重新上传
+     * @param id 上传id
+     * @param index 分片序号，从0开始
+     * @param body 分片内容
+     * @param checksumHeader Upload-Checksum 请求头，可以为空
+     * @return 上传进度，上传不存在时为空
+     */
+    public Optional<UploadStatus> writeChunk(String id, int index, InputStream body, String checksumHeader) throws IOException {
+        UploadSession session = sessions.get(id);
+        if (session == null) {
+            return Optional.empty();
+        }
+        if (index < 0 || index >= session.getChunkCount()) {
+            throw new IllegalArgumentException("分片序号超出范围: " + index);
+        }
+        ChunkChecksum checksum = ChunkChecksum.parse(checksumHeader);
+        session.touch();
+        session.beginWrite(index);
+        boolean verified = false;
+        try {
+            writeChunk(session, index, body, checksum);
+            verified = true;
+        } catch (ClosedChannelException e) {
+            throw new IllegalStateException("上传已取消或已完成", e);
+        } finally {
+            session.endWrite(index, verified);
+        }
+        return Optional.of(UploadStatus.of(session));
+    }
+
+    private void writeChunk(UploadSession session, int index, InputStream body, ChunkChecksum checksum) throws IOException {
+        long offset = session.offsetOf(index);
+        long expected = session.lengthOf(index);
+        FileChannel channel = session.getChannel();
+        ReadableByteChannel in = Channels.newChannel(body);
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long written = 0;
+        while (true) {
+            buffer.clear();
+            //多读一个字节用于发现超长的分片
+            buffer.limit((int) Math.min(BUFFER_SIZE, expected - written + 1));
+            int read = in.read(buffer);
+            if (read < 0) {
+                break;
+            }
+            if (written + read > expected) {
+                throw new IllegalArgumentException("分片" + index + "超过应有长度" + expected);
+            }
+            buffer.flip();
+            if (checksum != null) {
+                checksum.update(buffer.duplicate());
+            }
+            while (buffer.hasRemaining()) {
+                written += channel.write(buffer, offset + written);
+            }
+        }
+        if (written != expected) {
+            throw new IllegalArgumentException("分片" + index + "不完整，期望" + expected + "字节，实际" + written);
+        }
+        if (checksum != null) {
+            checksum.verify();
+        }
+    }
+
+    /**
+     * 完成上传：确认所有分片到齐后把文件交给电子书处理器。
+     * 登记失败（分类已被删除、疑似重复被拒绝、数据库暂时不可用等）时保留上传和文件，可以再次完成或取消；
+     * 只有文件无法解析、已被处理器删除时才结束上传
+     * @param id 上传id
+     * @return 新建的Book，上传不存在时为空
+     * @throws IllegalStateException 还有分片缺失或正在写入、上传正在完成中或已取消
+     */
+    public Optional<Book> complete(String id) throws IOException {
+        UploadSession session = sessions.get(id);
+        if (session == null) {
+            return Optional.empty();
+        }
+        session.touch();
+        //封存后不再接受分片，之前的写入都已结束，可以安全关闭文件
+        session.beginCompletion();
+        try {
+            FileChannel channel = session.getChannel();
+            if (channel.isOpen()) {
+                try {
+                    channel.force(true);
+                } finally {
+                    channel.close();
+                }
+            }
+            Book book = bookService.registerStoredEbook(session.getPath(), session.getOriginalFilename(), session.getCategoryIds());
+            finish(session);
+            return Optional.of(book);
+        } catch (IOException | RuntimeException e) {
+            if (!Files.exists(session.getPath())) {
+                finish(session);
+            }
+            throw e;
+        } finally {
+            session.touch();
+            session.endCompletion();
+        }
+    }
+
+    /**
+     * 取消上传并删除已写入的文件
+     * @return 上传不存在时返回 false
+     * @throws IllegalStateException 上传正在完成中
+     */
+    public boolean abort(String id) {
+        UploadSession session = sessions.get(id);
+        if (session == null) {
+            return false;
+        }
+        if (!session.cancel()) {
+            throw new IllegalStateException("上传正在完成中，不能取消");
+        }
+        if (!sessions.remove(id, session)) {
+            return false;
+        }
+        sessionPermits.release();
+        discard(session);
+        return true;
+    }
+
+    /**
+     * 上传已登记为书籍或文件已不存在，移出会话表并归还名额
+     */
+    private void finish(UploadSession session) {
+        if (sessions.remove(session.getId(), session)) {
+            sessionPermits.release();
+        }
+    }
+
+    //清理长时间没有活动的上传
+    @Scheduled(fixedDelayString = "PT10M")
+    public void cleanupExpired() {
+        long deadline = System.currentTimeMillis() - expireAfter.toMillis();
+        sessions.values().removeIf(session -> {
+            if (session.getLastActivity() < deadline && session.cancelIfIdle()) {
+                log.info("上传{}超时未完成，已清理", session.getId());
+                sessionPermits.release();
+                discard(session);
+                return true;
+            }
+            return false;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        //正在完成的上传文件已交给书籍，不能删除
+        sessions.values().stream().filter(UploadSession::cancel).forEach(this::discard);
+        sessions.clear();
+    }
+
+    private void discard(UploadSession session) {
+        try {
+            session.close();
+            Files.deleteIfExists(session.getPath());
+        } catch (IOException e) {
+            log.warn("清理上传文件失败: {}", session.getPath(), e);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.example.kindle.service.upload;
+
+import lombok.Getter;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * 一次分片上传的状态：文件直接写在最终存储位置，BitSet 记录已校验通过的分片。
+ * 分片开始写入前先清掉它的已收到标记，写入并校验通过后才重新标记，
+ * 重传失败的分片会重新变成缺失而不是带着损坏的内容被当作已收到；
+ * 同一分片不能并发写入，有分片正在写入时不能完成上传。
+ * 第一次完成时封存，之后不再接受分片；登记失败时上传仍然保留，可以再次完成或取消，
+ * 正在完成时不能取消，也不会被超时清理。
+ */
+@Getter
+public class UploadSession {
+    private final String id;
+    private final String originalFilename;
+    private final long length;
+    private final int chunkSize;
+    private final int chunkCount;
+    private final List<Long> categoryIds;
+    private final Path path;
+    private final FileChannel channel;
+    private final BitSet received;
+    private final BitSet writing;
+    private boolean sealed; // 分片已全部到齐并开始完成，不再接受分片
+    private boolean completing; // 正在登记为书籍
+    private boolean cancelled; // 已取消或已清理
+    private volatile long lastActivity = System.currentTimeMillis();
+
+    public UploadSession(String id, String originalFilename, long length, int chunkSize, int chunkCount,
+                         List<Long> categoryIds, Path path, FileChannel channel) {
+        this.id = id;
+        this.originalFilename = originalFilename;
+        this.length = length;
+        this.chunkSize = chunkSize;
+        this.chunkCount = chunkCount;
+        this.categoryIds = List.copyOf(categoryIds);
+        this.path = path;
+        this.channel = channel;
+        this.received = new BitSet(chunkCount);
+        this.writing = new BitSet(chunkCount);
+    }
+
+    /**
+     * 分片总数，length 和 chunkSize 已经过校验，调用方负责检查上限
+     */
+    public static long chunkCountOf(long length, int chunkSize) {
+        return (length + chunkSize - 1) / chunkSize;
+    }
+
+    /**
+     * 第 index 个分片在文件中的起始位置
+     */
+    public long offsetOf(int index) {
+        return (long) index * chunkSize;
+    }
+
+    /**
+     * 第 index 个分片的字节数，最后一个分片可能不足 chunkSize
+     */
+    public long lengthOf(int index) {
+        return Math.min(chunkSize, length - offsetOf(index));
+    }
+
+    public void touch() {
+        lastActivity = System.currentTimeMillis();
+    }
+
+    /**
+     * 开始写入分片，清除该分片的已收到标记
+     * @throws IllegalStateException 上传已关闭或该分片正在被另一个请求写入
+     */
+    public synchronized void beginWrite(int index) {
+        if (sealed || cancelled) {
+            throw new IllegalStateException("上传已完成或已取消，不能再写入分片");
+        }
+        if (writing.get(index)) {
+            throw new IllegalStateException("分片" + index + "正在写入");
+        }
+        writing.set(index);
+        received.clear(index);
+    }
+
+    /**
+     * 结束写入分片
+     * @param verified 长度和校验和都通过时才标记为已收到
+     */
+    public synchronized void endWrite(int index, boolean verified) {
+        writing.clear(index);
+        if (verified) {
+            received.set(index);
+        }
+    }
+
+    /**
+     * 开始完成上传。第一次调用时要求所有分片到齐且没有正在写入的分片，然后封存，之后的写入都会被拒绝；
+     * 之前的完成失败后可以再次调用
+     * @throws IllegalStateException 上传已取消、正在完成中、有分片正在写入或还有缺失的分片
+     */
+    public synchronized void beginCompletion() {
+        if (cancelled) {
+            throw new IllegalStateException("上传已取消");
+        }
+        if (completing) {
+            throw new IllegalStateException("上传正在完成中");
+        }
+        if (!sealed) {
+            if (!writing.isEmpty()) {
+                throw new IllegalStateException("还有分片正在写入: " + writing);
+            }
+            if (received.cardinality() != chunkCount) {
+                throw new IllegalStateException("还有分片未上传: " + missingChunks(100));
+            }
+            sealed = true;
+        }
+        completing = true;
+    }
+
+    public synchronized void endCompletion() {
+        completing = false;
+    }
+
+    /**
+     * 标记为已取消，之后不能再写入或完成
+     * @return 正在完成时返回 false，不取消
+     */
+    public synchronized boolean cancel() {
+        if (completing) {
+            return false;
+        }
+        cancelled = true;
+        return true;
+    }
+
+    /**
+     * 没有正在进行的写入或完成时标记为已取消，用于超时清理
+     */
+    public synchronized boolean cancelIfIdle() {
+        if (completing || !writing.isEmpty()) {
+            return false;
+        }
+        cancelled = true;
+        return true;
+    }
+
+    public synchronized boolean isSealed() {
+        return sealed;
+    }
+
+    public synchronized int receivedCount() {
+        return received.cardinality();
+    }
+
+    public synchronized boolean isComplete() {
+        return received.cardinality() == chunkCount;
+    }
+
+    /**
+     * 从文件开头起连续收到的字节数，对应 tus 的 Upload-Offset
+     */
+    public synchronized long contiguousOffset() {
+        return Math.min(length, offsetOf(received.nextClearBit(0)));
+    }
+
+    public synchronized List<Integer> missingChunks(int limit) {
+        List<Integer> missing = new ArrayList<>();
+        for (int i = received.nextClearBit(0); i < chunkCount && missing.size() < limit; i = received.nextClearBit(i + 1)) {
+            missing.add(i);
+        }
+        return missing;
+    }
+
+    /**
+     * 关闭文件；正在写入的请求会收到 ClosedChannelException
+     */
+    public void close() throws IOException {
+        channel.close();
+    }
+}
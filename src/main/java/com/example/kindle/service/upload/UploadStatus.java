@@ -0,0 +1,24 @@
+package com.example.kindle.service.upload;
+
+import java.util.List;
+
+/**
+ * 分片上传进度
+ * @param id 上传id
+ * @param filename 原始文件名
+ * @param length 文件总字节数
+ * @param chunkSize 分片大小
+ * @param chunkCount 分片总数
+ * @param receivedChunks 已收到的分片数
+ * @param offset 从开头起连续收到的字节数
+ * @param missingChunks 尚未收到的分片序号（最多返回 100 个）
+ */
+public record UploadStatus(String id, String filename, long length, int chunkSize, int chunkCount,
+                           int receivedChunks, long offset, List<Integer> missingChunks) {
+
+    static UploadStatus of(UploadSession session) {
+        return new UploadStatus(session.getId(), session.getOriginalFilename(), session.getLength(),
+                session.getChunkSize(), session.getChunkCount(), session.receivedCount(),
+                session.contiguousOffset(), session.missingChunks(100));
+    }
+}
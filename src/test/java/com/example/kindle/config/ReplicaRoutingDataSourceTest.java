@@ -0,0 +1,152 @@
+package com.example.kindle.config;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 用两个嵌入式 H2 库分别充当主库和从库，每个库的 node 表里写着自己的名字，
+ * 通过查询结果判断连接被路由到了哪里
+ */
+class ReplicaRoutingDataSourceTest {
+
+    private static final long WINDOW_MILLIS = 60_000;
+
+    private DataSource primary;
+    private DataSource replica;
+
+    @BeforeEach
+    void setUp() {
+        primary = database("primary");
+        replica = database("replica");
+    }
+
+    @AfterEach
+    void tearDown() {
+        RoutingContext.clearClientKey();
+    }
+
+    @Test
+    void readOnlyTransactionGoesToReplica() {
+        Routing routing = new Routing(Map.of("replica-1", replica));
+        assertEquals("replica", routing.read());
+    }
+
+    @Test
+    void writeTransactionGoesToPrimary() {
+        Routing routing = new Routing(Map.of("replica-1", replica));
+        assertEquals("primary", routing.write(false));
+    }
+
+    @Test
+    void committedWriteKeepsOnlyThatClientOnPrimary() {
+        Routing routing = new Routing(Map.of("replica-1", replica));
+        RoutingContext.setClientKey("a");
+        routing.write(false);
+        assertEquals("primary", routing.read());
+
+        RoutingContext.setClientKey("b");
+        assertEquals("replica", routing.read());
+    }
+
+    @Test
+    void rolledBackWriteDoesNotPinClient() {
+        Routing routing = new Routing(Map.of("replica-1", replica));
+        RoutingContext.setClientKey("a");
+        routing.write(true);
+        assertEquals("replica", routing.read());
+    }
+
+    @Test
+    void nonTransactionalReadDoesNotCountAsWrite() {
+        Routing routing = new Routing(Map.of("replica-1", replica));
+        assertEquals("primary", routing.jdbc.queryForObject("SELECT name FROM node", String.class));
+        assertEquals("replica", routing.read());
+    }
+
+    @Test
+    void writeMarksExpireAfterWindow() {
+        Routing routing = new Routing(Map.of("replica-1", replica), 0);
+        routing.write(false);
+        routing.dataSource.purgeWriteMarks();
+        assertEquals("replica", routing.read());
+    }
+
+    @Test
+    void primaryHintOverridesReadOnly() {
+        Routing routing = new Routing(Map.of("replica-1", replica));
+        assertEquals("primary", RoutingContext.onPrimary(routing::read));
+        assertEquals("replica", routing.read());
+    }
+
+    @Test
+    void unhealthyReplicaFallsBackToPrimary() throws SQLException {
+        DataSource broken = mock(DataSource.class);
+        when(broken.getConnection()).thenThrow(new SQLException("down"));
+        Routing routing = new Routing(Map.of("replica-1", broken));
+        routing.dataSource.checkReplicas(1);
+
+        assertTrue(routing.dataSource.getHealthyReplicas().isEmpty());
+        assertEquals("primary", routing.read());
+    }
+
+    private static DataSource database(String name) {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + name + "-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute("CREATE TABLE node (name VARCHAR(20))");
+        jdbc.update("INSERT INTO node VALUES (?)", name);
+        return dataSource;
+    }
+
+    private class Routing {
+        final ReplicaRoutingDataSource dataSource;
+        final JdbcTemplate jdbc;
+        final TransactionTemplate readTemplate;
+        final TransactionTemplate writeTemplate;
+
+        Routing(Map<String, DataSource> replicas) {
+            this(replicas, WINDOW_MILLIS);
+        }
+
+        Routing(Map<String, DataSource> replicas, long windowMillis) {
+            dataSource = new ReplicaRoutingDataSource(primary, replicas, windowMillis);
+            dataSource.afterPropertiesSet();
+            DataSource lazy = new LazyConnectionDataSourceProxy(dataSource);
+            jdbc = new JdbcTemplate(lazy);
+            DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(lazy);
+            readTemplate = new TransactionTemplate(transactionManager);
+            readTemplate.setReadOnly(true);
+            writeTemplate = new TransactionTemplate(transactionManager);
+        }
+
+        String read() {
+            return readTemplate.execute(status -> jdbc.queryForObject("SELECT name FROM node", String.class));
+        }
+
+        String write(boolean rollback) {
+            return writeTemplate.execute(status -> {
+                jdbc.update("UPDATE node SET name = name");
+                if (rollback) {
+                    status.setRollbackOnly();
+                }
+                return jdbc.queryForObject("SELECT name FROM node", String.class);
+            });
+        }
+    }
+}
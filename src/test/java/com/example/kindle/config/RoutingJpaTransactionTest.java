@@ -0,0 +1,108 @@
+package com.example.kindle.config;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.config.YamlPropertiesFactoryBean;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 和应用一致使用 JPA + Hibernate 的事务管理器，模拟一个请求里先只读查询再写入：
+ * 没有绑定到请求的 EntityManager 时，每个事务各自取连接，写事务拿到主库连接
+ */
+class RoutingJpaTransactionTest {
+
+    private DataSource primary;
+    private DataSource replica;
+    private LocalContainerEntityManagerFactoryBean factory;
+    private EntityManager entityManager;
+    private TransactionTemplate readTemplate;
+    private TransactionTemplate writeTemplate;
+
+    @BeforeEach
+    void setUp() {
+        primary = database("primary");
+        replica = database("replica");
+        ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(primary, Map.of("replica-1", replica), 60_000);
+        routing.afterPropertiesSet();
+        DataSource lazy = new LazyConnectionDataSourceProxy(routing);
+
+        factory = new LocalContainerEntityManagerFactoryBean();
+        factory.setDataSource(lazy);
+        factory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+        factory.setPackagesToScan(RoutingJpaTransactionTest.class.getPackageName());
+        factory.afterPropertiesSet();
+        EntityManagerFactory entityManagerFactory = factory.getObject();
+        entityManager = SharedEntityManagerCreator.createSharedEntityManager(entityManagerFactory);
+
+        JpaTransactionManager transactionManager = new JpaTransactionManager(entityManagerFactory);
+        readTemplate = new TransactionTemplate(transactionManager);
+        readTemplate.setReadOnly(true);
+        writeTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @AfterEach
+    void tearDown() {
+        RoutingContext.clearClientKey();
+        factory.destroy();
+    }
+
+    @Test
+    void readThenWriteInOneRequestWritesToPrimary() {
+        RoutingContext.setClientKey("a");
+        assertEquals("replica", readTemplate.execute(status -> nodeName()));
+
+        String written = writeTemplate.execute(status -> {
+            entityManager.createNativeQuery("UPDATE node SET hits = hits + 1").executeUpdate();
+            return nodeName();
+        });
+        assertEquals("primary", written);
+        assertEquals(1, hits(primary));
+        assertEquals(0, hits(replica));
+
+        //写入之后同一调用方的读留在主库
+        assertEquals("primary", readTemplate.execute(status -> nodeName()));
+    }
+
+    @Test
+    void applicationDisablesOpenInView() {
+        YamlPropertiesFactoryBean yaml = new YamlPropertiesFactoryBean();
+        yaml.setResources(new ClassPathResource("application.yml"));
+        Properties properties = yaml.getObject();
+        assertEquals("false", properties.getProperty("spring.jpa.open-in-view"));
+    }
+
+    private String nodeName() {
+        return (String) entityManager.createNativeQuery("SELECT name FROM node").getSingleResult();
+    }
+
+    private static int hits(DataSource dataSource) {
+        return new JdbcTemplate(dataSource).queryForObject("SELECT hits FROM node", Integer.class);
+    }
+
+    private static DataSource database(String name) {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + name + "-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute("CREATE TABLE node (name VARCHAR(20), hits INT)");
+        jdbc.update("INSERT INTO node VALUES (?, 0)", name);
+        return dataSource;
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.kindle.loadtest;
+
+import com.example.kindle.service.CategoryService;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * CategoryService 批量操作的耗时：用 JDBC 直接插入所需数量的书籍行（上传流程灌不了百万本），
+ * 新建一个分类后对同一批 id 依次调用 addBooksToCategory 和 removeBooksFromCategory，
+ * 再重新关联这批书，计时删除仍带着全部关联的分类（deleteCategory 分批 DELETE ... LIMIT）
+ */
+class BulkCategoryBenchmark {
+
+    private static final int INSERT_BATCH = 10_000;
+
+    private final CategoryService categoryService;
+    private final JdbcTemplate jdbcTemplate;
+    private final List<Long> bookIds = new ArrayList<>();
+
+    record Result(int books, long addMillis, long removeMillis, long deleteMillis, String added, String removed) {
+    }
+
+    BulkCategoryBenchmark(CategoryService categoryService, JdbcTemplate jdbcTemplate) {
+        this.categoryService = categoryService;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    Result run(int books) {
+        ensureBooks(books);
+        List<Long> ids = bookIds.subList(0, books);
+        String created = categoryService.createCategory("bulk-" + books);
+        Long categoryId = Long.parseLong(created.substring(created.lastIndexOf(':') + 1).trim());
+
+        long start = System.nanoTime();
+        String added = categoryService.addBooksToCategory(categoryId, ids).getBody();
+        long addMillis = (System.nanoTime() - start) / 1_000_000;
+        start = System.nanoTime();
+        String removed = categoryService.removeBooksFromCategory(categoryId, ids).getBody();
+        long removeMillis = (System.nanoTime() - start) / 1_000_000;
+
+        categoryService.addBooksToCategory(categoryId, ids);
+        start = System.nanoTime();
+        if (!categoryService.deleteCategory(categoryId).getStatusCode().is2xxSuccessful()) {
+            throw new IllegalStateException("删除分类失败: " + categoryId);
+        }
+        long deleteMillis = (System.nanoTime() - start) / 1_000_000;
+        Long leftover = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM book_category WHERE category_id = ?",
+                Long.class, categoryId);
+        if (leftover != null && leftover > 0) {
+            throw new IllegalStateException("删除分类后仍有 " + leftover + " 条关联");
+        }
+        return new Result(books, addMillis, removeMillis, deleteMillis, added, removed);
+    }
+
+    //只插入标题，这些书没有文件，不会出现在其他压测请求中
+    private void ensureBooks(int books) {
+        while (bookIds.size() < books) {
+            int batch = Math.min(INSERT_BATCH, books - bookIds.size());
+            Long after = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM book", Long.class);
+            List<Object[]> rows = new ArrayList<>(batch);
+            for (int i = 0; i < batch; i++) {
+                rows.add(new Object[]{"bulk-book-" + (bookIds.size() + i)});
+            }
+            jdbcTemplate.batchUpdate("INSERT INTO book (title) VALUES (?)", rows);
+            bookIds.addAll(jdbcTemplate.queryForList("SELECT id FROM book WHERE id > ? ORDER BY id", Long.class, after));
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.kindle.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 通过 HTTP 接口灌入合成书库：先建分类，再上传 EPUB（/book/up），约五分之一的书走手工上传（/book/upload）带封面图片
+ */
+class LibrarySeeder {
+
+    private static final int CATEGORIES = 8;
+    private static final Pattern UPLOADED_ID = Pattern.compile("id为(\\d+)");
+
+    private final HttpClient client;
+    private final URI base;
+    private final SyntheticLibrary library;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final List<Long> categoryIds = new ArrayList<>();
+    private final List<Long> ebookIds = new ArrayList<>();
+    private final List<String> coverFiles = new ArrayList<>();
+
+    LibrarySeeder(HttpClient client, URI base, SyntheticLibrary library) {
+        this.client = client;
+        this.base = base;
+        this.library = library;
+    }
+
+    void seed(int books) throws IOException, InterruptedException {
+        for (int i = 0; i < CATEGORIES; i++) {
+            String body = send(HttpRequest.newBuilder(base.resolve("/category/create?name=category-" + i))
+                    .POST(HttpRequest.BodyPublishers.noBody()).build());
+            categoryIds.add(Long.parseLong(body.substring(body.lastIndexOf(':') + 1).trim()));
+        }
+        for (int i = 0; i < books; i++) {
+            String title = library.title(i);
+            String author = library.author();
+            Long categoryId = categoryIds.get(i % CATEGORIES);
+            if (i % 5 == 4) {
+                uploadWithCover(title, author, categoryId);
+            } else {
+                Multipart form = new Multipart()
+                        .file("ebook", "book-" + i + ".epub", "application/epub+zip", library.epub(title, author, 3, 5))
+                        .field("categoryId", String.valueOf(categoryId));
+                JsonNode book = mapper.readTree(send(post("/book/up", form)));
+                ebookIds.add(book.get("id").asLong());
+            }
+        }
+    }
+
+    private void uploadWithCover(String title, String author, Long categoryId) throws IOException, InterruptedException {
+        Multipart form = new Multipart()
+                .field("title", title)
+                .field("author", author)
+                .file("cover", "cover.jpg", "image/jpeg", library.cover(title))
+                .field("categoryId", String.valueOf(categoryId));
+        Matcher matcher = UPLOADED_ID.matcher(send(post("/book/upload", form)));
+        if (!matcher.find()) {
+            throw new IllegalStateException("无法解析上传结果中的书籍id");
+        }
+        JsonNode book = mapper.readTree(send(HttpRequest.newBuilder(base.resolve("/book/" + matcher.group(1))).GET().build()));
+        // /book/image/{filename} 只按文件名在上传目录下查找
+        coverFiles.add(Paths.get(book.get("coverPath").asText()).getFileName().toString());
+    }
+
+    private HttpRequest post(String path, Multipart form) {
+        return HttpRequest.newBuilder(base.resolve(path))
+                .header("Content-Type", form.contentType())
+                .POST(form.publisher())
+                .build();
+    }
+
+    private String send(HttpRequest request) throws IOException, InterruptedException {
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() / 100 != 2) {
+            throw new IllegalStateException(request.method() + " " + request.uri() + " 返回 " + response.statusCode() + ": " + response.body());
+        }
+        return response.body();
+    }
+
+    List<Long> getCategoryIds() {
+        return categoryIds;
+    }
+
+    List<Long> getEbookIds() {
+        return ebookIds;
+    }
+
+    List<String> getCoverFiles() {
+        return coverFiles;
+    }
+}
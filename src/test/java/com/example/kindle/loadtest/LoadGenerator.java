@@ -0,0 +1,192 @@
+package com.example.kindle.loadtest;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 开放模型的负载生成器：请求按泊松过程到达，不等待上一个请求返回，
+ * 延迟从计划发出的时刻算起，服务变慢时排队时间也会计入，避免协调遗漏
+ */
+class LoadGenerator {
+
+    private static final String KINDLE_EMAIL = "reader@kindle.com";
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    private final HttpClient client;
+    private final URI base;
+    private final LoadTestConfig config;
+    private final LibrarySeeder seeder;
+    private final List<byte[]> uploadPool;
+    private final Random random;
+    private final String[] ops;
+    private final int[] cumulativeWeights;
+
+    LoadGenerator(HttpClient client, URI base, LoadTestConfig config, LibrarySeeder seeder, List<byte[]> uploadPool) {
+        this.client = client;
+        this.base = base;
+        this.config = config;
+        this.seeder = seeder;
+        this.uploadPool = uploadPool;
+        this.random = new Random(config.seed());
+        this.ops = config.mix().keySet().toArray(String[]::new);
+        this.cumulativeWeights = new int[ops.length];
+        int sum = 0;
+        for (int i = 0; i < ops.length; i++) {
+            sum += config.mix().get(ops[i]);
+            cumulativeWeights[i] = sum;
+        }
+    }
+
+    /**
+     * 以配置的到达率持续发请求
+     * @param duration 持续时间
+     * @param record 是否记录结果，预热阶段不记录
+     * @return 各类请求的统计
+     */
+    Map<String, OpStats> run(Duration duration, boolean record) throws InterruptedException {
+        Map<String, OpStats> stats = new LinkedHashMap<>();
+        for (String op : ops) {
+            stats.put(op, new OpStats());
+        }
+        Semaphore inFlight = new Semaphore(config.maxInFlight());
+        List<CompletableFuture<?>> pending = new ArrayList<>();
+        double meanIntervalNanos = TimeUnit.SECONDS.toNanos(1) / config.rate();
+        long start = System.nanoTime();
+        long end = start + duration.toNanos();
+        long intended = start;
+        while (true) {
+            intended += (long) (-Math.log(1 - random.nextDouble()) * meanIntervalNanos);
+            if (intended >= end) {
+                break;
+            }
+            long wait = intended - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            String op = pickOp();
+            OpStats opStats = stats.get(op);
+            if (!inFlight.tryAcquire()) {
+                // 并发上限已满，说明服务已经跟不上，直接算作失败
+                if (record) {
+                    opStats.dropped.increment();
+                }
+                continue;
+            }
+            long scheduledAt = intended;
+            CompletableFuture<?> future = client.sendAsync(request(op), HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, error) -> {
+                        inFlight.release();
+                        if (!record) {
+                            return;
+                        }
+                        opStats.latency.record((System.nanoTime() - scheduledAt) / 1000);
+                        if (error != null || response.statusCode() / 100 != 2) {
+                            opStats.errors.increment();
+                        }
+                    });
+            pending.add(future);
+            if (pending.size() > 10_000) {
+                pending.removeIf(CompletableFuture::isDone);
+            }
+        }
+        try {
+            CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new)).get(REQUEST_TIMEOUT.toSeconds(), TimeUnit.SECONDS);
+        } catch (Exception ignored) {
+            // 失败已在各自回调中计数
+        }
+        long elapsed = System.nanoTime() - start;
+        stats.values().forEach(s -> s.elapsedNanos = elapsed);
+        return stats;
+    }
+
+    private String pickOp() {
+        int r = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (r < cumulativeWeights[i]) {
+                return ops[i];
+            }
+        }
+        return ops[ops.length - 1];
+    }
+
+    private HttpRequest request(String op) {
+        HttpRequest.Builder builder = switch (op) {
+            case "page" -> get("/book/page?page=" + random.nextInt(Math.max(1, seeder.getEbookIds().size() / 10)) + "&size=10");
+            case "search" -> get("/book/search?keyword=" + URLEncoder.encode(
+                    SyntheticLibrary.WORDS.get(random.nextInt(SyntheticLibrary.WORDS.size())), StandardCharsets.UTF_8));
+            case "image" -> get("/book/image/" + pick(seeder.getCoverFiles()));
+            case "up" -> {
+                Multipart form = new Multipart()
+                        .file("ebook", "load.epub", "application/epub+zip", pick(uploadPool))
+                        .field("categoryId", String.valueOf(pick(seeder.getCategoryIds())));
+                yield HttpRequest.newBuilder(base.resolve("/book/up"))
+                        .header("Content-Type", form.contentType())
+                        .POST(form.publisher());
+            }
+            case "kindle" -> HttpRequest.newBuilder(base.resolve("/book/send-to-kindle/" + pick(seeder.getEbookIds())
+                            + "?kindleEmail=" + URLEncoder.encode(KINDLE_EMAIL, StandardCharsets.UTF_8)))
+                    .POST(HttpRequest.BodyPublishers.noBody());
+            default -> throw new IllegalArgumentException("未知的请求类型: " + op);
+        };
+        return builder.timeout(REQUEST_TIMEOUT).build();
+    }
+
+    private HttpRequest.Builder get(String path) {
+        return HttpRequest.newBuilder(base.resolve(path)).GET();
+    }
+
+    private <T> T pick(List<T> values) {
+        return values.get(random.nextInt(values.size()));
+    }
+
+    /**
+     * 单类请求的统计
+     */
+    static class OpStats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder errors = new LongAdder();
+        final LongAdder dropped = new LongAdder();
+        long elapsedNanos;
+
+        long requests() {
+            return latency.count() + dropped.sum();
+        }
+
+        double throughput() {
+            return elapsedNanos == 0 ? 0 : latency.count() * 1e9 / elapsedNanos;
+        }
+
+        double errorRate() {
+            long total = requests();
+            return total == 0 ? 0 : (double) (errors.sum() + dropped.sum()) / total;
+        }
+    }
+
+    /**
+     * 预先生成一批用于上传请求的 EPUB，压测期间不再占用生成开销
+     */
+    static List<byte[]> uploadPool(SyntheticLibrary library, int size) throws IOException {
+        List<byte[]> pool = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            String title = library.title(100_000 + i);
+            pool.add(library.epub(title, library.author(), 3, 5));
+        }
+        return pool;
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.kindle.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 压测报告：各类请求的吞吐、延迟分位和错误率，并与提交在仓库里的基线比较
+ */
+class LoadReport {
+
+    // 错误率允许比基线高出的绝对值
+    private static final double ERROR_RATE_SLACK = 0.01;
+
+    private final ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+    private final ObjectNode root;
+
+    LoadReport(LoadTestConfig config, Map<String, LoadGenerator.OpStats> stats, long mailsReceived) {
+        root = mapper.createObjectNode();
+        root.put("books", config.books());
+        root.put("rate", config.rate());
+        root.put("durationSeconds", config.duration().toSeconds());
+        root.put("mailsReceived", mailsReceived);
+        ObjectNode ops = root.putObject("ops");
+        stats.forEach((op, s) -> {
+            ObjectNode node = ops.putObject(op);
+            node.put("requests", s.requests());
+            node.put("throughput", round(s.throughput()));
+            node.put("errorRate", round(s.errorRate()));
+            node.put("meanMillis", round(s.latency.meanMillis()));
+            node.put("p50Millis", round(s.latency.percentileMillis(50)));
+            node.put("p90Millis", round(s.latency.percentileMillis(90)));
+            node.put("p99Millis", round(s.latency.percentileMillis(99)));
+            node.put("maxMillis", round(s.latency.maxMillis()));
+        });
+    }
+
+    /**
+     * 批量分类耗时只记录不比较，数值主要取决于数据库
+     */
+    void addBulk(List<BulkCategoryBenchmark.Result> results) {
+        ArrayNode bulk = root.putArray("categoryBulk");
+        for (BulkCategoryBenchmark.Result result : results) {
+            ObjectNode node = bulk.addObject();
+            node.put("books", result.books());
+            node.put("addMillis", result.addMillis());
+            node.put("removeMillis", result.removeMillis());
+            node.put("deleteMillis", result.deleteMillis());
+        }
+    }
+
+    String summary() {
+        StringBuilder out = new StringBuilder(String.format("%-8s %8s %10s %8s %10s %10s %10s %10s%n",
+                "op", "requests", "req/s", "errors", "p50(ms)", "p90(ms)", "p99(ms)", "max(ms)"));
+        root.get("ops").fields().forEachRemaining(e -> {
+            JsonNode n = e.getValue();
+            out.append(String.format("%-8s %8d %10.2f %7.2f%% %10.2f %10.2f %10.2f %10.2f%n", e.getKey(),
+                    n.get("requests").asLong(), n.get("throughput").asDouble(), n.get("errorRate").asDouble() * 100,
+                    n.get("p50Millis").asDouble(), n.get("p90Millis").asDouble(), n.get("p99Millis").asDouble(),
+                    n.get("maxMillis").asDouble()));
+        });
+        return out.toString();
+    }
+
+    void write(Path path) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        mapper.writeValue(path.toFile(), root);
+    }
+
+    /**
+     * 与基线比较，p99 变慢或吞吐下降超过容忍比例、错误率明显升高都算退化
+     * @return 退化项描述，为空表示通过
+     */
+    List<String> compare(Path baselinePath, double tolerance) throws IOException {
+        List<String> regressions = new ArrayList<>();
+        JsonNode baseline = mapper.readTree(baselinePath.toFile());
+        JsonNode baselineOps = baseline.path("ops");
+        // 吞吐取决于到达率，到达率不同时只比较延迟和错误率
+        boolean sameRate = baseline.path("rate").asDouble() == root.get("rate").asDouble();
+        Iterator<Map.Entry<String, JsonNode>> fields = root.get("ops").fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> entry = fields.next();
+            JsonNode expected = baselineOps.get(entry.getKey());
+            if (expected == null) {
+                continue;
+            }
+            JsonNode actual = entry.getValue();
+            double p99 = actual.get("p99Millis").asDouble();
+            double baselineP99 = expected.path("p99Millis").asDouble(Double.MAX_VALUE);
+            if (p99 > baselineP99 * (1 + tolerance)) {
+                regressions.add(String.format("%s p99 %.2fms 超过基线 %.2fms", entry.getKey(), p99, baselineP99));
+            }
+            double throughput = actual.get("throughput").asDouble();
+            double baselineThroughput = expected.path("throughput").asDouble(0);
+            if (sameRate && throughput < baselineThroughput * (1 - tolerance)) {
+                regressions.add(String.format("%s 吞吐 %.2f/s 低于基线 %.2f/s", entry.getKey(), throughput, baselineThroughput));
+            }
+            double errorRate = actual.get("errorRate").asDouble();
+            double baselineErrorRate = expected.path("errorRate").asDouble(0);
+            if (errorRate > baselineErrorRate + ERROR_RATE_SLACK) {
+                regressions.add(String.format("%s 错误率 %.2f%% 高于基线 %.2f%%", entry.getKey(), errorRate * 100, baselineErrorRate * 100));
+            }
+        }
+        return regressions;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.kindle.loadtest;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 压测参数，全部通过 -Dloadtest.xxx 系统属性覆盖。
+ * 批量分类默认只测 1000 和 10 万本，百万规模耗时和内存都大，需显式指定
+ * -Dloadtest.bulk-sizes=1000,100000,1000000
+ */
+record LoadTestConfig(int books,
+                      double rate,
+                      Duration warmup,
+                      Duration duration,
+                      Map<String, Integer> mix,
+                      int maxInFlight,
+                      Path baseline,
+                      Path report,
+                      double tolerance,
+                      boolean writeBaseline,
+                      long seed,
+                      List<Integer> bulkSizes) {
+
+    static LoadTestConfig fromSystemProperties() {
+        return new LoadTestConfig(
+                Integer.getInteger("loadtest.books", 200),
+                Double.parseDouble(System.getProperty("loadtest.rate", "50")),
+                Duration.parse(System.getProperty("loadtest.warmup", "PT10S")),
+                Duration.parse(System.getProperty("loadtest.duration", "PT60S")),
+                parseMix(System.getProperty("loadtest.mix", "page=40,search=25,image=20,up=5,kindle=10")),
+                Integer.getInteger("loadtest.max-in-flight", 2000),
+                Paths.get(System.getProperty("loadtest.baseline", "src/test/resources/loadtest-baseline.json")),
+                Paths.get(System.getProperty("loadtest.report", "target/loadtest-report.json")),
+                Double.parseDouble(System.getProperty("loadtest.tolerance", "0.25")),
+                Boolean.getBoolean("loadtest.write-baseline"),
+                Long.getLong("loadtest.seed", 42L),
+                parseSizes(System.getProperty("loadtest.bulk-sizes", "1000,100000")));
+    }
+
+    /**
+     * 解析 "1000,100000" 形式的批量分类规模，为空表示不测
+     */
+    static List<Integer> parseSizes(String value) {
+        List<Integer> sizes = new ArrayList<>();
+        for (String part : value.split(",")) {
+            if (!part.isBlank()) {
+                sizes.add(Integer.parseInt(part.trim()));
+            }
+        }
+        return sizes;
+    }
+
+    /**
+     * 解析 "page=40,search=25" 形式的请求权重
+     */
+    static Map<String, Integer> parseMix(String value) {
+        Map<String, Integer> mix = new LinkedHashMap<>();
+        for (String part : value.split(",")) {
+            String[] kv = part.trim().split("=");
+            if (kv.length != 2) {
+                throw new IllegalArgumentException("loadtest.mix 格式错误: " + value);
+            }
+            int weight = Integer.parseInt(kv[1].trim());
+            if (weight > 0) {
+                mix.put(kv[0].trim(), weight);
+            }
+        }
+        return mix;
+    }
+}
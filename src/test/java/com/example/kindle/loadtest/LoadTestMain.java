@@ -0,0 +1,126 @@
+package com.example.kindle.loadtest;
+
+import com.example.kindle.KindleApplication;
+import com.example.kindle.service.CategoryService;
+import com.example.kindle.service.archive.ArchiveSummary;
+import com.example.kindle.service.archive.LibraryArchiveService;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+/**
+ * 压测入口：在内嵌 H2（MySQL 兼容模式）和本地假 SMTP 上启动应用，灌入合成书库，
+ * 预热后按开放模型回放混合流量，输出报告并与基线比较，退化或没有基线时以异常结束使构建失败。
+ * 基线必须在固定的参考机器上实测生成后提交。
+ * 之后按 loadtest.bulk-sizes 测量分类批量添加/移除、删除带关联的分类的耗时，只记录不比较；
+ * 默认不含百万规模，需要时加 -Dloadtest.bulk-sizes=1000,100000,1000000。
+ * <p>
+ * 运行：mvn -Ploadtest verify [-Dloadtest.rate=100 -Dloadtest.duration=PT5M ...]
+ * <br>
+ * 生成基线：mvn -Ploadtest verify -Dloadtest.write-baseline=true
+ */
+public class LoadTestMain {
+
+    public static void main(String[] args) throws Exception {
+        LoadTestConfig config = LoadTestConfig.fromSystemProperties();
+        Path workDir = Files.createTempDirectory("kindle-loadtest");
+        ExecutorService clientExecutor = Executors.newCachedThreadPool();
+        try (FakeSmtpServer smtp = new FakeSmtpServer();
+             ConfigurableApplicationContext context = start(workDir, smtp.getPort())) {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            URI base = URI.create("http://localhost:" + port);
+            HttpClient client = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(Duration.ofSeconds(5))
+                    .executor(clientExecutor)
+                    .build();
+
+            SyntheticLibrary library = new SyntheticLibrary(config.seed());
+            LibrarySeeder seeder = new LibrarySeeder(client, base, library);
+            System.out.println("灌入 " + config.books() + " 本书...");
+            seeder.seed(config.books());
+            List<byte[]> uploadPool = LoadGenerator.uploadPool(library, 20);
+
+            LoadGenerator generator = new LoadGenerator(client, base, config, seeder, uploadPool);
+            System.out.println("预热 " + config.warmup() + "...");
+            generator.run(config.warmup(), false);
+            long mailsBefore = smtp.getMessageCount();
+            System.out.println("压测 " + config.duration() + "，到达率 " + config.rate() + "/s，混合 " + config.mix());
+            Map<String, LoadGenerator.OpStats> stats = generator.run(config.duration(), true);
+
+            LoadReport report = new LoadReport(config, stats, smtp.getMessageCount() - mailsBefore);
+            System.out.print(report.summary());
+            //整库导出吞吐只输出不比较，数值取决于书库大小和核数
+            ArchiveSummary export = context.getBean(LibraryArchiveService.class).export(OutputStream.nullOutputStream());
+            System.out.printf("整库导出: %d本书, 原始%dMB, 压缩后%dMB, 耗时%dms, %.2f GB/min%n", export.books(),
+                    export.bytes() >> 20, export.compressedBytes() >> 20, export.millis(), export.gigabytesPerMinute());
+            List<BulkCategoryBenchmark.Result> bulk = new ArrayList<>();
+            BulkCategoryBenchmark benchmark = new BulkCategoryBenchmark(context.getBean(CategoryService.class),
+                    context.getBean(JdbcTemplate.class));
+            for (int books : config.bulkSizes()) {
+                BulkCategoryBenchmark.Result result = benchmark.run(books);
+                System.out.printf("批量分类 %d本: 添加%dms (%s), 移除%dms (%s), 删除分类%dms%n", books, result.addMillis(),
+                        result.added(), result.removeMillis(), result.removed(), result.deleteMillis());
+                bulk.add(result);
+            }
+            report.addBulk(bulk);
+            report.write(config.report());
+            System.out.println("报告已写入 " + config.report().toAbsolutePath());
+
+            if (config.writeBaseline()) {
+                report.write(config.baseline());
+                System.out.println("基线已更新 " + config.baseline().toAbsolutePath());
+            } else {
+                //没有基线时不能静默通过，否则门禁形同虚设
+                if (!Files.exists(config.baseline())) {
+                    throw new IllegalStateException("没有基线 " + config.baseline().toAbsolutePath()
+                            + "，请在参考机器上用 -Dloadtest.write-baseline=true 生成并提交");
+                }
+                List<String> regressions = report.compare(config.baseline(), config.tolerance());
+                if (!regressions.isEmpty()) {
+                    throw new IllegalStateException("性能相对基线退化:\n" + String.join("\n", regressions));
+                }
+                System.out.println("与基线比较通过");
+            }
+        } finally {
+            clientExecutor.shutdownNow();
+            deleteRecursively(workDir);
+        }
+    }
+
+    private static ConfigurableApplicationContext start(Path workDir, int smtpPort) {
+        return new SpringApplicationBuilder(KindleApplication.class)
+                .profiles("loadtest")
+                .properties(Map.of(
+                        "server.port", "0",
+                        "file.upload-dir", workDir + "/",
+                        "file.ebook-dir", workDir.resolve("ebook") + "/",
+                        "file.cover-dir", workDir.resolve("cover") + "/",
+                        "spring.mail.host", "localhost",
+                        "spring.mail.port", String.valueOf(smtpPort)))
+                .run();
+    }
+
+    private static void deleteRecursively(Path dir) {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (Exception ignored) {
+            // 临时目录，删不掉也无妨
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.kindle.loadtest;
+
+import nl.siegmann.epublib.domain.Author;
+import nl.siegmann.epublib.domain.Book;
+import nl.siegmann.epublib.domain.Resource;
+import nl.siegmann.epublib.epub.EpubWriter;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 生成合成书库用的 EPUB 文件和封面图片，同一 seed 结果可复现。
+ * 标题取自固定词表，便于搜索命中；正文取自随机生成的大词表，避免所有书内容雷同、全部落进同一个去重桶
+ */
+class SyntheticLibrary {
+
+    static final List<String> WORDS = List.of(
+            "river", "mountain", "shadow", "garden", "winter", "letter", "empire", "machine", "ocean", "silence",
+            "journey", "mirror", "harbor", "lantern", "forest", "clock", "island", "storm", "memory", "kingdom",
+            "长河", "山海", "时间", "故事", "江湖", "星辰", "城市", "少年", "远方", "月光");
+
+    private static final int VOCABULARY_SIZE = 5000;
+
+    private final Random random;
+    private final List<String> vocabulary = new ArrayList<>(VOCABULARY_SIZE);
+
+    SyntheticLibrary(long seed) {
+        this.random = new Random(seed);
+        for (int i = 0; i < VOCABULARY_SIZE; i++) {
+            char[] word = new char[3 + random.nextInt(7)];
+            for (int j = 0; j < word.length; j++) {
+                word[j] = (char) ('a' + random.nextInt(26));
+            }
+            vocabulary.add(new String(word));
+        }
+    }
+
+    String randomWord() {
+        return WORDS.get(random.nextInt(WORDS.size()));
+    }
+
+    String title(int index) {
+        return randomWord() + " " + randomWord() + " " + index;
+    }
+
+    String author() {
+        return "Author " + (char) ('A' + random.nextInt(26)) + random.nextInt(500);
+    }
+
+    /**
+     * 生成一本 EPUB
+     * @param title 标题
+     * @param author 作者
+     * @param chapters 章节数
+     * @param paragraphs 每章段落数
+     */
+    byte[] epub(String title, String author, int chapters, int paragraphs) throws IOException {
+        Book book = new Book();
+        book.getMetadata().addTitle(title);
+        String[] names = author.split(" ", 2);
+        book.getMetadata().addAuthor(new Author(names[0], names.length > 1 ? names[1] : ""));
+        book.setCoverImage(new Resource(cover(title), "cover.jpg"));
+        for (int c = 1; c <= chapters; c++) {
+            StringBuilder html = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>")
+                    .append("<html xmlns=\"http://www.w3.org/1999/xhtml\"><head><title>Chapter ").append(c)
+                    .append("</title></head><body><h1>Chapter ").append(c).append("</h1>");
+            for (int p = 0; p < paragraphs; p++) {
+                html.append("<p>");
+                for (int w = 0; w < 60; w++) {
+                    html.append(vocabulary.get(random.nextInt(VOCABULARY_SIZE))).append(' ');
+                }
+                html.append("</p>");
+            }
+            html.append("</body></html>");
+            book.addSection("Chapter " + c, new Resource(html.toString().getBytes(StandardCharsets.UTF_8), "chapter" + c + ".xhtml"));
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new EpubWriter().write(book, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * 生成一张带渐变和标题的 JPEG 封面
+     */
+    byte[] cover(String title) throws IOException {
+        BufferedImage image = new BufferedImage(300, 450, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        Color top = new Color(random.nextInt(256), random.nextInt(256), random.nextInt(256));
+        Color bottom = new Color(random.nextInt(256), random.nextInt(256), random.nextInt(256));
+        g.setPaint(new GradientPaint(0, 0, top, 0, 450, bottom));
+        g.fillRect(0, 0, 300, 450);
+        g.setColor(Color.WHITE);
+        g.setFont(new Font(Font.SANS_SERIF, Font.BOLD, 22));
+        g.drawString(title, 20, 220);
+        g.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", out);
+        return out.toByteArray();
+    }
+}
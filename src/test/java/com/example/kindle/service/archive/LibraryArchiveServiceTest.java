@@ -0,0 +1,279 @@
+package com.example.kindle.service.archive;
+
+import com.example.kindle.entity.Book;
+import com.example.kindle.entity.Category;
+import com.example.kindle.repository.BookRepository;
+import com.example.kindle.repository.CategoryRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 在压测用的 H2（MySQL 兼容模式）上导出再恢复：恢复结果与源书库一致；
+ * 归档缺少 summary.json 或与摘要不符时回滚，书库和文件目录回到空的状态
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("loadtest")
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class LibraryArchiveServiceTest {
+
+    @Autowired
+    private BookRepository bookRepository;
+    @Autowired
+    private CategoryRepository categoryRepository;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private DataSource dataSource;
+
+    @TempDir
+    Path dir;
+
+    private LibraryArchiveService service;
+    private JdbcTemplate jdbc;
+    private TransactionTemplate writeTemplate;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        jdbc = new JdbcTemplate(dataSource);
+        writeTemplate = new TransactionTemplate(transactionManager);
+        service = new LibraryArchiveService(bookRepository, categoryRepository, objectMapper, entityManagerFactory,
+                transactionManager, 2, Duration.ofMinutes(1));
+        //分块小于书籍数，覆盖多个清单分块
+        ReflectionTestUtils.setField(service, "chunkSize", 2);
+        ReflectionTestUtils.setField(service, "compressionLevel", 6);
+        ReflectionTestUtils.setField(service, "blockSize", DataSize.ofKilobytes(64));
+        ReflectionTestUtils.setField(service, "importThreads", 2);
+        useDirectories("source");
+        seed();
+    }
+
+    @AfterEach
+    void tearDown() {
+        clear();
+        service.shutdown();
+    }
+
+    @Test
+    void restoreMatchesSourceLibrary() throws IOException {
+        List<String> source = library();
+        byte[] archive = export();
+        clear();
+
+        useDirectories("restored");
+        ArchiveSummary summary = service.importArchive(new ByteArrayInputStream(archive));
+
+        assertEquals(3, summary.categories());
+        assertEquals(5, summary.books());
+        assertEquals(9, summary.files());
+        assertEquals(0, summary.missingFiles());
+        assertEquals(source, library());
+        //文件恢复到新目录，不再引用源目录
+        assertEquals(0, (int) jdbc.queryForObject(
+                "SELECT COUNT(*) FROM book WHERE file_path LIKE ?", Integer.class, dir.resolve("source") + "%"));
+    }
+
+    @Test
+    void missingSummaryRollsBack() throws IOException {
+        byte[] archive = rewrite(export(), (name, content) -> name.endsWith("summary.json") ? null : content);
+        clear();
+
+        useDirectories("restored");
+        IOException e = assertThrows(IOException.class, () -> service.importArchive(new ByteArrayInputStream(archive)));
+        assertTrue(e.getMessage().contains("summary.json"), e.getMessage());
+        assertRolledBack();
+    }
+
+    @Test
+    void summaryMismatchRollsBack() throws IOException {
+        byte[] archive = rewrite(export(), (name, content) -> {
+            if (!name.endsWith("summary.json")) {
+                return content;
+            }
+            ArchiveSummary summary = objectMapper.readValue(content, ArchiveSummary.class);
+            return objectMapper.writeValueAsBytes(new ArchiveSummary(summary.categories(), summary.books() + 1,
+                    summary.files(), summary.missingFiles(), summary.bytes(), summary.compressedBytes(), summary.millis()));
+        });
+        clear();
+
+        useDirectories("restored");
+        IOException e = assertThrows(IOException.class, () -> service.importArchive(new ByteArrayInputStream(archive)));
+        assertTrue(e.getMessage().contains("摘要不符"), e.getMessage());
+        assertRolledBack();
+    }
+
+    @Test
+    void refusesNonEmptyLibrary() throws IOException {
+        byte[] archive = export();
+        assertThrows(IllegalStateException.class, () -> service.importArchive(new ByteArrayInputStream(archive)));
+    }
+
+    private void assertRolledBack() throws IOException {
+        assertEquals(0, (int) jdbc.queryForObject("SELECT COUNT(*) FROM book_category", Integer.class));
+        assertEquals(0, bookRepository.count());
+        assertEquals(0, categoryRepository.count());
+        try (Stream<Path> files = Files.walk(dir.resolve("restored"))) {
+            assertEquals(List.of(), files.filter(Files::isRegularFile).toList());
+        }
+    }
+
+    /**
+     * 三个分类、五本书：一本没有分类，一本的封面是不存在的默认路径，一本标记为重复
+     */
+    private void seed() throws IOException {
+        List<Category> categories = new ArrayList<>();
+        for (String name : List.of("小说", "历史", "科幻")) {
+            Category category = new Category();
+            category.setName(name);
+            categories.add(category);
+        }
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Book book = new Book();
+            book.setTitle("书" + i);
+            book.setAuthor("作者" + i % 2);
+            book.setOriginalFilename("book-" + i + ".epub");
+            book.setFilePath(write("source/ebook/book-" + i + ".epub", "正文" + i).toString());
+            if (i == 4) {
+                book.setCoverPath("/images/default-cover.png");
+            } else {
+                book.setCoverPath(write("source/cover/cover-" + i + ".jpg", "封面" + i).toString());
+                book.setCoverColor("#10203" + i);
+                book.setCoverBlurHash("LEHV6nWB2yk8pyo0adR*.7kCMdnj" + i);
+            }
+            book.setContentSignature(new byte[]{(byte) i, 1, 2, 3});
+            books.add(book);
+        }
+        writeTemplate.executeWithoutResult(status -> {
+            categoryRepository.saveAll(categories);
+            books.get(0).setCategories(Set.of(categories.get(0), categories.get(1)));
+            books.get(1).setCategories(Set.of(categories.get(2)));
+            books.get(3).setCategories(Set.of(categories.get(0)));
+            books.get(4).setCategories(Set.of(categories.get(1), categories.get(2)));
+            bookRepository.saveAll(books);
+        });
+        writeTemplate.executeWithoutResult(status -> {
+            Book duplicate = bookRepository.findById(books.get(3).getId()).orElseThrow();
+            duplicate.setDuplicateOf(books.get(0).getId());
+            bookRepository.save(duplicate);
+        });
+    }
+
+    /**
+     * 书库内容：分类、书籍元数据、分类关联和文件内容，文件以内容代替路径比较
+     */
+    private List<String> library() {
+        List<String> rows = new ArrayList<>();
+        rows.addAll(jdbc.query("SELECT id, name FROM category ORDER BY id",
+                (rs, i) -> "category " + rs.getLong("id") + " " + rs.getString("name")));
+        rows.addAll(jdbc.query("SELECT * FROM book ORDER BY id", (rs, i) -> String.join(" | ", "book " + rs.getLong("id"),
+                rs.getString("title"), rs.getString("author"), rs.getString("original_filename"),
+                rs.getString("cover_color"), rs.getString("cover_blur_hash"),
+                Arrays.toString(rs.getBytes("content_signature")), String.valueOf(rs.getObject("duplicate_of")),
+                content(rs.getString("file_path")), content(rs.getString("cover_path")))));
+        rows.addAll(jdbc.query("SELECT book_id, category_id FROM book_category ORDER BY book_id, category_id",
+                (rs, i) -> "link " + rs.getLong("book_id") + " " + rs.getLong("category_id")));
+        return rows;
+    }
+
+    private static String content(String path) {
+        if (path == null) {
+            return "null";
+        }
+        Path file = Paths.get(path);
+        try {
+            return Files.isRegularFile(file) ? Base64.getEncoder().encodeToString(Files.readAllBytes(file)) : "path " + path;
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private byte[] export() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ArchiveSummary summary = service.export(out);
+        assertEquals(5, summary.books());
+        return out.toByteArray();
+    }
+
+    /**
+     * 解开归档，逐个条目改写后重新打包，返回 null 表示去掉该条目
+     */
+    private static byte[] rewrite(byte[] archive, EntryRewriter rewriter) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (TarReader reader = new TarReader(new GZIPInputStream(new ByteArrayInputStream(archive)));
+             GZIPOutputStream gzip = new GZIPOutputStream(out);
+             TarWriter writer = new TarWriter(gzip)) {
+            for (TarReader.Entry entry = reader.next(); entry != null; entry = reader.next()) {
+                byte[] content = rewriter.rewrite(entry.name(), reader.readCurrent());
+                if (content != null) {
+                    writer.write(entry.name(), content, 0);
+                }
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private void useDirectories(String name) {
+        ReflectionTestUtils.setField(service, "ebookDir", dir.resolve(name).resolve("ebook").toString());
+        ReflectionTestUtils.setField(service, "coverDir", dir.resolve(name).resolve("cover").toString());
+    }
+
+    private Path write(String relative, String text) throws IOException {
+        Path file = dir.resolve(relative);
+        Files.createDirectories(file.getParent());
+        return Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void clear() {
+        jdbc.update("DELETE FROM book_category");
+        jdbc.update("DELETE FROM book");
+        jdbc.update("DELETE FROM category");
+    }
+
+    @FunctionalInterface
+    private interface EntryRewriter {
+        byte[] rewrite(String name, byte[] content) throws IOException;
+    }
+}
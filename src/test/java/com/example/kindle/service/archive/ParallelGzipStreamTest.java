@@ -0,0 +1,108 @@
+package com.example.kindle.service.archive;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParallelGzipStreamTest {
+
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 可压缩的文本和不可压缩的随机数据交替，长度不是块大小的整数倍
+     */
+    private static byte[] sample() {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        Random random = new Random(11);
+        for (int i = 0; i < 5; i++) {
+            byte[] text = ("第" + i + "章 The quick brown fox jumps over the lazy dog.\n").repeat(3000)
+                    .getBytes(StandardCharsets.UTF_8);
+            data.writeBytes(text);
+            byte[] noise = new byte[BLOCK_SIZE + 123];
+            random.nextBytes(noise);
+            data.writeBytes(noise);
+        }
+        return data.toByteArray();
+    }
+
+    private byte[] compress(byte[] data, int chunk) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ParallelGzipOutputStream gzip = new ParallelGzipOutputStream(out, executor, 6, BLOCK_SIZE, 3)) {
+            for (int off = 0; off < data.length; off += chunk) {
+                gzip.write(data, off, Math.min(chunk, data.length - off));
+            }
+            gzip.flush();
+            assertEquals(out.size(), gzip.getCompressedBytes());
+        }
+        return out.toByteArray();
+    }
+
+    private byte[] decompress(byte[] compressed) throws IOException {
+        try (ParallelGzipInputStream in = new ParallelGzipInputStream(new ByteArrayInputStream(compressed), executor, 3)) {
+            return in.readAllBytes();
+        }
+    }
+
+    @Test
+    void roundTrips() throws IOException {
+        byte[] data = sample();
+        byte[] compressed = compress(data, 10_000);
+        assertTrue(compressed.length < data.length);
+        assertArrayEquals(data, decompress(compressed));
+    }
+
+    @Test
+    void outputIsPlainGzip() throws IOException {
+        byte[] data = sample();
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compress(data, BLOCK_SIZE * 3)))) {
+            assertArrayEquals(data, in.readAllBytes());
+        }
+    }
+
+    @Test
+    void readsForeignGzip() throws IOException {
+        byte[] data = sample();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        }
+        assertArrayEquals(data, decompress(out.toByteArray()));
+    }
+
+    @Test
+    void roundTripsSingleBytesAndEmptyInput() throws IOException {
+        assertArrayEquals(new byte[0], decompress(compress(new byte[0], 1)));
+        byte[] data = "abc".getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ParallelGzipOutputStream gzip = new ParallelGzipOutputStream(out, executor, 6, 2, 1)) {
+            for (byte b : data) {
+                gzip.write(b);
+            }
+        }
+        assertArrayEquals(data, decompress(out.toByteArray()));
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.kindle.service.archive;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TarReaderTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void roundTripsEntries() throws IOException {
+        byte[] small = "{\"id\":1}\n".getBytes(StandardCharsets.UTF_8);
+        byte[] large = new byte[3 * TarWriter.BLOCK + 17];
+        new Random(7).nextBytes(large);
+        Path file = Files.write(dir.resolve("book.epub"), large);
+        String longName = "kindle-library/files/42/ebook/" + "很长的书名".repeat(20) + ".epub";
+
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        try (TarWriter tar = new TarWriter(archive)) {
+            tar.write("kindle-library/format.json", small, 0);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                tar.write(longName, channel, channel.size(), 0);
+            }
+            tar.write("kindle-library/empty", new byte[0], 0);
+            assertEquals(archive.size(), tar.getBytesWritten());
+        }
+        assertEquals(0, archive.size() % TarWriter.BLOCK);
+
+        try (TarReader reader = new TarReader(new ByteArrayInputStream(archive.toByteArray()))) {
+            TarReader.Entry entry = reader.next();
+            assertEquals("kindle-library/format.json", entry.name());
+            assertArrayEquals(small, reader.readCurrent());
+
+            entry = reader.next();
+            assertEquals(longName, entry.name());
+            assertEquals(large.length, entry.size());
+            assertArrayEquals(large, entry.content().readAllBytes());
+
+            entry = reader.next();
+            assertEquals("kindle-library/empty", entry.name());
+            assertEquals(0, entry.size());
+
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    void skipsUnreadContent() throws IOException {
+        byte[] first = new byte[1000];
+        Arrays.fill(first, (byte) 'a');
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        try (TarWriter tar = new TarWriter(archive)) {
+            tar.write("first", first, 0);
+            tar.write("second", "b".getBytes(StandardCharsets.UTF_8), 0);
+        }
+
+        try (TarReader reader = new TarReader(new ByteArrayInputStream(archive.toByteArray()))) {
+            TarReader.Entry entry = reader.next();
+            assertEquals('a', entry.content().read());
+            entry = reader.next();
+            assertEquals("second", entry.name());
+            assertArrayEquals("b".getBytes(StandardCharsets.UTF_8), reader.readCurrent());
+        }
+    }
+
+    @Test
+    void rejectsTruncatedArchive() throws IOException {
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        try (TarWriter tar = new TarWriter(archive)) {
+            tar.write("truncated", new byte[2000], 0);
+        }
+        byte[] truncated = Arrays.copyOf(archive.toByteArray(), TarWriter.BLOCK + 100);
+
+        try (TarReader reader = new TarReader(new ByteArrayInputStream(truncated))) {
+            reader.next();
+            assertThrows(EOFException.class, reader::readCurrent);
+        }
+    }
+
+    @Test
+    void rejectsCorruptHeader() throws IOException {
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        try (TarWriter tar = new TarWriter(archive)) {
+            tar.write("corrupt", new byte[10], 0);
+        }
+        byte[] bytes = archive.toByteArray();
+        bytes[0] ^= 1;
+
+        try (TarReader reader = new TarReader(new ByteArrayInputStream(bytes))) {
+            assertThrows(IOException.class, reader::next);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.kindle.service.cover;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.function.IntBinaryOperator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 用按 BlurHash 规范实现的解码器把编码结果还原成像素，与原图比较
+ */
+class BlurHashTest {
+
+    private static final String BASE83 =
+            "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz#$%*+,-.:;=?@[]^_{|}~";
+
+    private static BufferedImage image(int width, int height, IntBinaryOperator rgb) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, rgb.applyAsInt(x, y));
+            }
+        }
+        return image;
+    }
+
+    @Test
+    void solidColorRoundTrips() {
+        String hash = BlurHash.encode(image(16, 16, (x, y) -> 0x3366cc), 4, 3);
+        assertEquals(6 + 2 * (4 * 3 - 1), hash.length());
+        //直流分量就是平均色，可以精确还原
+        assertEquals(0x3366cc, decode83(hash, 2, 6));
+        //余弦基在离散像素上不完全正交，纯色图也会带少量交流分量，逐像素还原只能近似
+        for (int[] pixel : decode(hash, 16, 16)) {
+            assertEquals(0x33, (pixel[0] >> 16) & 0xFF, 40);
+            assertEquals(0x66, (pixel[0] >> 8) & 0xFF, 40);
+            assertEquals(0xcc, pixel[0] & 0xFF, 40);
+        }
+    }
+
+    @Test
+    void horizontalGradientRoundTrips() {
+        BufferedImage source = image(32, 24, (x, y) -> {
+            int v = x * 255 / 31;
+            return v << 16 | v << 8 | v;
+        });
+        int[][] decoded = decode(BlurHash.encode(source, 4, 3), 32, 24);
+        int previous = -1;
+        for (int x = 0; x < 32; x += 4) {
+            int red = (decoded[12 * 32 + x][0] >> 16) & 0xFF;
+            assertTrue(red >= previous, "亮度应从左到右递增");
+            assertEquals(x * 255 / 31, red, 40);
+            previous = red;
+        }
+    }
+
+    @Test
+    void componentCountIsEncodedInFirstCharacter() {
+        BufferedImage source = image(8, 8, (x, y) -> 0xffffff);
+        assertEquals(BASE83.charAt(0), BlurHash.encode(source, 1, 1).charAt(0));
+        assertEquals(BASE83.charAt(3 + 2 * 9), BlurHash.encode(source, 4, 3).charAt(0));
+        assertThrows(IllegalArgumentException.class, () -> BlurHash.encode(source, 0, 3));
+        assertThrows(IllegalArgumentException.class, () -> BlurHash.encode(source, 4, 10));
+    }
+
+    private static int decode83(String text, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            value = value * 83 + BASE83.indexOf(text.charAt(i));
+        }
+        return value;
+    }
+
+    private static double srgbToLinear(int value) {
+        double v = value / 255.0;
+        return v <= 0.04045 ? v / 12.92 : Math.pow((v + 0.055) / 1.055, 2.4);
+    }
+
+    private static int linearToSrgb(double value) {
+        double v = Math.max(0, Math.min(1, value));
+        return (int) Math.round((v <= 0.0031308 ? v * 12.92 : 1.055 * Math.pow(v, 1 / 2.4) - 0.055) * 255);
+    }
+
+    private static double signPow(double value, double exp) {
+        return Math.copySign(Math.pow(Math.abs(value), exp), value);
+    }
+
+    /**
+     * @return 每个像素一个元素，按行排列，值为 0xRRGGBB
+     */
+    private static int[][] decode(String hash, int width, int height) {
+        int sizeFlag = decode83(hash, 0, 1);
+        int componentsX = sizeFlag % 9 + 1;
+        int componentsY = sizeFlag / 9 + 1;
+        double maxValue = (decode83(hash, 1, 2) + 1) / 166.0;
+        double[][] colors = new double[componentsX * componentsY][];
+        int dc = decode83(hash, 2, 6);
+        colors[0] = new double[]{srgbToLinear(dc >> 16), srgbToLinear((dc >> 8) & 0xFF), srgbToLinear(dc & 0xFF)};
+        for (int k = 1; k < colors.length; k++) {
+            int ac = decode83(hash, 4 + k * 2, 6 + k * 2);
+            colors[k] = new double[]{
+                    signPow((ac / (19 * 19) - 9) / 9.0, 2) * maxValue,
+                    signPow(((ac / 19) % 19 - 9) / 9.0, 2) * maxValue,
+                    signPow((ac % 19 - 9) / 9.0, 2) * maxValue};
+        }
+        int[][] pixels = new int[width * height][1];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                double r = 0, g = 0, b = 0;
+                for (int j = 0; j < componentsY; j++) {
+                    for (int i = 0; i < componentsX; i++) {
+                        double basis = Math.cos(Math.PI * x * i / width) * Math.cos(Math.PI * y * j / height);
+                        double[] color = colors[j * componentsX + i];
+                        r += color[0] * basis;
+                        g += color[1] * basis;
+                        b += color[2] * basis;
+                    }
+                }
+                pixels[y * width + x][0] = linearToSrgb(r) << 16 | linearToSrgb(g) << 8 | linearToSrgb(b);
+            }
+        }
+        return pixels;
+    }
+}
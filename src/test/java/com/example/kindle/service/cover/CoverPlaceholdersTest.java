@@ -0,0 +1,69 @@
+package com.example.kindle.service.cover;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CoverPlaceholdersTest {
+
+    @TempDir
+    Path dir;
+
+    private static byte[] png(int width, int height, int rgb) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, rgb);
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+
+    @Test
+    void solidCoverGivesItsColor() throws IOException {
+        Optional<CoverPlaceholder> placeholder = CoverPlaceholders.compute(png(600, 800, 0x3366cc));
+        assertTrue(placeholder.isPresent());
+        assertEquals("#3366cc", placeholder.get().color());
+        assertEquals(28, placeholder.get().blurHash().length());
+    }
+
+    @Test
+    void undecodableInputIsEmpty() {
+        assertTrue(CoverPlaceholders.compute(new byte[]{1, 2, 3}).isEmpty());
+        assertTrue(CoverPlaceholders.compute((byte[]) null).isEmpty());
+        assertTrue(CoverPlaceholders.compute(dir.resolve("missing.jpg")).isEmpty());
+    }
+
+    @Test
+    void truncatedImageIsEmpty() throws IOException {
+        byte[] png = png(200, 200, 0x123456);
+        byte[] truncated = Arrays.copyOf(png, png.length / 2);
+        assertDoesNotThrow(() -> CoverPlaceholders.compute(truncated));
+    }
+
+    @Test
+    void hugeDimensionsAreRejectedBeforeDecoding() throws IOException {
+        //只改 IHDR 里的宽高并重算 CRC，图像数据仍是 1x1，真去解码会失败或分配巨大内存
+        byte[] png = png(1, 1, 0xffffff);
+        ByteBuffer buffer = ByteBuffer.wrap(png);
+        buffer.putInt(16, 50_000);
+        buffer.putInt(20, 50_000);
+        CRC32 crc = new CRC32();
+        crc.update(png, 12, 17);
+        buffer.putInt(29, (int) crc.getValue());
+        assertTrue(CoverPlaceholders.compute(png).isEmpty());
+    }
+}
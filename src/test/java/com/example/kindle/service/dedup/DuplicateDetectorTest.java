@@ -0,0 +1,41 @@
+package com.example.kindle.service.dedup;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DuplicateDetectorTest {
+
+    @Test
+    void editionAndFormatTagsAreIgnored() {
+        String plain = DuplicateDetector.normalizedMetadata("三体", "刘慈欣");
+        assertEquals(plain, DuplicateDetector.normalizedMetadata("三体（典藏版）", "刘慈欣"));
+        assertEquals(plain, DuplicateDetector.normalizedMetadata("三体 [epub]", "刘慈欣"));
+        assertEquals(DuplicateDetector.normalizedMetadata("Dune", "Frank Herbert"),
+                DuplicateDetector.normalizedMetadata("Dune (Revised Edition)", "Frank Herbert"));
+    }
+
+    @Test
+    void volumeMarkersAreKept() {
+        assertNotEquals(DuplicateDetector.normalizedMetadata("三体（上）", "刘慈欣"),
+                DuplicateDetector.normalizedMetadata("三体（下）", "刘慈欣"));
+        assertNotEquals(DuplicateDetector.normalizedMetadata("明朝那些事儿[第3卷]", "当年明月"),
+                DuplicateDetector.normalizedMetadata("明朝那些事儿[第4卷]", "当年明月"));
+        assertNotEquals(DuplicateDetector.normalizedMetadata("Dune (Volume 1)", "Frank Herbert"),
+                DuplicateDetector.normalizedMetadata("Dune (Volume 2)", "Frank Herbert"));
+        assertEquals(DuplicateDetector.normalizedMetadata("明朝那些事儿[第3卷]", "当年明月"),
+                DuplicateDetector.normalizedMetadata("明朝那些事儿[第3卷]（修订版）", "当年明月"));
+    }
+
+    @Test
+    void authorIsPartOfTheKey() {
+        assertNotEquals(DuplicateDetector.normalizedMetadata("Poems", "A"),
+                DuplicateDetector.normalizedMetadata("Poems", "B"));
+    }
+
+    @Test
+    void emptyTitleIsNotMatched() {
+        assertNull(DuplicateDetector.normalizedMetadata(null, "A"));
+        assertNull(DuplicateDetector.normalizedMetadata("(epub)", "A"));
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.kindle.service.dedup;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LshIndexTest {
+
+    private static Set<Long> values(LshIndex index, int key) {
+        Set<Long> values = new HashSet<>();
+        index.forEach(key, values::add);
+        return values;
+    }
+
+    @Test
+    void keepsMultipleValuesPerKey() {
+        LshIndex index = new LshIndex(16);
+        index.put(7, 1L);
+        index.put(7, 2L);
+        index.put(8, 3L);
+        assertEquals(Set.of(1L, 2L), values(index, 7));
+        assertEquals(Set.of(3L), values(index, 8));
+        assertTrue(values(index, 9).isEmpty());
+        assertEquals(3, index.size());
+    }
+
+    @Test
+    void removeOnlyDropsTheGivenPair() {
+        LshIndex index = new LshIndex(16);
+        index.put(7, 1L);
+        index.put(7, 2L);
+        index.remove(7, 1L);
+        index.remove(7, 99L);
+        assertEquals(Set.of(2L), values(index, 7));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    void growsAndCompactsRemovedEntries() {
+        LshIndex index = new LshIndex(16);
+        for (int i = 0; i < 10_000; i++) {
+            index.put(i % 100, i);
+        }
+        for (int i = 0; i < 10_000; i += 2) {
+            index.remove(i % 100, i);
+        }
+        for (int i = 10_000; i < 12_000; i++) {
+            index.put(i % 100, i);
+        }
+        assertEquals(7_000, index.size());
+        Set<Long> bucket = values(index, 1);
+        assertEquals(120, bucket.size());
+        assertTrue(bucket.contains(10_001L));
+        assertFalse(values(index, 0).contains(0L));
+    }
+
+    @Test
+    void clearEmptiesTheIndex() {
+        LshIndex index = new LshIndex(16);
+        index.put(1, 1L);
+        index.clear();
+        assertEquals(0, index.size());
+        assertTrue(values(index, 1).isEmpty());
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.kindle.service.popularity;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpaceSavingTest {
+
+    private static Map<Long, Long> totals(SpaceSaving... sketches) {
+        Map<Long, Long> totals = new HashMap<>();
+        for (SpaceSaving sketch : sketches) {
+            sketch.addTo(totals);
+        }
+        return totals;
+    }
+
+    @Test
+    void countsExactlyWhileUnderCapacity() {
+        SpaceSaving sketch = new SpaceSaving(10);
+        sketch.offer(1, 3);
+        sketch.offer(2, 1);
+        sketch.offer(1, 2);
+        assertEquals(Map.of(1L, 5L, 2L, 1L), totals(sketch));
+    }
+
+    @Test
+    void newKeyReplacesMinimumAndInheritsItsCount() {
+        SpaceSaving sketch = new SpaceSaving(2);
+        sketch.offer(1, 10);
+        sketch.offer(2, 3);
+        sketch.offer(3, 1);
+        assertEquals(Map.of(1L, 10L, 3L, 4L), totals(sketch));
+    }
+
+    @Test
+    void heavyHittersSurviveAndAreNeverUndercounted() {
+        SpaceSaving sketch = new SpaceSaving(50);
+        Map<Long, Long> exact = new HashMap<>();
+        Random random = new Random(7);
+        long total = 0;
+        for (int i = 0; i < 100_000; i++) {
+            //三本热门书占一半流量，其余分散在一万本书上
+            long key = random.nextBoolean() ? random.nextInt(3) : 100 + random.nextInt(10_000);
+            sketch.offer(key, 1);
+            exact.merge(key, 1L, Long::sum);
+            total++;
+        }
+        Map<Long, Long> estimated = totals(sketch);
+        assertEquals(50, estimated.size());
+        for (Map.Entry<Long, Long> entry : exact.entrySet()) {
+            if (entry.getValue() > total / 50) {
+                assertTrue(estimated.containsKey(entry.getKey()), "频繁项 " + entry.getKey() + " 丢失");
+            }
+        }
+        for (Map.Entry<Long, Long> entry : estimated.entrySet()) {
+            assertTrue(entry.getValue() >= exact.get(entry.getKey()));
+        }
+    }
+
+    @Test
+    void removeAndClear() {
+        SpaceSaving sketch = new SpaceSaving(4);
+        sketch.offer(1, 1);
+        sketch.offer(2, 2);
+        sketch.remove(1);
+        sketch.remove(99);
+        assertEquals(Map.of(2L, 2L), totals(sketch));
+        sketch.offer(1, 1);
+        assertEquals(Map.of(1L, 1L, 2L, 2L), totals(sketch));
+        sketch.clear();
+        assertTrue(totals(sketch).isEmpty());
+    }
+
+    @Test
+    void bucketsMergeBySum() {
+        SpaceSaving first = new SpaceSaving(4);
+        SpaceSaving second = new SpaceSaving(4);
+        first.offer(1, 2);
+        second.offer(1, 3);
+        second.offer(2, 1);
+        assertEquals(Map.of(1L, 5L, 2L, 1L), totals(first, second));
+    }
+}
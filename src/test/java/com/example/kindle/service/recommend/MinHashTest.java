@@ -0,0 +1,53 @@
+package com.example.kindle.service.recommend;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MinHashTest {
+
+    private static final String TEXT = "It was the best of times, it was the worst of times, it was the age of wisdom, "
+            + "it was the age of foolishness, it was the epoch of belief, it was the epoch of incredulity.";
+
+    @Test
+    void bytesRoundTrip() {
+        int[] signature = MinHash.signature(TEXT);
+        assertArrayEquals(signature, MinHash.fromBytes(MinHash.toBytes(signature)));
+    }
+
+    @Test
+    void malformedBytesDecodeToNull() {
+        assertNull(MinHash.fromBytes(null));
+        assertNull(MinHash.fromBytes(new byte[10]));
+        assertNull(MinHash.toBytes(null));
+    }
+
+    @Test
+    void identicalTextIsFullySimilar() {
+        assertEquals(1.0, MinHash.similarity(MinHash.signature(TEXT), MinHash.signature(TEXT)), 0);
+    }
+
+    @Test
+    void punctuationAndCaseAreIgnored() {
+        String reformatted = TEXT.toUpperCase().replace(",", " ;").replace(".", "!");
+        assertArrayEquals(MinHash.signature(TEXT), MinHash.signature(reformatted));
+    }
+
+    @Test
+    void nearDuplicateScoresHigherThanUnrelatedText() {
+        String edited = TEXT.replace("wisdom", "knowledge");
+        String unrelated = "The quick brown fox jumps over the lazy dog while seventeen zebras quietly juggle lanterns.";
+        int[] original = MinHash.signature(TEXT);
+        double near = MinHash.similarity(original, MinHash.signature(edited));
+        double far = MinHash.similarity(original, MinHash.signature(unrelated));
+        assertTrue(near > 0.6, "near duplicate similarity " + near);
+        assertTrue(far < 0.2, "unrelated similarity " + far);
+    }
+
+    @Test
+    void shortOrMissingTextHasNoSignature() {
+        assertNull(MinHash.signature("abc"));
+        assertNull(MinHash.signature(null));
+        assertEquals(0.0, MinHash.similarity(null, MinHash.signature(TEXT)), 0);
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.kindle.service.search;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BookTextIndexTest {
+
+    @TempDir
+    Path dir;
+
+    private BookTextIndex index(String... chapters) throws IOException {
+        Path path = dir.resolve("book.idx");
+        BookTextIndex.write(List.of(chapters), path);
+        return BookTextIndex.open(path);
+    }
+
+    @Test
+    void findsPhraseWithSnippet() throws IOException {
+        BookTextIndex index = index("The quick brown fox. The quick cat.", "nothing here");
+        BookTextIndex.SearchResult result = index.search(Tokenizer.terms("the QUICK"), 10, 5);
+        assertEquals(2, result.total());
+        BookSearchHit first = result.hits().get(0);
+        assertEquals(0, first.chapter());
+        assertEquals(0, first.offset());
+        assertEquals("", first.before());
+        assertEquals("The quick", first.match());
+        assertEquals(" brow", first.after());
+        assertEquals(21, result.hits().get(1).offset());
+    }
+
+    @Test
+    void requiresAdjacentTerms() throws IOException {
+        BookTextIndex index = index("The quick brown fox.", "fox jumps");
+        assertEquals(0, index.search(Tokenizer.terms("quick fox"), 10, 5).total());
+        //标点不影响相邻，跨章节不算相邻
+        assertEquals(1, index.search(Tokenizer.terms("fox jumps"), 10, 5).total());
+        assertEquals(0, index.search(Tokenizer.terms("brown fox fox"), 10, 5).total());
+    }
+
+    @Test
+    void countsBeyondLimit() throws IOException {
+        BookTextIndex index = index("a b a b a b", "a b");
+        BookTextIndex.SearchResult result = index.search(Tokenizer.terms("a b"), 2, 0);
+        assertEquals(4, result.total());
+        assertEquals(2, result.hits().size());
+    }
+
+    @Test
+    void missingTermMatchesNothing() throws IOException {
+        BookTextIndex index = index("some text");
+        BookTextIndex.SearchResult result = index.search(Tokenizer.terms("some absent"), 10, 5);
+        assertEquals(0, result.total());
+        assertTrue(result.hits().isEmpty());
+    }
+
+    @Test
+    void snippetsAlignToCharacters() throws IOException {
+        BookTextIndex index = index("第一章", "小王子和狐狸");
+        BookTextIndex.SearchResult result = index.search(Tokenizer.terms("王子"), 10, 4);
+        assertEquals(1, result.total());
+        BookSearchHit hit = result.hits().get(0);
+        assertEquals(1, hit.chapter());
+        assertEquals(3, hit.offset());
+        assertEquals("小", hit.before());
+        assertEquals("王子", hit.match());
+        //4 字节向后补齐到完整的字
+        assertEquals("和狐", hit.after());
+    }
+
+    @Test
+    void rejectsForeignFile() throws IOException {
+        Path path = dir.resolve("bad.idx");
+        Files.write(path, new byte[32]);
+        assertThrows(IOException.class, () -> BookTextIndex.open(path));
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.kindle.service.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenizerTest {
+
+    @Test
+    void lowercasesWordsAndSplitsIdeographs() {
+        assertEquals(List.of("hello", "world", "42", "小", "王", "子", "abc"),
+                Tokenizer.terms("Hello, WORLD-42 小王子abc"));
+    }
+
+    @Test
+    void reportsUtf8ByteOffsets() {
+        List<Integer> offsets = new ArrayList<>();
+        Tokenizer.tokenize("Café 你好 ok", (term, offset) -> offsets.add(offset));
+        //"Café" 占 5 字节，汉字各 3 字节
+        assertEquals(List.of(0, 6, 9, 13), offsets);
+    }
+
+    @Test
+    void ignoresPunctuationOnly() {
+        assertTrue(Tokenizer.terms("  ...，。!? ").isEmpty());
+    }
+
+    @Test
+    void measuresFirstToken() {
+        assertEquals(4, Tokenizer.firstTokenBytes("word rest"));
+        assertEquals(5, Tokenizer.firstTokenBytes("café!"));
+        assertEquals(3, Tokenizer.firstTokenBytes("你好"));
+        assertEquals(2, Tokenizer.firstTokenBytes("ab你"));
+        assertEquals(0, Tokenizer.firstTokenBytes(""));
+    }
+}
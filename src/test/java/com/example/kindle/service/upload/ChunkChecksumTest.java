@@ -0,0 +1,64 @@
+package com.example.kindle.service.upload;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.zip.CRC32C;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChunkChecksumTest {
+
+    private static final byte[] DATA = "hello, resumable upload".getBytes(StandardCharsets.UTF_8);
+
+    private static String base64(byte[] bytes) {
+        return Base64.getEncoder().encodeToString(bytes);
+    }
+
+    private static void feedInPieces(ChunkChecksum checksum, byte[] data) {
+        for (int i = 0; i < data.length; i += 5) {
+            checksum.update(ByteBuffer.wrap(data, i, Math.min(5, data.length - i)));
+        }
+    }
+
+    @Test
+    void emptyHeaderMeansNoChecksum() {
+        assertNull(ChunkChecksum.parse(null));
+        assertNull(ChunkChecksum.parse("  "));
+    }
+
+    @Test
+    void sha256MatchesWhenFedInPieces() throws Exception {
+        String expected = base64(MessageDigest.getInstance("SHA-256").digest(DATA));
+        ChunkChecksum checksum = ChunkChecksum.parse("SHA256 " + expected);
+        feedInPieces(checksum, DATA);
+        assertDoesNotThrow(checksum::verify);
+    }
+
+    @Test
+    void crc32cMatches() {
+        CRC32C crc = new CRC32C();
+        crc.update(DATA);
+        String expected = base64(ByteBuffer.allocate(4).putInt((int) crc.getValue()).array());
+        ChunkChecksum checksum = ChunkChecksum.parse("crc32c " + expected);
+        feedInPieces(checksum, DATA);
+        assertDoesNotThrow(checksum::verify);
+    }
+
+    @Test
+    void mismatchIsReported() throws Exception {
+        String expected = base64(MessageDigest.getInstance("MD5").digest(DATA));
+        ChunkChecksum checksum = ChunkChecksum.parse("md5 " + expected);
+        checksum.update(ByteBuffer.wrap(DATA, 1, DATA.length - 1));
+        assertThrows(ChecksumMismatchException.class, checksum::verify);
+    }
+
+    @Test
+    void malformedHeaderIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> ChunkChecksum.parse("sha256"));
+        assertThrows(IllegalArgumentException.class, () -> ChunkChecksum.parse("whirlpool abc"));
+    }
+}
@@ -0,0 +1,210 @@
+package com.example.kindle.service.upload;
+
+import com.example.kindle.entity.Book;
+import com.example.kindle.service.BookService;
+import com.example.kindle.service.book.EbookProcessor;
+import com.example.kindle.service.book.EbookProcessorFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 按客户端的实际行为重放分片上传：乱序、重传、校验失败、超长分片，最后比较落盘内容
+ */
+class ResumableUploadServiceTest {
+
+    private static final int CHUNK = 1024;
+
+    @TempDir
+    Path dir;
+
+    private ResumableUploadService service;
+    private BookService bookService;
+    private final AtomicReference<byte[]> registered = new AtomicReference<>();
+    private byte[] data;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        bookService = mock(BookService.class);
+        when(bookService.registerStoredEbook(any(Path.class), anyString(), anyList())).thenAnswer(invocation -> {
+            registered.set(Files.readAllBytes(invocation.getArgument(0)));
+            return new Book();
+        });
+        EbookProcessorFactory factory = mock(EbookProcessorFactory.class);
+        when(factory.getProcessor(anyString())).thenReturn(Optional.empty());
+        when(factory.getProcessor("epub")).thenReturn(Optional.of(mock(EbookProcessor.class)));
+        doThrow(new IllegalArgumentException("分类不存在: [99]")).when(bookService).requireCategories(List.of(99L));
+
+        service = new ResumableUploadService(bookService, factory, 2);
+        ReflectionTestUtils.setField(service, "ebookDir", dir.toString());
+        ReflectionTestUtils.setField(service, "defaultChunkSize", DataSize.ofBytes(CHUNK));
+        ReflectionTestUtils.setField(service, "minChunkSize", DataSize.ofBytes(256));
+        ReflectionTestUtils.setField(service, "maxChunkSize", DataSize.ofKilobytes(64));
+        ReflectionTestUtils.setField(service, "maxChunks", 16);
+        ReflectionTestUtils.setField(service, "maxFileSize", DataSize.ofMegabytes(1));
+        ReflectionTestUtils.setField(service, "expireAfter", Duration.ofHours(1));
+
+        data = new byte[CHUNK * 3 + 100];
+        new Random(42).nextBytes(data);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    private byte[] chunk(int index) {
+        return Arrays.copyOfRange(data, index * CHUNK, Math.min(data.length, (index + 1) * CHUNK));
+    }
+
+    private static String sha256(byte[] bytes) throws Exception {
+        return "sha256 " + Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(bytes));
+    }
+
+    private UploadStatus put(String id, int index, byte[] body, String checksum) throws Exception {
+        return service.writeChunk(id, index, new ByteArrayInputStream(body), checksum).orElseThrow();
+    }
+
+    @Test
+    void outOfOrderChunksWithRetriesProduceTheOriginalFile() throws Exception {
+        String id = service.create("book.epub", data.length, null, List.of(1L)).id();
+
+        put(id, 3, chunk(3), sha256(chunk(3)));
+        put(id, 1, chunk(1), null);
+        byte[] corrupted = chunk(0);
+        corrupted[7] ^= 1;
+        assertThrows(ChecksumMismatchException.class, () -> put(id, 0, corrupted, sha256(chunk(0))));
+        put(id, 0, chunk(0), sha256(chunk(0)));
+        UploadStatus status = put(id, 1, chunk(1), sha256(chunk(1)));
+        assertEquals(List.of(2), status.missingChunks());
+        assertEquals(2L * CHUNK, status.offset());
+        put(id, 2, chunk(2), null);
+
+        assertTrue(service.complete(id).isPresent());
+        assertArrayEquals(data, registered.get());
+    }
+
+    @Test
+    void failedRewriteOfReceivedChunkMakesItMissingAgain() throws Exception {
+        String id = service.create("book.epub", data.length, null, List.of(1L)).id();
+        for (int i = 0; i < 4; i++) {
+            put(id, i, chunk(i), null);
+        }
+        //重传时中途断开：内容已经部分覆盖，不能再算作已收到
+        byte[] truncated = Arrays.copyOf(chunk(1), CHUNK / 2);
+        assertThrows(IllegalArgumentException.class, () -> put(id, 1, truncated, null));
+        assertEquals(List.of(1), service.status(id).orElseThrow().missingChunks());
+        assertThrows(IllegalStateException.class, () -> service.complete(id));
+
+        put(id, 1, chunk(1), null);
+        assertTrue(service.complete(id).isPresent());
+        assertArrayEquals(data, registered.get());
+    }
+
+    @Test
+    void oversizedChunkIsRejected() throws Exception {
+        String id = service.create("book.epub", data.length, null, List.of(1L)).id();
+        assertThrows(IllegalArgumentException.class, () -> put(id, 3, chunk(0), null));
+        assertEquals(4, service.status(id).orElseThrow().missingChunks().size());
+    }
+
+    @Test
+    void completedUploadRejectsFurtherChunks() throws Exception {
+        String id = service.create("book.epub", data.length, null, List.of(1L)).id();
+        for (int i = 0; i < 4; i++) {
+            put(id, i, chunk(i), null);
+        }
+        service.complete(id);
+        assertTrue(service.writeChunk(id, 0, new ByteArrayInputStream(chunk(0)), null).isEmpty());
+    }
+
+    @Test
+    void chunkSizeAndCountAreBounded() {
+        assertThrows(IllegalArgumentException.class, () -> service.create("book.epub", data.length, 1, List.of(1L)));
+        assertThrows(IllegalArgumentException.class, () -> service.create("book.epub", 256 * 17, 256, List.of(1L)));
+        assertThrows(IllegalArgumentException.class, () -> service.create("book.txt", data.length, null, List.of(1L)));
+    }
+
+    @Test
+    void concurrentSessionsAreCapped() throws Exception {
+        String first = service.create("a.epub", data.length, null, List.of(1L)).id();
+        service.create("b.epub", data.length, null, List.of(1L));
+        assertThrows(IllegalStateException.class, () -> service.create("c.epub", data.length, null, List.of(1L)));
+        assertTrue(service.abort(first));
+        assertDoesNotThrow(() -> service.create("c.epub", data.length, null, List.of(1L)));
+    }
+
+    @Test
+    void failedRegistrationKeepsUploadForRetry() throws Exception {
+        String id = service.create("book.epub", data.length, null, List.of(1L)).id();
+        for (int i = 0; i < 4; i++) {
+            put(id, i, chunk(i), null);
+        }
+        when(bookService.registerStoredEbook(any(Path.class), anyString(), anyList()))
+                .thenThrow(new IllegalStateException("数据库暂时不可用"))
+                .thenAnswer(invocation -> {
+                    registered.set(Files.readAllBytes(invocation.getArgument(0)));
+                    return new Book();
+                });
+
+        assertThrows(IllegalStateException.class, () -> service.complete(id));
+        assertTrue(service.status(id).isPresent());
+        //已封存，不再接受分片
+        assertThrows(IllegalStateException.class, () -> put(id, 0, chunk(0), null));
+
+        assertTrue(service.complete(id).isPresent());
+        assertArrayEquals(data, registered.get());
+        assertTrue(service.status(id).isEmpty());
+    }
+
+    @Test
+    void unparsableFileEndsUpload() throws Exception {
+        String id = service.create("book.epub", data.length, null, List.of(1L)).id();
+        for (int i = 0; i < 4; i++) {
+            put(id, i, chunk(i), null);
+        }
+        when(bookService.registerStoredEbook(any(Path.class), anyString(), anyList())).thenAnswer(invocation -> {
+            //处理器解析失败时删除文件
+            Files.delete(invocation.getArgument(0));
+            throw new IOException("解析EPUB文件失败");
+        });
+
+        assertThrows(IOException.class, () -> service.complete(id));
+        assertTrue(service.status(id).isEmpty());
+        //名额已归还
+        service.create("a.epub", data.length, null, List.of(1L));
+        assertDoesNotThrow(() -> service.create("b.epub", data.length, null, List.of(1L)));
+    }
+
+    @Test
+    void unknownCategoryIsRejectedBeforeTransfer() throws IOException {
+        assertThrows(IllegalArgumentException.class, () -> service.create("book.epub", data.length, null, List.of(99L)));
+        try (var files = Files.list(dir)) {
+            assertEquals(0, files.count());
+        }
+    }
+}